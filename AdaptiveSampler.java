@@ -0,0 +1,243 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Samples {@code y = f(x)} over an interval for plotting, spending evaluations where the curve
+ * needs them instead of on a fixed grid.
+ * <p>
+ * A coarse uniform pass is refined by repeatedly bisecting the interval whose midpoint deviates
+ * most from the straight chord between its ends (worst first), until every interval is straight to
+ * within a fraction of the curve's height or the point budget is spent. Straight stretches therefore
+ * stop after the first pass, while bends, spikes and oscillations get subdivided.
+ * <p>
+ * Singularities become gaps: an interval whose ends are defined on one side only is bisected down
+ * to the edge of the domain, and an interval that is still far from straight at the smallest width
+ * is treated as a jump (e.g. {@code tan(x)} at a pole). Both are emitted as a NaN sample, which
+ * JFreeChart's line renderers draw as a break in the line.
+ */
+public class AdaptiveSampler {
+
+    /** Default number of evaluations per curve. */
+    public static final int DEFAULT_BUDGET = Integer.getInteger("mathematica.plot.points", 2000);
+
+    private static final int INITIAL_INTERVALS = 128;
+
+    /** Smallest point budget: the evaluations of the initial, uniform pass. Lower budgets are raised to it. */
+    public static final int MIN_BUDGET = INITIAL_INTERVALS * 2 + 1;
+    private static final int MAX_DEPTH = 14; // Smallest interval: (xMax - xMin) / (128 * 2^14)
+    private static final double TOLERANCE = 1.0 / 1000; // Of the curve height, i.e. below a pixel on a typical chart
+    private static final double ROBUST_QUANTILE = 0.02; // Ignores the top/bottom 2% of values when sizing the y range
+    private static final Metrics.Timer SAMPLE_TIMER = Metrics.timer("plot.sample"); // One sample() call
+    private static final Metrics.Counter EVALUATIONS = Metrics.counter("plot.evaluations");
+
+    private final int pointBudget;
+
+    /**
+     * The samples of one curve, in increasing x. A NaN y marks a gap in the curve.
+     */
+    public static final class Samples {
+        private final double[] xs;
+        private final double[] ys;
+        private final int evaluations;
+        private final double yLow;
+        private final double yHigh;
+
+        Samples(double[] xs, double[] ys, int evaluations, double yLow, double yHigh) {
+            this.xs = xs;
+            this.ys = ys;
+            this.evaluations = evaluations;
+            this.yLow = yLow;
+            this.yHigh = yHigh;
+        }
+
+        /** @return The number of samples, gap markers included. */
+        public int size() { return xs.length; }
+
+        /** @return The sample positions, increasing. Do not modify. */
+        public double[] getXs() { return xs; }
+
+        /** @return The sample values, NaN at gaps. Do not modify. */
+        public double[] getYs() { return ys; }
+
+        /** @return How many times {@code f} was evaluated. */
+        public int getEvaluations() { return evaluations; }
+
+        /**
+         * @return Lower bound of the curve's typical values: the range that is worth showing when
+         *         values near a pole run off towards infinity. NaN if the curve has no finite value.
+         */
+        public double getYLow() { return yLow; }
+
+        /** @return Upper bound of the curve's typical values, see {@link #getYLow()}. */
+        public double getYHigh() { return yHigh; }
+    }
+
+    /** One interval [a, b] with its midpoint already evaluated. */
+    private static final class Interval {
+        final double a, fa, m, fm, b, fb;
+        final int depth;
+        final double error; // Distance of the midpoint from the chord; +Inf when the domain ends inside
+
+        /**
+         * Values are clamped to [low, high] before measuring the error: far outside the typical
+         * range (towards a pole) the curve is off screen, and its shape there needs no samples.
+         */
+        Interval(double a, double fa, double m, double fm, double b, double fb, int depth, double low, double high) {
+            this.a = a;
+            this.fa = fa;
+            this.m = m;
+            this.fm = fm;
+            this.b = b;
+            this.fb = fb;
+            this.depth = depth;
+            boolean finiteA = Double.isFinite(fa), finiteM = Double.isFinite(fm), finiteB = Double.isFinite(fb);
+            if (finiteA && finiteM && finiteB) {
+                this.error = Math.abs(clamp(fm, low, high) - (clamp(fa, low, high) + clamp(fb, low, high)) / 2);
+            } else if (finiteA || finiteM || finiteB) {
+                this.error = Double.POSITIVE_INFINITY;
+            } else {
+                this.error = 0; // Undefined throughout, nothing to refine
+            }
+        }
+
+        /** Still not straight (or the domain still ends inside) at the smallest width we refine to. */
+        boolean isBreak(double tolerance) {
+            return error > tolerance && depth >= MAX_DEPTH;
+        }
+    }
+
+    /**
+     * @param pointBudget Maximum evaluations per curve; at least {@link #MIN_BUDGET} is used.
+     */
+    public AdaptiveSampler(int pointBudget) {
+        this.pointBudget = Math.max(MIN_BUDGET, pointBudget);
+    }
+
+    public AdaptiveSampler() {
+        this(DEFAULT_BUDGET);
+    }
+
+    /** @return Maximum evaluations per curve. */
+    public int getPointBudget() {
+        return pointBudget;
+    }
+
+    /**
+     * Samples {@code f} over [xMin, xMax].
+     *
+     * @param f    The function; called from this thread only.
+     * @param xMin Left end of the interval.
+     * @param xMax Right end of the interval, greater than xMin.
+     * @return The samples in increasing x, with NaN y at gaps.
+     */
+    public Samples sample(DoubleUnaryOperator f, double xMin, double xMax) {
+        long start = SAMPLE_TIMER.start();
+        Samples samples = sampleUntimed(f, xMin, xMax);
+        SAMPLE_TIMER.stop(start);
+        EVALUATIONS.add(samples.getEvaluations());
+        return samples;
+    }
+
+    private Samples sampleUntimed(DoubleUnaryOperator f, double xMin, double xMax) {
+        // Coarse uniform pass; x is computed from the index so the grid doesn't drift.
+        int n = INITIAL_INTERVALS;
+        double[] gridY = new double[2 * n + 1];
+        double step = (xMax - xMin) / (2 * n);
+        for (int i = 0; i <= 2 * n; i++) {
+            gridY[i] = f.applyAsDouble(i == 2 * n ? xMax : xMin + i * step);
+        }
+        int evaluations = gridY.length;
+
+        double[] range = robustRange(gridY);
+        double height = range[1] - range[0];
+        if (!(height > 0)) {
+            height = 1.0; // Constant, or nothing finite
+        }
+        double tolerance = height * TOLERANCE;
+        double low = Double.isNaN(range[0]) ? Double.NEGATIVE_INFINITY : range[0] - height;
+        double high = Double.isNaN(range[1]) ? Double.POSITIVE_INFINITY : range[1] + height;
+
+        PriorityQueue<Interval> pending = new PriorityQueue<>(Comparator.comparingDouble((Interval interval) -> interval.error).reversed());
+        List<Interval> done = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            double a = xMin + 2 * i * step;
+            double b = i == n - 1 ? xMax : xMin + (2 * i + 2) * step;
+            offer(new Interval(a, gridY[2 * i], xMin + (2 * i + 1) * step, gridY[2 * i + 1], b, gridY[2 * i + 2], 0, low, high),
+                    tolerance, pending, done);
+        }
+
+        // Refines the worst interval first, two evaluations per split.
+        while (!pending.isEmpty() && evaluations + 2 <= pointBudget) {
+            Interval worst = pending.poll();
+            double leftMid = (worst.a + worst.m) / 2;
+            double rightMid = (worst.m + worst.b) / 2;
+            int depth = worst.depth + 1;
+            offer(new Interval(worst.a, worst.fa, leftMid, f.applyAsDouble(leftMid), worst.m, worst.fm, depth, low, high), tolerance, pending, done);
+            offer(new Interval(worst.m, worst.fm, rightMid, f.applyAsDouble(rightMid), worst.b, worst.fb, depth, low, high), tolerance, pending, done);
+            evaluations += 2;
+        }
+        done.addAll(pending); // Budget spent: keep what we have
+
+        done.sort(Comparator.comparingDouble((Interval interval) -> interval.a));
+        double[] xs = new double[done.size() * 2 + 1];
+        double[] ys = new double[xs.length];
+        int count = 0;
+        for (Interval interval : done) {
+            count = append(xs, ys, count, interval.a, interval.fa);
+            count = append(xs, ys, count, interval.m, interval.isBreak(tolerance) ? Double.NaN : interval.fm); // Gap at poles / jumps
+        }
+        count = append(xs, ys, count, xMax, done.get(done.size() - 1).fb);
+        return new Samples(Arrays.copyOf(xs, count), Arrays.copyOf(ys, count), evaluations, range[0], range[1]);
+    }
+
+    private static void offer(Interval interval, double tolerance, PriorityQueue<Interval> pending, List<Interval> done) {
+        if (interval.error > tolerance && interval.depth < MAX_DEPTH) {
+            pending.add(interval);
+        } else {
+            done.add(interval);
+        }
+    }
+
+    /** Appends a sample, turning infinities into NaN and collapsing runs of gaps into one. */
+    private static int append(double[] xs, double[] ys, int count, double x, double y) {
+        if (!Double.isFinite(y)) {
+            if (count > 0 && Double.isNaN(ys[count - 1])) {
+                return count;
+            }
+            y = Double.NaN;
+        }
+        xs[count] = x;
+        ys[count] = y;
+        return count + 1;
+    }
+
+    private static double clamp(double value, double low, double high) {
+        return Math.max(low, Math.min(high, value));
+    }
+
+    /**
+     * Range of the finite values with the extreme {@link #ROBUST_QUANTILE} cut from each end, so
+     * values shooting off near a pole don't decide the scale.
+     *
+     * @return {low, high}, NaN if there are no finite values.
+     */
+    static double[] robustRange(double[] values) {
+        double[] finite = new double[values.length];
+        int count = 0;
+        for (double value : values) {
+            if (Double.isFinite(value)) {
+                finite[count++] = value;
+            }
+        }
+        if (count == 0) {
+            return new double[] { Double.NaN, Double.NaN };
+        }
+        Arrays.sort(finite, 0, count);
+        int cut = (int) (count * ROBUST_QUANTILE);
+        return new double[] { finite[cut], finite[count - 1 - cut] };
+    }
+}
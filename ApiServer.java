@@ -0,0 +1,583 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local HTTP API over the OCR, plotting and history services, for other tools on the same machine.
+ * Listens on the loopback interface only, unless told otherwise. Endpoints (JSON unless noted):
+ * <ul>
+ *   <li>{@code POST /ocr[?save=true&name=...]} with the image as the request body: the page text and
+ *       its per-region candidate expressions. {@code save} also writes the result to history.</li>
+ *   <li>{@code GET /plot?expr=...[&from=-10&to=10&points=2000]}: the adaptively sampled curve as
+ *       {@code x} and {@code y} arrays ({@code null} marks a gap); {@code points} is the evaluation
+ *       budget, from {@link AdaptiveSampler#MIN_BUDGET} up. {@code &format=png[&width=800&height=600]}
+ *       returns the rendered chart of the same range instead.</li>
+ *   <li>{@code GET /history[?limit=50&afterCreated=<millis>&afterId=<id>]}: a page of history, oldest
+ *       first, with the cursor of the next page; {@code ?q=...[&mode=token|prefix|substring&offset=0]}
+ *       searches instead.</li>
+ * </ul>
+ * Every endpoint has a bounded number of admission slots: requests running plus those waiting
+ * behind them. OCR gets two per Tesseract engine, so once the engines are saturated further
+ * uploads are turned away at once with {@code 429 Too Many Requests} and {@code Retry-After}
+ * rather than queueing unboundedly; an upload takes its slot before its body is read, so a busy
+ * server doesn't read and hash images it is going to turn away. Identical requests arriving while one is in progress (same
+ * endpoint and parameters, and for OCR the same image bytes) don't take a slot: they wait for that
+ * request and share its response, so e.g. an image uploaded by several clients is recognised once
+ * and saved to history once. They wait without a thread (answered when the request they joined
+ * finishes), and only so many may wait at a time.
+ * <p>
+ * In front of all that, connections wait for a request thread in a queue as long as the thread
+ * pool; when it is full they are answered 429 straight away instead of piling up.
+ */
+public class ApiServer {
+
+    static final int MAX_IMAGE_BYTES = 32 * 1024 * 1024;
+    static final int MAX_POINTS = 100_000;
+    static final int MAX_PAGE = 500;
+    static final int MAX_IMAGE_SIDE = 4000;
+
+    private static final Metrics.Counter REQUESTS = Metrics.counter("api.requests");
+    private static final Metrics.Counter REJECTED = Metrics.counter("api.rejected"); // 429s
+    private static final Metrics.Counter COALESCED = Metrics.counter("api.coalesced"); // Served by an identical request in flight
+    private static final Metrics.Timer OCR_TIMER = Metrics.timer("api.ocr");
+    private static final Metrics.Timer PLOT_TIMER = Metrics.timer("api.plot");
+    private static final Metrics.Timer HISTORY_TIMER = Metrics.timer("api.history");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final HistoryStore store; // Null if history is disabled; may be disconnected
+    private final Path uploads; // Uploaded images are staged here while they are recognised
+    private final Window.JFreeChartGrapher grapher = new Window.JFreeChartGrapher();
+    private final Map<String, CompletableFuture<Response>> inFlight = new ConcurrentHashMap<>();
+    private final Semaphore ocrSlots;
+    private final Semaphore plotSlots;
+    private final Semaphore historySlots;
+    private final Semaphore waiters; // Coalesced requests parked on another request's result
+
+    // Set while the HTTP dispatcher runs an exchange the executor had no room for, see reject()
+    private static final ThreadLocal<Boolean> OVERLOADED = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * A complete HTTP response, shared between coalesced requests.
+     */
+    static class Response {
+        final int status;
+        final String contentType;
+        final byte[] body;
+
+        Response(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        static Response json(int status, String json) {
+            return new Response(status, "application/json; charset=utf-8", json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Response error(int status, String message) {
+            return json(status, "{\"error\":" + BatchCli.jsonString(message) + "}");
+        }
+    }
+
+    /**
+     * A request the client got wrong; answered with its status code and message.
+     */
+    static class RequestException extends RuntimeException {
+        final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * The work behind one endpoint.
+     */
+    private interface Handler {
+        Response handle() throws Exception;
+    }
+
+    /**
+     * @param address  Address and port to listen on.
+     * @param threads  Number of requests handled concurrently; as many more may queue for a thread.
+     * @param store    History store for {@code /history} and {@code /ocr?save=true}, or null.
+     */
+    public ApiServer(InetSocketAddress address, int threads, HistoryStore store) throws IOException {
+        this.store = store;
+        this.uploads = Files.createTempDirectory("mathematica-uploads");
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.ocrSlots = new Semaphore(2 * TesseractPool.shared().getSize());
+        this.plotSlots = new Semaphore(2 * cores);
+        this.historySlots = new Semaphore(2 * cores);
+
+        int size = Math.max(1, threads);
+        this.waiters = new Semaphore(4 * size);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(size), r -> {
+            Thread t = new Thread(r, "api-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, (exchange, pool) -> reject(exchange));
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting connections, waits up to a second for running requests, frees the shared
+     * Tesseract engines and closes the history store.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdownNow();
+        TesseractPool.shared().shutdown();
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        String host = "127.0.0.1";
+        int port = 8088;
+        int threads = 4 * Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port": port = Integer.parseInt(args[++i]); break;
+                    case "--bind": host = args[++i]; break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        } catch (RuntimeException e) { // Unknown option, missing or malformed value
+            System.err.println(e instanceof IllegalArgumentException ? e.getMessage() : "Missing option value");
+            System.err.println("usage: java ApiServer [--port 8088] [--bind 127.0.0.1] [--threads N]");
+            System.exit(2);
+        }
+
+        HistoryStore store = HistoryStore.open();
+        if (!store.isConnected()) {
+            // Kept anyway: ?save=true writes are spilled to disk and replayed once the store reconnects.
+            System.err.println("History store not connected, /history is unavailable until it reconnects.");
+        }
+        ApiServer api = new ApiServer(new InetSocketAddress(host, port), threads, store);
+        Runtime.getRuntime().addShutdownHook(new Thread(api::stop, "api-shutdown"));
+        api.start();
+        System.out.println("Listening on http://" + host + ":" + api.getAddress().getPort() + "/");
+    }
+
+    /**
+     * Runs an exchange the executor has no room for on the calling HTTP dispatcher thread (as the
+     * server's default executor would), where {@link #handle} answers it with 429 without doing
+     * its work or reading its body.
+     */
+    private static void reject(Runnable exchange) {
+        OVERLOADED.set(true);
+        try {
+            exchange.run();
+        } finally {
+            OVERLOADED.set(false);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        REQUESTS.increment();
+        Response response;
+        if (OVERLOADED.get()) {
+            response = busy();
+        } else {
+            try {
+                response = route(exchange);
+            } catch (RequestException e) {
+                response = Response.error(e.status, e.getMessage());
+            } catch (Exception | LinkageError e) {
+                response = Response.error(500, e.toString());
+            }
+        }
+        if (response != null) { // Null: a coalesced request, answered when the one it joined is done
+            send(exchange, response);
+        }
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        try {
+            if (response.status == 429) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+            }
+            exchange.getResponseHeaders().set("Content-Type", response.contentType);
+            exchange.sendResponseHeaders(response.status, response.body.length == 0 ? -1 : response.body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response.body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Response route(HttpExchange exchange) throws Exception {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        switch (path) {
+            case "/ocr": {
+                requireMethod(method, "POST");
+                boolean save = Boolean.parseBoolean(query.get("save"));
+                String name = query.get("name");
+                String suffix = suffixFor(exchange.getRequestHeaders().getFirst("Content-Type"));
+                if (!ocrSlots.tryAcquire()) { // Before reading up to MAX_IMAGE_BYTES of body
+                    return busy();
+                }
+                byte[] image;
+                String key;
+                try {
+                    image = readBody(exchange.getRequestBody());
+                    key = "ocr " + sha256(image) + " save=" + save + " name=" + name;
+                } catch (Exception e) {
+                    ocrSlots.release();
+                    throw e;
+                }
+                return admitted(exchange, ocrSlots, key, OCR_TIMER, () -> ocr(image, suffix, save, name));
+            }
+            case "/plot":
+                requireMethod(method, "GET");
+                return admit(exchange, plotSlots, "plot " + query, PLOT_TIMER, () -> plot(query));
+            case "/history":
+                requireMethod(method, "GET");
+                return admit(exchange, historySlots, "history " + query, HISTORY_TIMER, () -> history(query));
+            default:
+                throw new RequestException(404, "No such endpoint: " + path);
+        }
+    }
+
+    /**
+     * Runs a request in one of the endpoint's admission slots, or joins an identical request
+     * already in flight.
+     *
+     * @return The response, 429 if every slot is taken, or null once joined (see {@link #join}).
+     */
+    private Response admit(HttpExchange exchange, Semaphore slots, String key, Metrics.Timer timer, Handler handler) throws Exception {
+        CompletableFuture<Response> running = inFlight.get(key);
+        if (running != null) {
+            return join(exchange, running);
+        }
+        if (!slots.tryAcquire()) {
+            return busy();
+        }
+        return admitted(exchange, slots, key, timer, handler);
+    }
+
+    /**
+     * {@link #admit} for a request that already holds one of the endpoint's slots. The slot is
+     * given back before joining an identical request in flight, otherwise once the request is done.
+     */
+    private Response admitted(HttpExchange exchange, Semaphore slots, String key, Metrics.Timer timer, Handler handler) throws Exception {
+        CompletableFuture<Response> mine = new CompletableFuture<>();
+        CompletableFuture<Response> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) { // An identical request got in first
+            slots.release();
+            return join(exchange, running);
+        }
+        try {
+            long start = timer.start();
+            Response response;
+            try {
+                response = handler.handle();
+            } catch (RequestException e) {
+                response = Response.error(e.status, e.getMessage());
+            } catch (Exception | LinkageError e) { // LinkageError: Tesseract natives missing
+                response = Response.error(500, e.toString());
+            } finally {
+                timer.stop(start);
+            }
+            mine.complete(response); // Identical requests share even an error
+            return response;
+        } finally {
+            inFlight.remove(key, mine);
+            slots.release();
+        }
+    }
+
+    private static Response busy() {
+        REJECTED.increment();
+        return Response.error(429, "Busy, retry shortly");
+    }
+
+    /**
+     * Parks {@code exchange} on an identical request in flight, without holding a thread: it is
+     * answered with the same response by whichever thread completes {@code running}.
+     *
+     * @return null, or 429 if too many requests are already waiting.
+     */
+    private Response join(HttpExchange exchange, CompletableFuture<Response> running) {
+        if (!waiters.tryAcquire()) {
+            return busy();
+        }
+        COALESCED.increment();
+        running.whenComplete((response, error) -> { // Never completed exceptionally, see admitted()
+            waiters.release();
+            try {
+                send(exchange, response);
+            } catch (IOException e) {
+                // The client went away
+            }
+        });
+        return null;
+    }
+
+    private Response ocr(byte[] image, String suffix, boolean save, String name) throws IOException {
+        if (image.length == 0) {
+            throw new RequestException(400, "Send the image as the request body");
+        }
+        if (save && store == null) {
+            throw new RequestException(503, "History store unavailable");
+        }
+        Path file = Files.createTempFile(uploads, "upload-", suffix);
+        try {
+            Files.write(file, image);
+            // A fresh TextExtract per request keeps its result fields confined to this thread.
+            TextExtract extractor = new TextExtract();
+            List<String> candidates = extractor.performRegions(file.toString());
+            String text = extractor.getExtractedText();
+            if (text == null || text.trim().isEmpty() || text.trim().equalsIgnoreCase("File::Error")) {
+                throw new RequestException(422, "No text recognised in the image");
+            }
+            if (save) {
+                store.CreateData(name != null ? name : "upload:" + file.getFileName(), text);
+            }
+            StringBuilder json = new StringBuilder("{\"text\":").append(BatchCli.jsonString(text)).append(",\"candidates\":[");
+            for (int i = 0; i < candidates.size(); i++) {
+                json.append(i == 0 ? "" : ",").append(BatchCli.jsonString(candidates.get(i)));
+            }
+            return Response.json(200, json.append("],\"saved\":").append(save).append('}').toString());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private Response plot(Map<String, String> query) throws IOException {
+        String expr = query.get("expr");
+        if (expr == null || expr.trim().isEmpty()) {
+            throw new RequestException(400, "Missing expr");
+        }
+        String equation = Window.stripAssignment(expr);
+        double from = doubleParam(query, "from", -10);
+        double to = doubleParam(query, "to", 10);
+        if (!(from < to)) {
+            throw new RequestException(400, "from must be less than to");
+        }
+        int points = intParam(query, "points", AdaptiveSampler.DEFAULT_BUDGET, AdaptiveSampler.MIN_BUDGET, MAX_POINTS);
+        if ("png".equals(query.get("format"))) {
+            int width = intParam(query, "width", 800, 1, MAX_IMAGE_SIDE);
+            int height = intParam(query, "height", 600, 1, MAX_IMAGE_SIDE);
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            if (!grapher.writeChartAsPng(Collections.singletonList(equation), "y = " + equation, png, width, height, from, to, points)) {
+                throw new RequestException(400, "Cannot plot: " + expr);
+            }
+            return new Response(200, "image/png", png.toByteArray());
+        }
+
+        CompiledExpression compiled;
+        try {
+            compiled = CompiledExpression.compile(equation);
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, e.getMessage());
+        }
+        AdaptiveSampler.Samples samples = new AdaptiveSampler(points).sample(compiled.newEvaluator(), from, to);
+        StringBuilder json = new StringBuilder(32 + samples.size() * 40);
+        json.append("{\"expression\":").append(BatchCli.jsonString(compiled.getSource()))
+                .append(",\"from\":").append(from).append(",\"to\":").append(to);
+        appendArray(json.append(",\"x\":"), samples.getXs());
+        appendArray(json.append(",\"y\":"), samples.getYs());
+        return Response.json(200, json.append('}').toString());
+    }
+
+    private Response history(Map<String, String> query) throws SQLException {
+        if (store == null || !store.isConnected()) {
+            throw new RequestException(503, "History store unavailable");
+        }
+        int limit = intParam(query, "limit", 50, 1, MAX_PAGE);
+        List<HistoryRecord> rows;
+        String q = query.get("q");
+        if (q != null) {
+            HistoryStore.SearchMode mode;
+            try {
+                mode = HistoryStore.SearchMode.valueOf(query.getOrDefault("mode", "token").toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new RequestException(400, "mode must be token, prefix or substring");
+            }
+            rows = store.searchHistory(q, mode, intParam(query, "offset", 0, 0, Integer.MAX_VALUE), limit);
+        } else {
+            Timestamp after = query.containsKey("afterCreated") ? new Timestamp(longParam(query, "afterCreated")) : null;
+            long afterId = query.containsKey("afterId") ? longParam(query, "afterId") : 0;
+            rows = store.fetchHistoryPage(after, afterId, limit);
+        }
+
+        StringBuilder json = new StringBuilder("{\"rows\":[");
+        for (int i = 0; i < rows.size(); i++) {
+            HistoryRecord row = rows.get(i);
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"id\":").append(row.getId())
+                    .append(",\"filePath\":").append(BatchCli.jsonString(row.getFilePath()))
+                    .append(",\"question\":").append(BatchCli.jsonString(row.getQuestion()))
+                    .append(",\"created\":").append(row.getCreated().getTime()).append('}');
+        }
+        json.append(']');
+        if (q == null && rows.size() == limit) {
+            HistoryRecord last = rows.get(rows.size() - 1);
+            json.append(",\"next\":{\"afterCreated\":").append(last.getCreated().getTime())
+                    .append(",\"afterId\":").append(last.getId()).append('}');
+        }
+        return Response.json(200, json.append('}').toString());
+    }
+
+    private static void appendArray(StringBuilder json, double[] values) {
+        json.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            double v = values[i];
+            if (Double.isFinite(v)) {
+                json.append(v);
+            } else {
+                json.append("null"); // A gap: pole, jump or undefined region
+            }
+        }
+        json.append(']');
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!method.equalsIgnoreCase(expected)) {
+            throw new RequestException(405, "Use " + expected);
+        }
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        byte[] body = in.readNBytes(MAX_IMAGE_BYTES + 1);
+        if (body.length > MAX_IMAGE_BYTES) {
+            throw new RequestException(413, "Image larger than " + MAX_IMAGE_BYTES + " bytes");
+        }
+        return body;
+    }
+
+    /**
+     * A file suffix for the uploaded image, so formats Tesseract reads by extension are recognised.
+     */
+    private static String suffixFor(String contentType) {
+        if (contentType == null) {
+            return ".png";
+        }
+        switch (contentType.toLowerCase()) {
+            case "image/jpeg": return ".jpg";
+            case "image/gif": return ".gif";
+            case "image/bmp": return ".bmp";
+            case "image/tiff": return ".tif";
+            case "image/webp": return ".webp";
+            default: return ".png";
+        }
+    }
+
+    /**
+     * Decodes a query string. Sorted, so the same parameters in any order coalesce.
+     */
+    static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new TreeMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            query.put(name, value);
+        }
+        return query;
+    }
+
+    private static int intParam(Map<String, String> query, String name, int defaultValue, int min, int max) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int n = Integer.parseInt(value.trim());
+            if (n >= min && n <= max) {
+                return n;
+            }
+        } catch (NumberFormatException ignored) {
+            // Reported below
+        }
+        throw new RequestException(400, name + " must be a whole number from " + min + " to " + max);
+    }
+
+    private static long longParam(Map<String, String> query, String name) {
+        try {
+            return Long.parseLong(query.get(name).trim());
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, name + " must be a whole number");
+        }
+    }
+
+    private static double doubleParam(Map<String, String> query, String name, double defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            double d = Double.parseDouble(value.trim());
+            if (Double.isFinite(d)) {
+                return d;
+            }
+        } catch (NumberFormatException ignored) {
+            // Reported below
+        }
+        throw new RequestException(400, name + " must be a number");
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return OcrCache.toHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every JVM provides SHA-256
+        }
+    }
+}
@@ -0,0 +1,174 @@
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable {@code XYDataset} over parallel {@code double[]} arrays, one pair per series.
+ * <p>
+ * Unlike {@code XYSeries} there is no {@code XYDataItem} per point, no re-sorting or duplicate
+ * check on insert and no change events: a dataset is built once from finished samples and, when
+ * the curves change, replaced as a whole. That also makes it safe to build on a background thread
+ * and hand to the EDT.
+ * <p>
+ * A NaN y value is a break in the curve; line renderers don't connect across it. x values must be
+ * increasing within a series (the dataset reports {@link DomainOrder#ASCENDING}, which lets
+ * renderers skip straight to the visible items). Domain and range bounds are computed once, so
+ * auto-ranging doesn't rescan the data.
+ */
+public final class ArrayXYDataset extends AbstractXYDataset implements DomainInfo, RangeInfo {
+
+    private final Comparable<?>[] keys;
+    private final double[][] xs;
+    private final double[][] ys;
+    private final Range domainBounds; // null when there are no points
+    private final Range rangeBounds; // null when there is no finite y
+
+    private ArrayXYDataset(List<Comparable<?>> keys, List<double[]> xs, List<double[]> ys) {
+        this.keys = keys.toArray(new Comparable<?>[0]);
+        this.xs = xs.toArray(new double[0][]);
+        this.ys = ys.toArray(new double[0][]);
+
+        double xMin = Double.POSITIVE_INFINITY, xMax = Double.NEGATIVE_INFINITY;
+        double yMin = Double.POSITIVE_INFINITY, yMax = Double.NEGATIVE_INFINITY;
+        for (int s = 0; s < this.xs.length; s++) {
+            double[] x = this.xs[s];
+            double[] y = this.ys[s];
+            if (x.length > 0) {
+                xMin = Math.min(xMin, x[0]); // Ascending
+                xMax = Math.max(xMax, x[x.length - 1]);
+            }
+            for (double value : y) {
+                if (value < yMin) { // NaN never compares true
+                    yMin = value;
+                }
+                if (value > yMax) {
+                    yMax = value;
+                }
+            }
+        }
+        this.domainBounds = xMin <= xMax ? new Range(xMin, xMax) : null;
+        this.rangeBounds = yMin <= yMax ? new Range(yMin, yMax) : null;
+    }
+
+    /**
+     * Collects series for an {@link ArrayXYDataset}.
+     */
+    public static final class Builder {
+        private final List<Comparable<?>> keys = new ArrayList<>();
+        private final List<double[]> xs = new ArrayList<>();
+        private final List<double[]> ys = new ArrayList<>();
+
+        /**
+         * Adds a series. The arrays are used as they are, not copied: they must not be modified
+         * afterwards.
+         *
+         * @param key The series key shown in the legend; unique within the dataset.
+         * @param x   The x values, increasing.
+         * @param y   The y values, NaN at breaks; same length as {@code x}.
+         * @return This builder.
+         */
+        public Builder addSeries(Comparable<?> key, double[] x, double[] y) {
+            if (x.length != y.length) {
+                throw new IllegalArgumentException("x and y lengths differ for series " + key);
+            }
+            if (keys.contains(key)) {
+                throw new IllegalArgumentException("Duplicate series key " + key);
+            }
+            keys.add(key);
+            xs.add(x);
+            ys.add(y);
+            return this;
+        }
+
+        /** @return The dataset holding every series added so far. */
+        public ArrayXYDataset build() {
+            return new ArrayXYDataset(keys, xs, ys);
+        }
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return keys.length;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Comparable getSeriesKey(int series) {
+        return keys[series];
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        return xs[series].length;
+    }
+
+    /** @return The x values of a series, increasing. Do not modify. */
+    double[] getXs(int series) {
+        return xs[series];
+    }
+
+    /** @return The y values of a series, NaN at breaks. Do not modify. */
+    double[] getYs(int series) {
+        return ys[series];
+    }
+
+    @Override
+    public DomainOrder getDomainOrder() {
+        return DomainOrder.ASCENDING;
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        return xs[series][item];
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        return ys[series][item];
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return xs[series][item]; // Boxed only for tooltips and other rare callers
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        return ys[series][item];
+    }
+
+    @Override
+    public double getDomainLowerBound(boolean includeInterval) {
+        return domainBounds == null ? Double.NaN : domainBounds.getLowerBound();
+    }
+
+    @Override
+    public double getDomainUpperBound(boolean includeInterval) {
+        return domainBounds == null ? Double.NaN : domainBounds.getUpperBound();
+    }
+
+    @Override
+    public Range getDomainBounds(boolean includeInterval) {
+        return domainBounds;
+    }
+
+    @Override
+    public double getRangeLowerBound(boolean includeInterval) {
+        return rangeBounds == null ? Double.NaN : rangeBounds.getLowerBound();
+    }
+
+    @Override
+    public double getRangeUpperBound(boolean includeInterval) {
+        return rangeBounds == null ? Double.NaN : rangeBounds.getUpperBound();
+    }
+
+    @Override
+    public Range getRangeBounds(boolean includeInterval) {
+        return rangeBounds;
+    }
+}
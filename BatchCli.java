@@ -0,0 +1,482 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless entry point for the OCR-to-history pipeline, for servers and scheduled jobs: no Swing
+ * window is created and no display is needed.
+ * <p>
+ * Each image is recognised region by region (as an upload in the window is), written to history,
+ * appended to the results file as one CSV or JSON line, and optionally plotted to a PNG file.
+ * Images are processed on a pool of worker threads and the Tesseract engine pool is sized to match,
+ * so {@code --threads} sets how many cores a run keeps busy. Paths are read lazily from standard
+ * input when none are given, and at most two images per worker are in flight, so arbitrarily long
+ * lists stream through in constant memory.
+ * <p>
+ * History goes to the store selected by the usual {@code -Dmathematica.store} properties (see
+ * {@link HistoryStore#open()}); if the database is down, results are spilled to disk and written to
+ * history once it is reachable again.
+ */
+public class BatchCli {
+
+    private static final String USAGE = String.join("\n",
+            "usage: java BatchCli [options] [image-or-directory ...]",
+            "  Reads image paths from standard input, one per line, when none are given (or for \"-\").",
+            "  Directories are searched recursively for images.",
+            "",
+            "  --output FILE      Results file, CSV if FILE ends in .csv, otherwise JSON lines (default: standard output)",
+            "  --format csv|jsonl Results format, overriding the file extension",
+            "  --plots DIR        Plot the equations found on each image to DIR/<image name>.png",
+            "  --size WxH         Plot size in pixels (default 800x600)",
+            "  --threads N        Images processed in parallel (default: number of cores)",
+            "  --no-history       Don't write results to history");
+
+    private final Options options;
+    private final HistoryStore store; // Null when history is disabled
+    private final OutputStream stdout; // Where results go without --output; System.out carries only status lines
+    private final Window.JFreeChartGrapher grapher = new Window.JFreeChartGrapher();
+    private final Set<String> plotNames = new HashSet<>(); // Guarded by itself
+
+    /**
+     * Command line settings.
+     */
+    static class Options {
+        final List<String> inputs = new ArrayList<>();
+        File output;
+        boolean csv;
+        File plots;
+        int width = 800;
+        int height = 600;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean history = true;
+
+        /**
+         * @throws IllegalArgumentException If the arguments are malformed.
+         */
+        static Options parse(String[] args) {
+            Options options = new Options();
+            String format = null;
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--output":
+                        options.output = new File(value(args, ++i, arg));
+                        break;
+                    case "--format":
+                        format = value(args, ++i, arg);
+                        if (!format.equals("csv") && !format.equals("jsonl")) {
+                            throw new IllegalArgumentException("Unknown format: " + format);
+                        }
+                        break;
+                    case "--plots":
+                        options.plots = new File(value(args, ++i, arg));
+                        break;
+                    case "--size":
+                        String[] size = value(args, ++i, arg).toLowerCase().split("x");
+                        if (size.length != 2) {
+                            throw new IllegalArgumentException("--size must be WIDTHxHEIGHT");
+                        }
+                        options.width = positive(size[0], arg);
+                        options.height = positive(size[1], arg);
+                        break;
+                    case "--threads":
+                        options.threads = positive(value(args, ++i, arg), arg);
+                        break;
+                    case "--no-history":
+                        options.history = false;
+                        break;
+                    case "--help":
+                    case "-h":
+                        throw new IllegalArgumentException("");
+                    default:
+                        if (arg.startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option: " + arg);
+                        }
+                        options.inputs.add(arg);
+                }
+            }
+            options.csv = format != null ? format.equals("csv")
+                    : options.output != null && options.output.getName().toLowerCase().endsWith(".csv");
+            return options;
+        }
+
+        private static String value(String[] args, int i, String option) {
+            if (i >= args.length) {
+                throw new IllegalArgumentException(option + " needs a value");
+            }
+            return args[i];
+        }
+
+        private static int positive(String value, String option) {
+            try {
+                int n = Integer.parseInt(value.trim());
+                if (n > 0) {
+                    return n;
+                }
+            } catch (NumberFormatException ignored) {
+                // Reported below
+            }
+            throw new IllegalArgumentException(option + " must be a positive number: " + value);
+        }
+    }
+
+    /**
+     * The outcome for one image, as written to the results file.
+     */
+    static class Result {
+        final String image;
+        String text = "";
+        List<String> candidates = Collections.emptyList();
+        boolean failed;
+        String plot; // Null if not plotted
+        String error; // Null unless something went wrong
+        long millis;
+
+        Result(String image) {
+            this.image = image;
+        }
+    }
+
+    BatchCli(Options options, HistoryStore store, OutputStream stdout) {
+        this.options = options;
+        this.store = store;
+        this.stdout = stdout;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        // Results may go to standard output, so status messages printed anywhere in the process
+        // (store, journal, cache) are sent to standard error instead of corrupting them.
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            if (!e.getMessage().isEmpty()) {
+                System.err.println(e.getMessage());
+            }
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        // One Tesseract engine per worker, unless configured explicitly.
+        if (System.getProperty("mathematica.ocr.engines") == null) {
+            System.setProperty("mathematica.ocr.engines", String.valueOf(options.threads));
+        }
+        if (options.plots != null && !options.plots.isDirectory() && !options.plots.mkdirs()) {
+            System.err.println("Cannot create plot directory " + options.plots);
+            System.exit(2);
+        }
+
+        HistoryStore store = null;
+        if (options.history) {
+            store = HistoryStore.open();
+            if (!store.isConnected()) {
+                // Kept anyway: the store spills the writes to disk and replays them once it is reachable again.
+                System.err.println("History store not connected, results will be saved to history once it reconnects.");
+            }
+        }
+        int exitCode;
+        try {
+            int failed = new BatchCli(options, store, stdout).run();
+            exitCode = failed == 0 ? 0 : 1;
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Batch aborted: " + e.getMessage());
+            exitCode = 2;
+        } finally {
+            TesseractPool.shared().shutdown(); // Frees the engines' native handles
+            if (store != null) {
+                store.close(); // Flushes history writes still queued
+            }
+        }
+        System.exit(exitCode); // After the finally block, so an aborted run still saves its history
+    }
+
+    /**
+     * Processes every input image and writes the results.
+     *
+     * @return The number of images that failed.
+     */
+    int run() throws IOException, InterruptedException {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(options.threads, r -> {
+            Thread t = new Thread(r, "cli-ocr-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Semaphore inFlight = new Semaphore(options.threads * 2); // Bounds memory however long the input is
+        AtomicInteger total = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        long startNanos = System.nanoTime();
+
+        try (ResultWriter out = new ResultWriter(options, stdout)) {
+            InputReader inputs = new InputReader(options.inputs);
+            for (File image = inputs.next(); image != null; image = inputs.next()) {
+                inFlight.acquire();
+                total.incrementAndGet();
+                File next = image;
+                pool.execute(() -> {
+                    try {
+                        Result result = process(next);
+                        if (result.failed) {
+                            failed.incrementAndGet();
+                        }
+                        out.write(result);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+
+        BatchIngest.Summary summary = new BatchIngest.Summary(total.get(), failed.get(), System.nanoTime() - startNanos);
+        System.err.printf("Processed %d images (%d failed) in %.1f s, %.2f images/s%n", summary.getTotal(),
+                summary.getFailed(), summary.getElapsedSeconds(), summary.getImagesPerSecond());
+        return summary.getFailed();
+    }
+
+    /**
+     * Recognises one image, saves it to history and plots it. Runs on a worker thread.
+     */
+    Result process(File image) {
+        long start = System.nanoTime();
+        Result result = new Result(image.getAbsolutePath());
+        try {
+            // A fresh TextExtract per image keeps its result fields confined to this worker thread.
+            TextExtract extractor = new TextExtract();
+            result.candidates = extractor.performRegions(result.image);
+            result.text = extractor.getExtractedText();
+            result.failed = result.text == null || result.text.trim().isEmpty()
+                    || result.text.trim().equalsIgnoreCase("File::Error");
+            if (!result.failed) {
+                if (store != null) {
+                    store.CreateData(result.image, result.text);
+                }
+                if (options.plots != null) {
+                    result.plot = plot(image, result.text, result.candidates);
+                }
+            }
+        } catch (Exception | LinkageError except) { // LinkageError: Tesseract natives missing
+            result.failed = true;
+            result.error = except.toString();
+        }
+        result.millis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+
+    /**
+     * Plots the equations on a page: every region in one chart, or else the whole text, as the
+     * window does after an upload.
+     *
+     * @return The PNG file's path, or null if nothing on the page could be plotted.
+     */
+    private String plot(File image, String text, List<String> candidates) throws IOException {
+        String title = "Plot of " + image.getName();
+        File file = plotFile(image);
+        if (candidates.size() >= 2) {
+            List<String> equations = new ArrayList<>();
+            for (String candidate : candidates) {
+                equations.add(Window.stripAssignment(candidate));
+            }
+            if (grapher.writeChartAsPng(equations, title, file, options.width, options.height)) {
+                return file.getPath();
+            }
+        }
+        if (grapher.writeChartAsPng(Collections.singletonList(Window.stripAssignment(text)), title, file,
+                options.width, options.height)) {
+            return file.getPath();
+        }
+        return null;
+    }
+
+    /**
+     * Picks the plot file for an image, numbering it when images in different folders share a name.
+     */
+    private File plotFile(File image) {
+        String name = image.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        synchronized (plotNames) {
+            String candidate = base;
+            for (int n = 2; !plotNames.add(candidate); n++) {
+                candidate = base + "-" + n;
+            }
+            return new File(options.plots, candidate + ".png");
+        }
+    }
+
+    /**
+     * Quotes a string as a JSON string literal, or returns {@code null} for null.
+     */
+    static String jsonString(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * The images to process, in order: the arguments, or the lines of standard input, with
+     * directories expanded. Explicitly named files are kept even if missing, so they are reported
+     * as failed rather than silently skipped.
+     */
+    private static class InputReader {
+        private final List<String> arguments;
+        private int nextArgument;
+        private BufferedReader stdin;
+        private final List<File> pending = new ArrayList<>();
+
+        InputReader(List<String> arguments) {
+            this.arguments = arguments.isEmpty() ? Collections.singletonList("-") : arguments;
+        }
+
+        /** @return The next image, or null when the input is exhausted. */
+        File next() throws IOException {
+            while (pending.isEmpty()) {
+                String path = nextPath();
+                if (path == null) {
+                    return null;
+                }
+                File f = new File(path);
+                if (f.isDirectory()) {
+                    pending.addAll(BatchIngest.collectImages(new File[]{ f }));
+                } else {
+                    pending.add(f);
+                }
+            }
+            return pending.remove(0);
+        }
+
+        private String nextPath() throws IOException {
+            while (true) {
+                if (stdin != null) {
+                    String line = stdin.readLine();
+                    if (line != null) {
+                        if (!line.trim().isEmpty()) {
+                            return line.trim();
+                        }
+                        continue;
+                    }
+                    stdin = null;
+                }
+                if (nextArgument >= arguments.size()) {
+                    return null;
+                }
+                String argument = arguments.get(nextArgument++);
+                if (!argument.equals("-")) {
+                    return argument;
+                }
+                stdin = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Appends results as CSV rows or JSON lines, flushed per image so a run that is killed keeps
+     * everything finished so far. Safe to call from any worker thread.
+     */
+    private static class ResultWriter implements Closeable {
+        private final Writer out;
+        private final boolean csv;
+        private final boolean ownsStream;
+
+        ResultWriter(Options options, OutputStream stdout) throws IOException {
+            this.csv = options.csv;
+            this.ownsStream = options.output != null;
+            this.out = new BufferedWriter(new OutputStreamWriter(
+                    ownsStream ? new FileOutputStream(options.output) : stdout, StandardCharsets.UTF_8));
+            if (csv) {
+                out.write("image,status,text,plot,millis,error\n");
+                out.flush();
+            }
+        }
+
+        synchronized void write(Result result) {
+            StringBuilder line = new StringBuilder();
+            String status = result.failed ? "failed" : "ok";
+            if (csv) {
+                line.append(csvField(result.image)).append(',').append(status).append(',')
+                        .append(csvField(result.text)).append(',').append(csvField(result.plot)).append(',')
+                        .append(result.millis).append(',').append(csvField(result.error));
+            } else {
+                line.append("{\"image\":").append(jsonString(result.image))
+                        .append(",\"status\":\"").append(status).append('"')
+                        .append(",\"text\":").append(jsonString(result.text))
+                        .append(",\"candidates\":[");
+                for (int i = 0; i < result.candidates.size(); i++) {
+                    line.append(i == 0 ? "" : ",").append(jsonString(result.candidates.get(i)));
+                }
+                line.append("],\"plot\":").append(jsonString(result.plot))
+                        .append(",\"millis\":").append(result.millis);
+                if (result.error != null) {
+                    line.append(",\"error\":").append(jsonString(result.error));
+                }
+                line.append('}');
+            }
+            try {
+                out.write(line.append('\n').toString());
+                out.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot write results: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (ownsStream) {
+                out.close();
+            } else {
+                out.flush();
+            }
+        }
+
+        static String csvField(String value) {
+            if (value == null) {
+                return "";
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+}
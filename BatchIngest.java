@@ -0,0 +1,238 @@
+import javax.swing.SwingUtilities;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Batch ingest of many images or whole folders. Images are recognised across a pool of
+ * worker threads; each result is written to the database by the worker that produced it and
+ * streamed to the listener as soon as it finishes, rather than after the whole batch.
+ * All listener callbacks are delivered on the EDT.
+ */
+public class BatchIngest {
+
+    private final int workers;
+    private final HistoryStore database; // May be null, in which case results are only reported
+    private volatile ThreadPoolExecutor executor;
+    private volatile boolean cancelled;
+    private volatile IntConsumer onSkipped; // Accounts for images cancel() removed from the queue
+
+    /**
+     * Receives streaming results and the final summary of a batch. Every method is invoked on the EDT.
+     */
+    public interface Listener {
+        /** Called once per image as soon as its extraction (and history write) finishes. */
+        void onImageDone(String imagePath, String extractedText, boolean failed, int completed, int total);
+
+        /**
+         * Called once after every image in the batch has been processed, or after a cancelled batch
+         * has finished the images it was working on ({@link Summary#isCancelled()}).
+         */
+        void onFinished(Summary summary);
+    }
+
+    /**
+     * Totals for a finished batch. For a cancelled batch they cover the images processed before it
+     * stopped; the rest count as skipped.
+     */
+    public static class Summary {
+        private final int total;
+        private final int completed;
+        private final int failed;
+        private final long elapsedNanos;
+        private final boolean cancelled;
+
+        Summary(int total, int failed, long elapsedNanos) {
+            this(total, total, failed, elapsedNanos, false);
+        }
+
+        Summary(int total, int completed, int failed, long elapsedNanos, boolean cancelled) {
+            this.total = total;
+            this.completed = completed;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+            this.cancelled = cancelled;
+        }
+
+        /** @return Images in the batch, processed or not. */
+        public int getTotal() { return total; }
+        /** @return Images processed, successfully or not. */
+        public int getCompleted() { return completed; }
+        public int getFailed() { return failed; }
+        public int getSucceeded() { return completed - failed; }
+        /** @return Images never processed because the batch was cancelled. */
+        public int getSkipped() { return total - completed; }
+        public boolean isCancelled() { return cancelled; }
+        public double getElapsedSeconds() { return elapsedNanos / 1_000_000_000.0; }
+
+        /** @return Processed images per second over the whole batch. */
+        public double getImagesPerSecond() {
+            double seconds = getElapsedSeconds();
+            return seconds > 0 ? completed / seconds : 0.0;
+        }
+    }
+
+    /**
+     * @param workers  Number of images recognised in parallel.
+     * @param database History store that receives each result, or null to skip history writes.
+     */
+    public BatchIngest(int workers, HistoryStore database) {
+        this.workers = Math.max(1, workers);
+        this.database = database;
+    }
+
+    /**
+     * Checks whether a file has one of the supported image extensions.
+     *
+     * @param f The file to check.
+     * @return true if the file name ends with a supported image extension.
+     */
+    public static boolean isImageFile(File f) {
+        String name = f.getName().toLowerCase();
+        return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png") ||
+               name.endsWith(".gif") || name.endsWith(".bmp") || name.endsWith(".webp");
+    }
+
+    /**
+     * Expands a selection of files and folders into the list of image files it contains.
+     * Folders are walked recursively; files are returned in name order within each folder.
+     *
+     * @param selection Files and/or folders chosen by the user.
+     * @return All image files found in the selection.
+     */
+    public static List<File> collectImages(File[] selection) {
+        List<File> images = new ArrayList<>();
+        for (File f : selection) {
+            collectImages(f, images);
+        }
+        return images;
+    }
+
+    private static void collectImages(File f, List<File> images) {
+        if (f.isDirectory()) {
+            File[] children = f.listFiles();
+            if (children == null) {
+                return;
+            }
+            Arrays.sort(children);
+            for (File child : children) {
+                collectImages(child, images);
+            }
+        } else if (f.isFile() && isImageFile(f)) {
+            images.add(f);
+        }
+    }
+
+    /**
+     * Starts processing a batch in the background and returns immediately.
+     *
+     * @param images   Image files to process.
+     * @param listener Receives a callback per image and a final summary.
+     */
+    public void start(List<File> images, Listener listener) {
+        int total = images.size();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(total); // Images neither processed nor skipped yet
+        AtomicBoolean finished = new AtomicBoolean();
+        long startNanos = System.nanoTime();
+
+        if (total == 0) {
+            SwingUtilities.invokeLater(() -> listener.onFinished(new Summary(0, 0, 0L)));
+            return;
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "batch-ocr-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor = pool;
+
+        // Delivers the summary once, after the last image is processed or skipped.
+        Runnable finish = () -> {
+            if (remaining.get() == 0 && finished.compareAndSet(false, true)) {
+                Summary summary = new Summary(total, completed.get(), failed.get(), System.nanoTime() - startNanos, cancelled);
+                SwingUtilities.invokeLater(() -> listener.onFinished(summary));
+                pool.shutdown();
+            }
+        };
+        onSkipped = skipped -> {
+            remaining.addAndGet(-skipped);
+            finish.run();
+        };
+
+        for (File image : images) {
+            String imagePath = image.getAbsolutePath();
+            pool.execute(() -> {
+                try {
+                    if (!cancelled) {
+                        process(imagePath, total, completed, failed, listener);
+                    }
+                } finally {
+                    remaining.decrementAndGet();
+                    finish.run();
+                }
+            });
+        }
+    }
+
+    /** Recognises one image, writes it to history and reports it to the listener. */
+    private void process(String imagePath, int total, AtomicInteger completed, AtomicInteger failed, Listener listener) {
+        String extractedText;
+        boolean imageFailed;
+        try {
+            extractedText = new TextExtract(imagePath).getExtractedText();
+            imageFailed = extractedText == null || extractedText.trim().isEmpty()
+                    || extractedText.trim().equalsIgnoreCase("File::Error");
+        } catch (Exception except) {
+            extractedText = "Error extracting text: " + except.getMessage();
+            imageFailed = true;
+        }
+
+        // Writes the result to history straight away so the batch streams into the database
+        // (the store spills it to disk if the database is down).
+        if (!imageFailed && database != null) {
+            database.CreateData(imagePath, extractedText);
+        }
+        if (imageFailed) {
+            failed.incrementAndGet();
+        }
+
+        int done = completed.incrementAndGet();
+        String text = extractedText;
+        boolean wasFailed = imageFailed;
+        SwingUtilities.invokeLater(() -> listener.onImageDone(imagePath, text, wasFailed, done, total));
+    }
+
+    /**
+     * Cancels the running batch. Images already recognised stay in history and images being
+     * recognised are finished; the rest are skipped. The listener then receives a summary with
+     * {@link Summary#isCancelled()} set.
+     */
+    public void cancel() {
+        cancelled = true;
+        ThreadPoolExecutor pool = executor;
+        if (pool != null) {
+            // Takes the queued images off without interrupting the workers: an interrupt would
+            // fail the images being recognised (or waiting for a Tesseract engine) instead of
+            // letting them finish. Anything a worker picks up meanwhile sees cancelled and skips.
+            List<Runnable> dropped = new ArrayList<>();
+            pool.getQueue().drainTo(dropped);
+            pool.shutdown();
+            IntConsumer skipped = onSkipped;
+            if (skipped != null) {
+                skipped.accept(dropped.size());
+            }
+        }
+    }
+}
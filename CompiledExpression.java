@@ -0,0 +1,371 @@
+import net.objecthunter.exp4j.function.Function;
+import net.objecthunter.exp4j.operator.Operator;
+import net.objecthunter.exp4j.shuntingyard.ShuntingYard;
+import net.objecthunter.exp4j.tokenizer.FunctionToken;
+import net.objecthunter.exp4j.tokenizer.NumberToken;
+import net.objecthunter.exp4j.tokenizer.OperatorToken;
+import net.objecthunter.exp4j.tokenizer.Token;
+import net.objecthunter.exp4j.tokenizer.VariableToken;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * An equation in {@code x} parsed once and kept as a compact postfix program, so plotting it
+ * again (history entries, edited text, viewport changes) costs no parsing.
+ * <p>
+ * Parsing uses exp4j's own tokenizer and shunting-yard pass, so the accepted grammar, builtin
+ * functions, constants ({@code pi}, {@code e}, ...) and implicit multiplication are exactly those
+ * of {@code ExpressionBuilder}. The postfix tokens are then lowered to an opcode array that is
+ * evaluated over a {@code double[]} stack: no boxing, no variable map and no varargs arrays per
+ * point. Builtins are evaluated with IEEE semantics, so division by zero gives an infinity or NaN
+ * (a gap in the plot) instead of exp4j's ArithmeticException.
+ * <p>
+ * Where possible the program is further compiled to JVM bytecode by {@link ExpressionCompiler};
+ * the opcode interpreter remains the fallback for anything it does not handle.
+ * <p>
+ * Compiled expressions are immutable and cached by normalised source; see {@link #compile}.
+ */
+public final class CompiledExpression {
+
+    private static final int CACHE_SIZE = 256;
+    private static final Metrics.Timer COMPILE_TIMER = Metrics.timer("expr.compile"); // Cache misses: parse, lower and JIT
+    private static final Metrics.Timer EVALUATE_TIMER = Metrics.timer("expr.evaluate"); // One evaluate(xs, ys, count) batch
+    private static final Metrics.Counter CACHE_HITS = Metrics.counter("expr.cache.hits");
+    private static final Map<String, CompiledExpression> CACHE = new LinkedHashMap<String, CompiledExpression>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompiledExpression> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    // Opcodes. CONST and CALL/OPERATOR are followed by an operand index in the code array.
+    static final int CONST = 0, X = 1;
+    static final int ADD = 2, SUB = 3, MUL = 4, DIV = 5, POW = 6, MOD = 7, NEG = 8, POS = 9;
+    static final int SIN = 10, COS = 11, TAN = 12, COT = 13, ASIN = 14, ACOS = 15, ATAN = 16;
+    static final int SINH = 17, COSH = 18, TANH = 19, ABS = 20, LOG = 21, LOG10 = 22, LOG2 = 23;
+    static final int LOG1P = 24, CEIL = 25, FLOOR = 26, SQRT = 27, CBRT = 28, EXP = 29, EXPM1 = 30;
+    static final int SIGNUM = 31, POW_FN = 32;
+    static final int CALL = 40, OPERATOR = 41; // Anything not lowered above, applied through exp4j
+
+    private static final Map<String, Integer> FUNCTIONS = new HashMap<>();
+    static {
+        String[] names = { "sin", "cos", "tan", "cot", "asin", "acos", "atan", "sinh", "cosh", "tanh", "abs",
+                "log", "log10", "log2", "log1p", "ceil", "floor", "sqrt", "cbrt", "exp", "expm1", "signum" };
+        for (int i = 0; i < names.length; i++) {
+            FUNCTIONS.put(names[i], SIN + i);
+        }
+        FUNCTIONS.put("pow", POW_FN);
+    }
+
+    private static final double LOG_2 = Math.log(2.0);
+
+    private final String source;
+    final int[] code;
+    final double[] constants;
+    final Object[] callables; // exp4j Function / Operator objects for CALL / OPERATOR
+    final int maxStack;
+    private final DoubleUnaryOperator bytecode; // Generated by ExpressionCompiler, null when interpreted
+
+    private CompiledExpression(String source, int[] code, double[] constants, Object[] callables, int maxStack) {
+        this.source = source;
+        this.code = code;
+        this.constants = constants;
+        this.callables = callables;
+        this.maxStack = maxStack;
+        this.bytecode = ExpressionCompiler.compile(this); // Reads only the fields above
+    }
+
+    /**
+     * Returns the compiled form of an equation in {@code x}, parsing it only the first time a given
+     * (whitespace-normalised) source is seen.
+     *
+     * @param equation The right-hand side of {@code y = f(x)}, e.g. {@code "x^2 + 2*x - 1"}.
+     * @return The compiled expression, shared by every caller with the same source.
+     * @throws IllegalArgumentException If the equation does not parse or uses unknown names.
+     */
+    public static CompiledExpression compile(String equation) {
+        String key = normalise(equation);
+        synchronized (CACHE) {
+            CompiledExpression cached = CACHE.get(key);
+            if (cached != null) {
+                CACHE_HITS.increment();
+                return cached;
+            }
+        }
+        long start = COMPILE_TIMER.start();
+        CompiledExpression compiled;
+        try {
+            compiled = parse(key);
+        } finally {
+            COMPILE_TIMER.stop(start);
+        }
+        synchronized (CACHE) {
+            CACHE.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Collapses runs of whitespace and trims, so trivially different spellings share a cache entry.
+     * Whitespace is not removed entirely: {@code "2 3"} and {@code "23"} are different expressions.
+     */
+    static String normalise(String equation) {
+        if (equation == null) {
+            throw new IllegalArgumentException("The expression can not be empty");
+        }
+        return equation.trim().replaceAll("\\s+", " ");
+    }
+
+    private static CompiledExpression parse(String source) {
+        if (source.isEmpty()) {
+            throw new IllegalArgumentException("The expression can not be empty");
+        }
+        Set<String> variables = new HashSet<>();
+        Collections.addAll(variables, "x", "pi", "\u03c0", "e", "\u03c6"); // The constants ExpressionBuilder predefines
+        Token[] tokens = ShuntingYard.convertToRPN(source, Collections.<String, Function>emptyMap(),
+                Collections.<String, Operator>emptyMap(), variables, true);
+
+        int[] code = new int[tokens.length * 2];
+        List<Double> constants = new ArrayList<>();
+        List<Object> callables = new ArrayList<>();
+        int length = 0;
+        int depth = 0;
+        int maxStack = 0;
+        for (Token token : tokens) {
+            int pops;
+            switch (token.getType()) {
+                case Token.TOKEN_NUMBER:
+                    code[length++] = CONST;
+                    code[length++] = constants.size();
+                    constants.add(((NumberToken) token).getValue());
+                    pops = 0;
+                    break;
+                case Token.TOKEN_VARIABLE:
+                    String name = ((VariableToken) token).getName();
+                    if (name.equals("x")) {
+                        code[length++] = X;
+                    } else {
+                        code[length++] = CONST;
+                        code[length++] = constants.size();
+                        constants.add(constantValue(name));
+                    }
+                    pops = 0;
+                    break;
+                case Token.TOKEN_OPERATOR:
+                    Operator operator = ((OperatorToken) token).getOperator();
+                    pops = operator.getNumOperands();
+                    int op = operatorCode(operator.getSymbol(), pops);
+                    code[length++] = op;
+                    if (op == OPERATOR) {
+                        code[length++] = callables.size();
+                        callables.add(operator);
+                    }
+                    break;
+                case Token.TOKEN_FUNCTION:
+                    Function function = ((FunctionToken) token).getFunction();
+                    pops = function.getNumArguments();
+                    Integer fn = FUNCTIONS.get(function.getName());
+                    boolean lowered = fn != null && (fn == POW_FN ? pops == 2 : pops == 1);
+                    code[length++] = lowered ? fn : CALL;
+                    if (!lowered) {
+                        code[length++] = callables.size();
+                        callables.add(function);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected token in expression '" + source + "'");
+            }
+            if (depth < pops) {
+                throw new IllegalArgumentException("Invalid number of operands available for '" + source + "'");
+            }
+            depth = depth - pops + 1;
+            maxStack = Math.max(maxStack, depth);
+        }
+        if (depth != 1) {
+            throw new IllegalArgumentException("Invalid number of items on the output queue for '" + source + "'");
+        }
+
+        double[] constantArray = new double[constants.size()];
+        for (int i = 0; i < constantArray.length; i++) {
+            constantArray[i] = constants.get(i);
+        }
+        return new CompiledExpression(source, Arrays.copyOf(code, length), constantArray,
+                callables.toArray(), maxStack);
+    }
+
+    private static double constantValue(String name) {
+        switch (name) {
+            case "pi":
+            case "\u03c0":
+                return Math.PI;
+            case "e":
+                return Math.E;
+            default:
+                return 1.61803398874d; // phi, the value exp4j uses
+        }
+    }
+
+    private static int operatorCode(String symbol, int operands) {
+        if (operands == 1) {
+            return symbol.equals("-") ? NEG : symbol.equals("+") ? POS : OPERATOR;
+        }
+        switch (symbol) {
+            case "+": return ADD;
+            case "-": return SUB;
+            case "*": return MUL;
+            case "/": return DIV;
+            case "^": return POW;
+            case "%": return MOD;
+            default: return OPERATOR;
+        }
+    }
+
+    /**
+     * @return The normalised source this expression was compiled from.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return true if this expression runs as generated bytecode rather than on the interpreter.
+     */
+    public boolean isCompiled() {
+        return bytecode != null;
+    }
+
+    /**
+     * Creates an evaluator for this expression. An interpreted evaluator owns its operand stack, so
+     * it is cheap to call repeatedly but must stay confined to one thread; create one per thread.
+     * (The bytecode version is stateless and simply shared.)
+     *
+     * @return A function computing {@code f(x)}.
+     */
+    public DoubleUnaryOperator newEvaluator() {
+        if (bytecode != null) {
+            return bytecode;
+        }
+        double[] stack = new double[maxStack];
+        return x -> run(x, stack);
+    }
+
+    /**
+     * Evaluates with the opcode interpreter even when bytecode is available; for cross-checking.
+     *
+     * @return A thread-confined interpreting evaluator.
+     */
+    DoubleUnaryOperator newInterpreter() {
+        double[] stack = new double[maxStack];
+        return x -> run(x, stack);
+    }
+
+    /**
+     * Evaluates the expression at {@code count} points: {@code ys[i] = f(xs[i])}.
+     * Allocates one small operand stack per call and nothing per point.
+     *
+     * @param xs    Sample positions.
+     * @param ys    Receives the values; undefined points become NaN or an infinity.
+     * @param count Number of points to evaluate.
+     */
+    public void evaluate(double[] xs, double[] ys, int count) {
+        long start = EVALUATE_TIMER.start();
+        DoubleUnaryOperator function = bytecode;
+        if (function != null) {
+            for (int i = 0; i < count; i++) {
+                ys[i] = function.applyAsDouble(xs[i]);
+            }
+        } else {
+            double[] stack = new double[maxStack];
+            for (int i = 0; i < count; i++) {
+                ys[i] = run(xs[i], stack);
+            }
+        }
+        EVALUATE_TIMER.stop(start);
+    }
+
+    private double run(double x, double[] stack) {
+        final int[] code = this.code;
+        int sp = 0;
+        for (int pc = 0; pc < code.length; pc++) {
+            int op = code[pc];
+            switch (op) {
+                case CONST: stack[sp++] = constants[code[++pc]]; break;
+                case X: stack[sp++] = x; break;
+                case ADD: sp--; stack[sp - 1] += stack[sp]; break;
+                case SUB: sp--; stack[sp - 1] -= stack[sp]; break;
+                case MUL: sp--; stack[sp - 1] *= stack[sp]; break;
+                case DIV: sp--; stack[sp - 1] /= stack[sp]; break;
+                case POW:
+                case POW_FN: sp--; stack[sp - 1] = Math.pow(stack[sp - 1], stack[sp]); break;
+                case MOD: sp--; stack[sp - 1] %= stack[sp]; break;
+                case NEG: stack[sp - 1] = -stack[sp - 1]; break;
+                case POS: break;
+                case CALL:
+                case OPERATOR: sp = applyGeneric(op, callables[code[++pc]], stack, sp); break;
+                default: stack[sp - 1] = applyFunction(op, stack[sp - 1]); break;
+            }
+        }
+        return stack[0];
+    }
+
+    static double applyFunction(int op, double a) {
+        switch (op) {
+            case SIN: return Math.sin(a);
+            case COS: return Math.cos(a);
+            case TAN: return Math.tan(a);
+            case COT: return cot(a);
+            case ASIN: return Math.asin(a);
+            case ACOS: return Math.acos(a);
+            case ATAN: return Math.atan(a);
+            case SINH: return Math.sinh(a);
+            case COSH: return Math.cosh(a);
+            case TANH: return Math.tanh(a);
+            case ABS: return Math.abs(a);
+            case LOG: return Math.log(a);
+            case LOG10: return Math.log10(a);
+            case LOG2: return log2(a);
+            case LOG1P: return Math.log1p(a);
+            case CEIL: return Math.ceil(a);
+            case FLOOR: return Math.floor(a);
+            case SQRT: return Math.sqrt(a);
+            case CBRT: return Math.cbrt(a);
+            case EXP: return Math.exp(a);
+            case EXPM1: return Math.expm1(a);
+            case SIGNUM: return Math.signum(a);
+            default: throw new IllegalStateException("Unknown opcode " + op);
+        }
+    }
+
+    // cot / log2 have no java.lang.Math counterpart; generated bytecode calls these too.
+    static double cot(double a) {
+        return 1.0 / Math.tan(a);
+    }
+
+    static double log2(double a) {
+        return Math.log(a) / LOG_2;
+    }
+
+    /** Slow path for functions/operators that were not lowered to an opcode; allocates an argument array. */
+    private static int applyGeneric(int op, Object callable, double[] stack, int sp) {
+        int arity = op == CALL ? ((Function) callable).getNumArguments() : ((Operator) callable).getNumOperands();
+        double[] args = Arrays.copyOfRange(stack, sp - arity, sp);
+        double value;
+        try {
+            value = op == CALL ? ((Function) callable).apply(args) : ((Operator) callable).apply(args);
+        } catch (ArithmeticException e) {
+            value = Double.NaN;
+        }
+        sp -= arity;
+        stack[sp++] = value;
+        return sp;
+    }
+}
@@ -0,0 +1,294 @@
+import java.sql.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*ConnectionPool --> Small JDBC connection pool used by DataBase.
+ * -- borrow() hands out a Lease: an idle connection, or a new one while fewer than 'maxSize' exist.
+ * -- connections idle for longer than VALIDATION_WINDOW_MS are checked with isValid() on borrow;
+ *    dead ones are closed and replaced, which is how the pool reconnects after a MySQL restart.
+ *    validateIdle() (run by DataBase's heartbeat) keeps idle connections inside that window, so
+ *    normal borrows never pay the extra round trip.
+ * -- every connection keeps its own cache of PreparedStatements keyed by SQL, so the same
+ *    statement is prepared once per connection and closed only when evicted or the connection dies.*/
+
+public class ConnectionPool{
+    private static final long VALIDATION_WINDOW_MS = 30000; //connections used or validated more recently than this skip isValid()
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long BORROW_TIMEOUT_MS = 5000; //how long borrow() waits when every connection is in use
+    private static final int STATEMENT_CACHE_SIZE = 32; //prepared statements kept per connection
+    private static final Metrics.Timer BORROW_TIMER = Metrics.timer("db.pool.borrow"); //waiting, connecting and validating
+
+    private final String URL;
+    private final String userName;
+    private final String userPass;
+    private final int maxSize;
+
+    private final Deque<PooledConnection> idle = new ArrayDeque<>(); //guarded by 'this'
+    private int open; //connections currently open (idle + leased), guarded by 'this'
+    private boolean closed; //guarded by 'this'
+
+		/*ConnectionPool() --> Constructor, connections are opened lazily on borrow()*/
+    ConnectionPool(String URL, String userName, String userPass, int maxSize){
+        this.URL = URL;
+        this.userName = userName;
+        this.userPass = userPass;
+        this.maxSize = maxSize;
+    }
+
+		/*borrow() --> Checks out a validated connection, opening a new one if needed
+		 * -- returns <Lease> (close it to give the connection back)*/
+    public Lease borrow() throws SQLException{
+        long start = BORROW_TIMER.start();
+        try{
+            return acquire();
+        } finally{
+            BORROW_TIMER.stop(start);
+        }
+    }
+
+    private Lease acquire() throws SQLException{
+        long deadline = System.currentTimeMillis() + BORROW_TIMEOUT_MS;
+        while(true){
+            PooledConnection candidate = null;
+            boolean mayOpen = false;
+            synchronized(this){
+                if(closed){
+                    throw new SQLException("ConnectionPool::Closed");
+                }
+                candidate = idle.pollFirst(); //most recently used first, it is the most likely to be alive
+                if(candidate == null && open < maxSize){
+                    open++; //reserve the slot before connecting outside the lock
+                    mayOpen = true;
+                }
+                if(candidate == null && !mayOpen){
+                    long wait = deadline - System.currentTimeMillis();
+                    if(wait <= 0){
+                        throw new SQLTransientConnectionException("ConnectionPool::Timeout waiting for a connection");
+                    }
+                    try{
+                        wait(wait);
+                    } catch(InterruptedException except){
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("ConnectionPool::Interrupted", except);
+                    }
+                    continue;
+                }
+            }
+
+            if(mayOpen){
+                try{
+                    return new Lease(this, new PooledConnection(DriverManager.getConnection(URL, userName, userPass)));
+                } catch(SQLException except){
+                    synchronized(this){
+                        open--;
+                        notifyAll();
+                    }
+                    throw except;
+                }
+            }
+
+            if(isAlive(candidate)){
+                return new Lease(this, candidate);
+            }
+            discard(candidate); //stale after a server restart or idle timeout, try the next one
+        }
+    }
+
+		/*isAlive() --> Validates connections that sat idle longer than the validation window
+		 * -- returns <bool>*/
+    private static boolean isAlive(PooledConnection pooled){
+        if(System.currentTimeMillis() - pooled.lastUsed < VALIDATION_WINDOW_MS){
+            return true;
+        }
+        try{
+            return pooled.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch(SQLException except){
+            return false;
+        }
+    }
+
+		/*validateIdle() --> Checks every idle connection with isValid(), closing the dead ones.
+		 * Called off the hot path (heartbeat); live connections count as freshly validated.
+		 * -- takes one connection out at a time, least recently used first (the back of 'idle'), so
+		 *    borrowers still find the rest of the pool while a check waits on the network.
+		 * -- stops at the first connection used or validated since the call began; every idle connection
+		 *    is then one of those.
+		 * -- returns <int> number of live idle connections*/
+    public int validateIdle(){
+        long started = System.currentTimeMillis();
+        while(true){
+            PooledConnection pooled;
+            synchronized(this){
+                pooled = idle.peekLast();
+                if(pooled == null || pooled.lastUsed >= started){
+                    return idle.size();
+                }
+                idle.pollLast();
+            }
+            boolean valid;
+            try{
+                valid = pooled.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch(SQLException except){
+                valid = false;
+            }
+            if(valid){
+                release(pooled, false); //back at the front with a fresh timestamp
+            } else{
+                discard(pooled);
+            }
+        }
+    }
+
+		/*getOpen() --> Connections currently open, idle or leased -- returns <int>*/
+    public synchronized int getOpen(){
+        return open;
+    }
+
+		/*release() --> Returns a leased connection, or closes it if it was marked broken*/
+    private void release(PooledConnection pooled, boolean broken){
+        if(broken){
+            discard(pooled);
+            return;
+        }
+        pooled.lastUsed = System.currentTimeMillis();
+        synchronized(this){
+            if(!closed){
+                idle.addFirst(pooled);
+                notifyAll();
+                return;
+            }
+        }
+        discard(pooled);
+    }
+
+    private void discard(PooledConnection pooled){
+        pooled.closeQuietly();
+        synchronized(this){
+            open--;
+            notifyAll();
+        }
+    }
+
+		/*close() --> Closes every idle connection; leased ones are closed when they are returned*/
+    public void close(){
+        Deque<PooledConnection> toClose;
+        synchronized(this){
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            idle.clear();
+            notifyAll();
+        }
+        for(PooledConnection pooled : toClose){
+            discard(pooled);
+        }
+    }
+
+		/*isConnectionFailure() --> True for errors that mean the connection itself is unusable
+		 * (SQLState class 08, or the driver's recoverable / non-transient connection exceptions).
+		 * A borrow() timeout is not one of them: the database is fine, the pool is just busy.
+		 * -- returns <bool>*/
+    public static boolean isConnectionFailure(SQLException except){
+        String state = except.getSQLState();
+        return except instanceof SQLRecoverableException
+                || except instanceof SQLNonTransientConnectionException
+                || (state != null && state.startsWith("08"));
+    }
+
+		/*PooledConnection --> A physical connection plus its prepared statement cache*/
+    private static class PooledConnection{
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+        private volatile long lastUsed = System.currentTimeMillis(); //written on release, read on borrow and by validateIdle()
+
+        PooledConnection(Connection connection){
+            this.connection = connection;
+            this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true){
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest){
+                    if(size() > STATEMENT_CACHE_SIZE){
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        PreparedStatement prepare(String SQL, boolean generatedKeys) throws SQLException{
+            String cacheKey = generatedKeys ? "keys:" + SQL : SQL;
+            PreparedStatement statement = statements.get(cacheKey);
+            if(statement == null || statement.isClosed()){
+                statement = generatedKeys ? connection.prepareStatement(SQL, Statement.RETURN_GENERATED_KEYS) : connection.prepareStatement(SQL);
+                statements.put(cacheKey, statement);
+            } else{
+                statement.clearParameters();
+            }
+            return statement;
+        }
+
+        void closeQuietly(){
+            for(PreparedStatement statement : statements.values()){
+                closeQuietly(statement);
+            }
+            statements.clear();
+            try{
+                connection.close();
+            } catch(SQLException ignored){
+                //already dead
+            }
+        }
+
+        private static void closeQuietly(Statement statement){
+            try{
+                statement.close();
+            } catch(SQLException ignored){
+                //closing a statement on a dead connection
+            }
+        }
+    }
+
+		/*Lease --> A borrowed connection. Use in try-with-resources; call invalidate() after a
+		 * connection failure so the connection is dropped instead of returned to the pool.*/
+    public static class Lease implements AutoCloseable{
+        private final ConnectionPool pool;
+        private final PooledConnection pooled;
+        private boolean broken;
+        private boolean returned;
+
+        private Lease(ConnectionPool pool, PooledConnection pooled){
+            this.pool = pool;
+            this.pooled = pooled;
+        }
+
+			 /*prepare() --> Cached PreparedStatement for @param SQL on this connection (parameters cleared).
+			  * Don't close it, the pool owns it.
+			  * -- returns <PreparedStatement>*/
+        public PreparedStatement prepare(String SQL) throws SQLException{
+            return pooled.prepare(SQL, false);
+        }
+
+			 /*prepareReturningKeys() --> prepare() for an INSERT whose generated keys are read back
+			  * -- returns <PreparedStatement>*/
+        public PreparedStatement prepareReturningKeys(String SQL) throws SQLException{
+            return pooled.prepare(SQL, true);
+        }
+
+        public Connection getConnection(){
+            return pooled.connection;
+        }
+
+        public void invalidate(){
+            broken = true;
+        }
+
+        @Override
+        public void close(){
+            if(!returned){
+                returned = true;
+                pool.release(pooled, broken);
+            }
+        }
+    }
+}
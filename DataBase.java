@@ -1,137 +1,487 @@
 import java.sql.*;
-import javax.swing.table.DefaultTableModel;
-import java.util.Vector;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.sql.Timestamp;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /*CRUD OPERATION AND METHODS:
- * Create --> CreateData()
- * Read --> getHistoryTableModel()
- * Delete --> Delete()*/
+ * Create --> CreateData() (queued, written behind in batches by HistoryJournal --> insertBatch())
+ * Read --> getHistoryTableModel() (HistoryStore default, paged by fetchHistoryPage())
+ * Search --> searchHistory() (ranked, FULLTEXT index on Question)
+ * Delete --> Delete() / deleteHistoryChunk() (scheduled by RetentionJob)
+ * Connections come from a ConnectionPool; a read, delete or DDL statement that fails because its
+ * connection died (e.g. MySQL restarted) is retried once on a fresh connection. Inserts are not
+ * retried, the journal spills them instead.
+ * Connection health is cached: a background heartbeat validates the pool every few seconds and
+ * every statement reports success/failure, so isConnected() never touches the network and
+ * operations fail fast while the database is known to be down.
+ * SearchMode here: TOKEN = FULLTEXT natural language, PREFIX = FULLTEXT boolean mode,
+ * SUBSTRING = LIKE (not index backed, so it stops at the page limit).*/
+
+public class DataBase implements HistoryStore{
+    static final String DEFAULT_URL = "jdbc:mysql://localhost:3306/mathematica";
 
-public class DataBase{
     private final String URL;  /*@param for method DriverManager.getConnection() --> URL, userPass, userName*/
     private final String userPass;
     private final String userName;
-    private Connection connection; /*Object -> 'connection' of Class -> 'Connection'*/
+    private final ConnectionPool pool; /*Object -> 'pool' of Class -> 'ConnectionPool'*/
+
+    private static final int POOL_SIZE = 4; //UI, OCR pipeline and batch workers share these
+    private static final long HEARTBEAT_SECONDS = 5;
+
+    //per-operation latency (retries included) and outcomes, see Metrics
+    private static final Metrics.Timer INSERT_TIMER = Metrics.timer("db.insertBatch");
+    private static final Metrics.Timer FETCH_TIMER = Metrics.timer("db.fetchHistoryPage");
+    private static final Metrics.Timer SEARCH_TIMER = Metrics.timer("db.searchHistory");
+    private static final Metrics.Timer DELETE_TIMER = Metrics.timer("db.deleteHistoryChunk");
+    private static final Metrics.Timer DDL_TIMER = Metrics.timer("db.ddl");
+    private static final Metrics.Counter ROWS_INSERTED = Metrics.counter("db.rowsInserted");
+    private static final Metrics.Counter FAILURES = Metrics.counter("db.failures");
+
+    private volatile boolean healthy; //cached connection health, see markHealthy()/markDown()
+    private volatile boolean indexesReady; //set once ensureIndexes() succeeded, see markHealthy()
+    private final ScheduledExecutorService heartbeat;
+    private final HistoryJournal journal; //write-behind queue for CreateData()
+
+		/*SqlWork --> One unit of JDBC work run against a leased connection*/
+    private interface SqlWork<T>{
+        T run(ConnectionPool.Lease lease) throws SQLException;
+    }
 
 		/*DataBase() --> Constructor for Connecting to SQL Database*/
     DataBase(String userName, String userPass){
+        this(DEFAULT_URL, userName, userPass);
+    }
+
+    DataBase(String URL, String userName, String userPass){
+        this(URL, userName, userPass, Paths.get(System.getProperty("user.home"), ".mathematica", "history-journal.log"));
+    }
+
+		/*DataBase() --> Constructor with the spill file of the write-behind journal at @param journalFile*/
+    DataBase(String URL, String userName, String userPass, Path journalFile){
         this.userName = userName;
         this.userPass = userPass;
-        this.URL = "jdbc:mysql://localhost:3306/mathematica";
+        this.URL = URL;
+        this.pool = new ConnectionPool(URL, userName, userPass, POOL_SIZE);
 
+        //opening the first connection up front, so a wrong URL or password shows at startup
         try{
-            this.connection = DriverManager.getConnection(URL, userName, userPass);
-            System.out.println("Mathematica::Connectetd");
+            pool.borrow().close(); //nothing to run, the connection stays idle in the pool
+            this.healthy = true;
+            System.err.println("Mathematica::Connectetd");
         } catch(SQLException except){
             System.out.println(except.getMessage());
         }
+        if(healthy){
+            indexesReady = ensureIndexes();
+        }
+
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        this.heartbeat.scheduleWithFixedDelay(this::checkHealth, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+
+        //records that could not reach MySQL are kept here and replayed once it is back
+        this.journal = new HistoryJournal(this, journalFile);
     }
 
-	 /*isConnected() --> Validating Connection -- returns <bool>*/
-   pubic boolean isConnected(){
+	 /*isConnected() --> Cached connection health, no round trip -- returns <bool>*/
+    public boolean isConnected(){
+        return healthy;
+    }
+
+	 /*checkHealth() --> Heartbeat: validates idle connections, or opens one if none are open
+		* -- a pool with every connection leased is busy, not down: the statements running on those
+		*    connections report the health, so the heartbeat leaves it alone.
+		* -- only connection failures mark the database down, not a borrow() timeout.
+		* -- returns <void>*/
+    private void checkHealth(){
         try{
-            return connection!=null && connection.isValid(2);
+            if(pool.validateIdle() == 0){
+                if(pool.getOpen() > 0){
+                    return; //all leased
+                }
+                try(ConnectionPool.Lease lease = pool.borrow()){
+                    if(!lease.getConnection().isValid(2)){
+                        lease.invalidate();
+                        markDown("Mathematica::Heartbeat-Failed");
+                        return;
+                    }
+                }
+            }
+            markHealthy();
         } catch(SQLException except){
-            System.out.println(except.getMessage());
-            return false;
+            if(ConnectionPool.isConnectionFailure(except)){
+                markDown(except.getMessage());
+            }
         }
     }
 
-	 /*CreateData() --> Method for 'INSERT' statements
-		* -- returns <void>*/
-    public void CreateData(String ImagePath, String Question){
-        if(isConnected()){
-            try{
-                String SQL = "INSERT INTO HISTORY (FilePath, Question) VALUES(?, ?)";
-                PreparedStatement statement = connection.prepareStatement(SQL);
+		/*markHealthy() --> Records a working connection; on the way back up it also creates the indexes
+		 * if that hasn't worked yet (e.g. the app started while MySQL was down)
+		 * -- returns <void>*/
+    private void markHealthy(){
+        if(!healthy){
+            healthy = true;
+            System.err.println("Mathematica::Reconnected");
+            if(!indexesReady){
+                indexesReady = ensureIndexes();
+            }
+        }
+    }
 
-                statement.setString(1, ImagePath); //assining @param ImagePath to Values.
-                statement.setString(2, Question); //assining @param Question to Values.
+    private void markDown(String reason){
+        if(healthy){
+            healthy = false;
+            System.err.println("Mathematica::Not-Connected " + reason);
+        }
+    }
 
-                int rowsCreated = statement.executeUpdate();
+	 /*execute() --> Runs @param work on a pooled connection; if the connection turns out to be dead
+		* it is dropped and the work is retried once on a new connection (automatic reconnection).
+		* -- only for work that is safe to run twice (reads, DDL, deletes by key); inserts use executeOnce().
+		* -- fails fast without touching the network while the database is known to be down.
+		* -- the whole call, retry included, is recorded on @param timer.
+		* -- returns <T>*/
+    private <T> T execute(Metrics.Timer timer, SqlWork<T> work) throws SQLException{
+        return execute(timer, work, 2);
+    }
+
+	 /*executeOnce() --> execute() without the retry, for work that must not run twice: a connection
+		* can die after the server committed but before the reply arrived, so resubmitting could insert
+		* the rows again. The caller decides what to do with the failure (HistoryJournal spills it).
+		* -- returns <T>*/
+    private <T> T executeOnce(Metrics.Timer timer, SqlWork<T> work) throws SQLException{
+        return execute(timer, work, 1);
+    }
+
+    private <T> T execute(Metrics.Timer timer, SqlWork<T> work, int attempts) throws SQLException{
+        long start = timer.start();
+        try{
+            return attempt(work, attempts);
+        } catch(SQLException except){
+            FAILURES.increment();
+            throw except;
+        } finally{
+            timer.stop(start);
+        }
+    }
 
-								/*this statement validates the changes in SQL table 'HISTORY'*/
-                if(rowsCreated > 0){
-                    System.out.println("CreateData::PASS");
-                } else{
-                    System.out.println("CreateData::FAIL");
+    private <T> T attempt(SqlWork<T> work, int attempts) throws SQLException{
+        if(!healthy){
+            throw new SQLNonTransientConnectionException("Mathematica::Not-Connected", "08003");
+        }
+        for(int attempt = 1; ; attempt++){
+            ConnectionPool.Lease lease;
+            try{
+                lease = pool.borrow();
+            } catch(SQLException except){
+                if(ConnectionPool.isConnectionFailure(except)){
+                    markDown(except.getMessage()); //could not even open a connection
                 }
+                throw except;
+            }
+            try{
+                T result = work.run(lease);
+                markHealthy();
+                return result;
             } catch(SQLException except){
-                System.out.println(except.getMessage());
+                if(ConnectionPool.isConnectionFailure(except)){
+                    lease.invalidate();
+                    if(attempt < attempts){
+                        continue;
+                    }
+                    markDown(except.getMessage());
+                }
+                throw except;
+            } finally{
+                lease.close();
             }
         }
     }
 
-/*getHistoryTableModel() --> Method for getting Vector based table in GUI (in Windows.java)
- * -- returns <DefaultTableModel>*/
-public DefaultTableModel getHistoryTableModel() {
-        Vector<String> columnNames = new Vector<>();
-        Vector<Vector<Object>> data = new Vector<>();
+	 /*CreateData() --> Method for 'INSERT' statements
+		* -- queues the row on the write-behind journal and returns immediately; the journal
+		*    flushes it with insertBatch() (or spills it to disk while MySQL is down).
+		* -- returns <void>*/
+    public void CreateData(String ImagePath, String Question){
+        journal.append(HistoryRecord.now(ImagePath, Question));
+    }
 
-				//Validating Connection with 'Mathematica'
-        if (!isConnected()) {
-            System.err.println("Mathematica::Not-Connected");
-            return new DefaultTableModel(data, columnNames); 
-        }
+	 /*insertBatch() --> Inserts @param records with one JDBC batch in a single transaction
+		* -- not retried here (see executeOnce()), a failed batch goes back to HistoryJournal's spill file.
+		* -- returns <List<HistoryRecord>> the records with the ids MySQL generated (id 0 if the driver
+		*    didn't report them), throws if the batch was not committed*/
+    public List<HistoryRecord> insertBatch(List<HistoryRecord> records) throws SQLException{
+        return executeOnce(INSERT_TIMER, lease -> {
+            String SQL = "INSERT INTO HISTORY (FilePath, Question, Created) VALUES(?, ?, ?)";
+            Connection connection = lease.getConnection();
+            PreparedStatement statement = lease.prepareReturningKeys(SQL); //cached per connection, owned by the pool
+            connection.setAutoCommit(false);
+            try{
+                for(HistoryRecord record : records){
+                    statement.setString(1, record.getFilePath()); //assining FilePath to Values.
+                    statement.setString(2, record.getQuestion()); //assining Question to Values.
+                    statement.setTimestamp(3, record.getCreated());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                List<Long> ids = new ArrayList<>(records.size());
+                try(ResultSet keys = statement.getGeneratedKeys()){
+                    while(keys.next()){
+                        ids.add(keys.getLong(1));
+                    }
+                }
+                connection.commit();
+
+                ROWS_INSERTED.add(records.size()); //committed
+                if(ids.size() != records.size()){
+                    return records;
+                }
+                List<HistoryRecord> stored = new ArrayList<>(records.size());
+                for(int i = 0; i < records.size(); i++){
+                    HistoryRecord record = records.get(i);
+                    stored.add(new HistoryRecord(ids.get(i), record.getFilePath(), record.getQuestion(), record.getCreated()));
+                }
+                return stored;
+            } catch(SQLException except){
+                statement.clearBatch();
+                try{
+                    connection.rollback();
+                } catch(SQLException ignored){
+                    //connection already gone, nothing was committed
+                }
+                throw except;
+            } finally{
+                try{
+                    connection.setAutoCommit(true);
+                } catch(SQLException ignored){
+                    //connection already gone, the pool drops it
+                }
+            }
+        });
+    }
+
+	 /*setHistoryListener() --> @param listener is told (on a background thread) about every batch
+		* of history rows that has been committed
+		* -- returns <void>*/
+    public void setHistoryListener(Consumer<List<HistoryRecord>> listener){
+        journal.setFlushListener(listener);
+    }
 
-        String SQL = "SELECT FilePath, Question, Created FROM HISTORY ORDER BY Created";
+		/*fetchHistoryPage() --> Keyset pagination over 'HISTORY' ordered by (Created, id)
+		 * -- @param afterCreated/afterId: the last row of the previous page, null for the first page.
+		 * -- uses idx_history_created, so every page costs the same however deep it is.
+		 * -- returns <List<HistoryRecord>> at most @param limit rows*/
+    public List<HistoryRecord> fetchHistoryPage(Timestamp afterCreated, long afterId, int limit) throws SQLException{
+        return execute(FETCH_TIMER, lease -> {
+            PreparedStatement statement;
+            if(afterCreated == null){
+                statement = lease.prepare("SELECT id, FilePath, Question, Created FROM HISTORY ORDER BY Created, id LIMIT ?");
+                statement.setInt(1, limit);
+            } else{
+                statement = lease.prepare("SELECT id, FilePath, Question, Created FROM HISTORY"
+                        + " WHERE Created > ? OR (Created = ? AND id > ?) ORDER BY Created, id LIMIT ?");
+                statement.setTimestamp(1, afterCreated);
+                statement.setTimestamp(2, afterCreated);
+                statement.setLong(3, afterId);
+                statement.setInt(4, limit);
+            }
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet resultSet = stmt.executeQuery(SQL)) {
+            return readRecords(statement, limit);
+        });
+    }
 
-            ResultSetMetaData rsmd = resultSet.getMetaData(); //Reading MetaData
-            int columnsNumber = rsmd.getColumnCount();
+		/*searchHistory() --> Ranked, paginated search over stored questions (OCR text and typed queries)
+		 * -- TOKEN / PREFIX use the FULLTEXT index idx_history_question and are ordered by relevance,
+		 *    newest first among equal scores; SUBSTRING is ordered newest first.
+		 * -- words shorter than the server's innodb_ft_min_token_size (3 by default) are not indexed,
+		 *    a query made only of such words falls back to SUBSTRING.
+		 * -- returns <List<HistoryRecord>> at most @param limit rows, skipping the first @param offset*/
+    public List<HistoryRecord> searchHistory(String query, SearchMode mode, int offset, int limit) throws SQLException{
+        String text = query == null ? "" : query.trim();
+        if(text.isEmpty()){
+            return new ArrayList<>();
+        }
+        String booleanQuery = toPrefixQuery(text);
+        SearchMode effective = mode;
+        if(booleanQuery.isEmpty()){
+            effective = SearchMode.SUBSTRING; //nothing indexable left after dropping operators and short words
+        }
+        SearchMode resolved = effective;
 
-            for (int i = 1; i <= columnsNumber; i++) {
-                columnNames.add(rsmd.getColumnName(i));
+        return execute(SEARCH_TIMER, lease -> {
+            PreparedStatement statement;
+            switch(resolved){
+                case TOKEN:
+                    statement = lease.prepare("SELECT id, FilePath, Question, Created FROM HISTORY"
+                            + " WHERE MATCH(Question) AGAINST(? IN NATURAL LANGUAGE MODE)"
+                            + " ORDER BY MATCH(Question) AGAINST(? IN NATURAL LANGUAGE MODE) DESC, Created DESC LIMIT ? OFFSET ?");
+                    statement.setString(1, text);
+                    statement.setString(2, text);
+                    break;
+                case PREFIX:
+                    statement = lease.prepare("SELECT id, FilePath, Question, Created FROM HISTORY"
+                            + " WHERE MATCH(Question) AGAINST(? IN BOOLEAN MODE)"
+                            + " ORDER BY MATCH(Question) AGAINST(? IN BOOLEAN MODE) DESC, Created DESC LIMIT ? OFFSET ?");
+                    statement.setString(1, booleanQuery);
+                    statement.setString(2, booleanQuery);
+                    break;
+                default:
+                    statement = lease.prepare("SELECT id, FilePath, Question, Created FROM HISTORY"
+                            + " WHERE Question LIKE ? ESCAPE '!' ORDER BY Created DESC, id DESC LIMIT ? OFFSET ?");
+                    statement.setString(1, "%" + text.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%");
+                    statement.setInt(2, limit);
+                    statement.setInt(3, offset);
+                    return readRecords(statement, limit);
             }
-            
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-            
-            while (resultSet.next()) {
-                Vector<Object> row = new Vector<>();
-                for (int i = 1; i <= columnsNumber; i++) {
-                    Object value = resultSet.getObject(i);
-                    if (value instanceof Timestamp) {
-                        row.add(((Timestamp) value).toLocalDateTime().format(formatter));
-                    } else {
-                        row.add(value);
-                    }
+            statement.setInt(3, limit);
+            statement.setInt(4, offset);
+            return readRecords(statement, limit);
+        });
+    }
+
+		/*toPrefixQuery() --> "x squared deriv" --> "+squared* +deriv*" for BOOLEAN MODE
+		 * -- operator characters are stripped so user input can't change the query's meaning.
+		 * -- returns <String>, empty if no word is long enough to be indexed*/
+    private static String toPrefixQuery(String text){
+        StringBuilder booleanQuery = new StringBuilder();
+        for(String word : text.split("[^\\p{L}\\p{N}_]+")){
+            if(word.length() >= 3){
+                if(booleanQuery.length() > 0){
+                    booleanQuery.append(' ');
                 }
-                data.add(row);
+                booleanQuery.append('+').append(word).append('*');
+            }
+        }
+        return booleanQuery.toString();
+    }
+
+    private static List<HistoryRecord> readRecords(PreparedStatement statement, int limit) throws SQLException{
+        List<HistoryRecord> records = new ArrayList<>(Math.min(limit, 1000));
+        try(ResultSet resultSet = statement.executeQuery()){
+            while(resultSet.next()){
+                records.add(new HistoryRecord(resultSet.getLong(1), resultSet.getString(2),
+                        resultSet.getString(3), resultSet.getTimestamp(4)));
             }
+        }
+        return records;
+    }
+
+		/*ensureIndexes() --> Creates the indexes paging and search rely on, if they are missing
+		 * -- idx_history_created (Created, id) for keyset paging and retention.
+		 * -- idx_history_question FULLTEXT (Question) for searchHistory().
+		 * -- returns <bool> true once both exist*/
+    private boolean ensureIndexes(){
+        boolean created = createIndex("CREATE INDEX idx_history_created ON HISTORY (Created, id)", "idx_history_created");
+        return createIndex("ALTER TABLE HISTORY ADD FULLTEXT INDEX idx_history_question (Question)", "idx_history_question") && created;
+    }
 
-        } catch (SQLException except) {
+    private boolean createIndex(String DDL, String name){
+        try{
+            execute(DDL_TIMER, lease -> {
+                try(Statement statement = lease.getConnection().createStatement()){
+                    statement.executeUpdate(DDL);
+                    System.err.println("Mathematica::Index-Created " + name);
+                } catch(SQLException except){
+                    if(except.getErrorCode() != 1061){ //1061 = ER_DUP_KEYNAME, index already there
+                        throw except;
+                    }
+                }
+                return null;
+            });
+            return true;
+        } catch(SQLException except){
             System.err.println(except.getMessage());
+            return false;
         }
-        return new DefaultTableModel(data, columnNames);
     }
 
 		/*Delete() --> Method for 'DELETE' statement
 		 * -- return <int> >> 'Number Of Rows Deleted'
-		 * -- delete data from 'HISTORY' which is more than 15 days old.*/
+		 * -- delete data from 'HISTORY' which is more than @param days old, in bounded chunks
+		 *    (deleteHistoryChunk()) so concurrent inserts are never blocked for long.
+		 * -- for the UI, prefer RetentionJob which does the same in the background.*/
     public int Delete(int days){
-				
-				//Validating Connection with 'Mathematica'
-        if(!isConnected()){
-            System.out.println("Mathmatica::Not-Connected");
-        }
-        
         LocalDateTime fifteenDaysAgo = LocalDateTime.now().minusDays(days); //<CurrentTime> - <@param Days>
         Timestamp timestampLimit = Timestamp.valueOf(fifteenDaysAgo);
+        int rowsDeleted = 0;
         try{
-            String SQL = "DELETE * FROM HISTORY WHERE Created < ?";
-            PreparedStatement statement = connection.prepareStatement(SQL);
-            statement.setTimestamp(1, timestampLimit);
-            int rowsDeleted = statement.executeUpdate();
-            return rowsDeleted;
-
+            int chunk;
+            do{
+                chunk = deleteHistoryChunk(timestampLimit, RetentionJob.DEFAULT_CHUNK_SIZE);
+                rowsDeleted += chunk;
+            } while(chunk > 0);
         } catch(SQLException except){
             System.out.println(except.getMessage());
-            return 0;
         }
+        return rowsDeleted;
+    }
+
+		/*deleteHistoryChunk() --> Deletes up to @param chunkSize rows created before @param limit
+		 * -- picks the oldest ids through idx_history_created, then deletes them by primary key
+		 *    in one short transaction.
+		 * -- returns <int> >> 'Number Of Rows Deleted', 0 once nothing older than @param limit is left*/
+    public int deleteHistoryChunk(Timestamp limit, int chunkSize) throws SQLException{
+        return execute(DELETE_TIMER, lease -> {
+            List<Long> ids = new ArrayList<>(chunkSize);
+            PreparedStatement select = lease.prepare("SELECT id FROM HISTORY WHERE Created < ? ORDER BY Created, id LIMIT ?");
+            select.setTimestamp(1, limit);
+            select.setInt(2, chunkSize);
+            try(ResultSet resultSet = select.executeQuery()){
+                while(resultSet.next()){
+                    ids.add(resultSet.getLong(1));
+                }
+            }
+            if(ids.isEmpty()){
+                return 0;
+            }
+
+            Connection connection = lease.getConnection();
+            PreparedStatement delete = lease.prepare("DELETE FROM HISTORY WHERE id = ?");
+            connection.setAutoCommit(false);
+            try{
+                for(long id : ids){
+                    delete.setLong(1, id);
+                    delete.addBatch();
+                }
+                int rowsDeleted = 0;
+                for(int count : delete.executeBatch()){
+                    rowsDeleted += Math.max(count, 0);
+                }
+                connection.commit();
+                return rowsDeleted;
+            } catch(SQLException except){
+                delete.clearBatch();
+                try{
+                    connection.rollback();
+                } catch(SQLException ignored){
+                    //connection already gone, nothing was committed
+                }
+                throw except;
+            } finally{
+                try{
+                    connection.setAutoCommit(true);
+                } catch(SQLException ignored){
+                    //connection already gone, the pool drops it
+                }
+            }
+        });
+    }
+
+		/*close() --> Closes every pooled connection (and their cached statements)
+		 * -- returns <void>*/
+    public void close(){
+        journal.shutdown(); //drains queued history first, while the pool is still open
+        heartbeat.shutdownNow();
+        pool.close();
     }
 }
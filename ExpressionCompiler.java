@@ -0,0 +1,321 @@
+import net.objecthunter.exp4j.Expression;
+import net.objecthunter.exp4j.ExpressionBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Turns a {@link CompiledExpression} into a generated JVM class implementing
+ * {@link DoubleUnaryOperator}, so {@code f(x)} runs as straight-line bytecode the JIT can inline
+ * into the sampling loop instead of going through the opcode interpreter.
+ * <p>
+ * The class file is written by hand (one constructor and one branch-free
+ * {@code applyAsDouble(double)} method: loads, arithmetic and {@code java.lang.Math} calls) and
+ * defined as a hidden class, so it is unloaded together with the expression that owns it.
+ * Expressions using functions or operators that the interpreter only supports through exp4j, or
+ * that are too large for one method, are not compiled and stay on the interpreter.
+ * <p>
+ * Every generated class is checked against exp4j itself on random inputs before it is used;
+ * a mismatch is logged and the interpreter is kept. Set {@code -Dmathematica.jit=false} to turn
+ * compilation off entirely.
+ */
+final class ExpressionCompiler {
+
+    static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("mathematica.jit"));
+
+    private static final int VERIFY_SAMPLES = 32;
+    private static final double VERIFY_RANGE = 100.0; // Random x in [-100, 100]
+    private static final double RELATIVE_TOLERANCE = 1e-12;
+    private static final int MAX_CODE_LENGTH = 65535;
+    private static final Metrics.Timer JIT_TIMER = Metrics.timer("expr.jit"); // Generate, load and verify
+    private static final Metrics.Counter JIT_REJECTED = Metrics.counter("expr.jit.rejected"); // Mismatches and failures
+
+    private static final String CLASS_NAME = "CompiledExpression$Jit";
+    private static final String OPERATOR_INTERFACE = "java/util/function/DoubleUnaryOperator";
+
+    private ExpressionCompiler() {
+    }
+
+    /**
+     * Compiles an expression to bytecode and verifies it against exp4j.
+     *
+     * @param expression The parsed expression.
+     * @return The generated function (stateless, safe to share between threads), or null when the
+     *         expression is not supported or the generated code did not match exp4j.
+     */
+    static DoubleUnaryOperator compile(CompiledExpression expression) {
+        if (!ENABLED) {
+            return null;
+        }
+        long start = JIT_TIMER.start();
+        try {
+            byte[] classFile = generate(expression);
+            if (classFile == null) {
+                return null;
+            }
+            Class<?> generated = MethodHandles.lookup().defineHiddenClass(classFile, true).lookupClass();
+            DoubleUnaryOperator function = (DoubleUnaryOperator) generated.getDeclaredConstructor().newInstance();
+            if (!matchesExp4j(expression.getSource(), function)) {
+                System.err.println("ExpressionCompiler::Mismatch for '" + expression.getSource() + "', using the interpreter");
+                JIT_REJECTED.increment();
+                return null;
+            }
+            return function;
+        } catch (ReflectiveOperationException | IOException | LinkageError e) {
+            System.err.println("ExpressionCompiler::Failed for '" + expression.getSource() + "': " + e);
+            JIT_REJECTED.increment();
+            return null;
+        } finally {
+            JIT_TIMER.stop(start);
+        }
+    }
+
+    /**
+     * Evaluates the generated function and exp4j at the same random points and compares them.
+     * exp4j throws on division by zero where the generated code yields an infinity or NaN; both
+     * mean "no value here" and count as a match.
+     */
+    static boolean matchesExp4j(String source, DoubleUnaryOperator function) {
+        Expression reference = new ExpressionBuilder(source).variables("x").build();
+        Random random = new Random(source.hashCode());
+        for (int i = 0; i < VERIFY_SAMPLES; i++) {
+            double x = (random.nextDouble() * 2 - 1) * VERIFY_RANGE;
+            double expected;
+            try {
+                expected = reference.setVariable("x", x).evaluate();
+            } catch (ArithmeticException e) {
+                expected = Double.NaN;
+            }
+            double actual = function.applyAsDouble(x);
+            if (!sameValue(expected, actual)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameValue(double expected, double actual) {
+        if (!Double.isFinite(expected) || !Double.isFinite(actual)) {
+            return Double.compare(expected, actual) == 0 || (Double.isNaN(expected) && !Double.isFinite(actual));
+        }
+        return Math.abs(expected - actual) <= RELATIVE_TOLERANCE * Math.max(1.0, Math.abs(expected));
+    }
+
+    /**
+     * Writes the class file, or returns null if the expression uses an unsupported construct.
+     */
+    private static byte[] generate(CompiledExpression expression) throws IOException {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int operatorInterface = pool.classRef(OPERATOR_INTERFACE);
+        int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+        int initName = pool.utf8("<init>");
+        int initType = pool.utf8("()V");
+        int applyName = pool.utf8("applyAsDouble");
+        int applyType = pool.utf8("(D)D");
+        int codeAttribute = pool.utf8("Code");
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int[] code = expression.code;
+        for (int pc = 0; pc < code.length; pc++) {
+            int op = code[pc];
+            switch (op) {
+                case CompiledExpression.CONST:
+                    double value = expression.constants[code[++pc]];
+                    if (Double.doubleToRawLongBits(value) == 0L) {
+                        body.write(0x0e); // dconst_0
+                    } else if (value == 1.0) {
+                        body.write(0x0f); // dconst_1
+                    } else {
+                        writeIndexed(body, 0x14, pool.doubleConstant(value)); // ldc2_w
+                    }
+                    break;
+                case CompiledExpression.X: body.write(0x27); break; // dload_1
+                case CompiledExpression.ADD: body.write(0x63); break; // dadd
+                case CompiledExpression.SUB: body.write(0x67); break; // dsub
+                case CompiledExpression.MUL: body.write(0x6b); break; // dmul
+                case CompiledExpression.DIV: body.write(0x6f); break; // ddiv
+                case CompiledExpression.MOD: body.write(0x73); break; // drem
+                case CompiledExpression.NEG: body.write(0x77); break; // dneg
+                case CompiledExpression.POS: break;
+                case CompiledExpression.POW:
+                case CompiledExpression.POW_FN:
+                    writeIndexed(body, 0xb8, pool.methodRef("java/lang/Math", "pow", "(DD)D")); // invokestatic
+                    break;
+                case CompiledExpression.COT:
+                    writeIndexed(body, 0xb8, pool.methodRef("CompiledExpression", "cot", "(D)D"));
+                    break;
+                case CompiledExpression.LOG2:
+                    writeIndexed(body, 0xb8, pool.methodRef("CompiledExpression", "log2", "(D)D"));
+                    break;
+                default:
+                    String method = MATH_METHODS.get(op);
+                    if (method == null) {
+                        return null; // CALL / OPERATOR: only the interpreter can run these
+                    }
+                    writeIndexed(body, 0xb8, pool.methodRef("java/lang/Math", method, "(D)D"));
+                    break;
+            }
+        }
+        body.write(0xaf); // dreturn
+        if (body.size() > MAX_CODE_LENGTH || pool.size() > 0xffff) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0); // minor version
+        out.writeShort(61); // Java 17; branch-free code needs no StackMapTable
+        pool.writeTo(out);
+        out.writeShort(0x0011); // ACC_PUBLIC | ACC_FINAL
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(operatorInterface);
+        out.writeShort(0); // fields
+        out.writeShort(2); // methods
+
+        // public <init>() { super(); }
+        out.writeShort(0x0001);
+        out.writeShort(initName);
+        out.writeShort(initType);
+        out.writeShort(1);
+        writeCode(out, codeAttribute, 1, 1, new byte[] { 0x2a, (byte) 0xb7, (byte) (objectInit >> 8), (byte) objectInit, (byte) 0xb1 });
+
+        // public double applyAsDouble(double x)
+        out.writeShort(0x0001);
+        out.writeShort(applyName);
+        out.writeShort(applyType);
+        out.writeShort(1);
+        writeCode(out, codeAttribute, 2 * expression.maxStack, 3, body.toByteArray());
+
+        out.writeShort(0); // class attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static final Map<Integer, String> MATH_METHODS = new HashMap<>();
+    static {
+        MATH_METHODS.put(CompiledExpression.SIN, "sin");
+        MATH_METHODS.put(CompiledExpression.COS, "cos");
+        MATH_METHODS.put(CompiledExpression.TAN, "tan");
+        MATH_METHODS.put(CompiledExpression.ASIN, "asin");
+        MATH_METHODS.put(CompiledExpression.ACOS, "acos");
+        MATH_METHODS.put(CompiledExpression.ATAN, "atan");
+        MATH_METHODS.put(CompiledExpression.SINH, "sinh");
+        MATH_METHODS.put(CompiledExpression.COSH, "cosh");
+        MATH_METHODS.put(CompiledExpression.TANH, "tanh");
+        MATH_METHODS.put(CompiledExpression.ABS, "abs");
+        MATH_METHODS.put(CompiledExpression.LOG, "log");
+        MATH_METHODS.put(CompiledExpression.LOG10, "log10");
+        MATH_METHODS.put(CompiledExpression.LOG1P, "log1p");
+        MATH_METHODS.put(CompiledExpression.CEIL, "ceil");
+        MATH_METHODS.put(CompiledExpression.FLOOR, "floor");
+        MATH_METHODS.put(CompiledExpression.SQRT, "sqrt");
+        MATH_METHODS.put(CompiledExpression.CBRT, "cbrt");
+        MATH_METHODS.put(CompiledExpression.EXP, "exp");
+        MATH_METHODS.put(CompiledExpression.EXPM1, "expm1");
+        MATH_METHODS.put(CompiledExpression.SIGNUM, "signum");
+    }
+
+    private static void writeIndexed(ByteArrayOutputStream body, int opcode, int index) {
+        body.write(opcode);
+        body.write(index >> 8);
+        body.write(index);
+    }
+
+    private static void writeCode(DataOutputStream out, int codeAttribute, int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(codeAttribute);
+        out.writeInt(12 + code.length); // max_stack .. attributes_count
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    /** Minimal constant pool builder: entries are de-duplicated and written in insertion order. */
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int next = 1;
+
+        int size() {
+            return next;
+        }
+
+        int utf8(String value) throws IOException {
+            Integer index = entries.get("U" + value);
+            if (index != null) {
+                return index;
+            }
+            out.writeByte(1);
+            out.writeUTF(value);
+            return add("U" + value, 1);
+        }
+
+        int classRef(String internalName) throws IOException {
+            Integer index = entries.get("C" + internalName);
+            if (index != null) {
+                return index;
+            }
+            int name = utf8(internalName);
+            out.writeByte(7);
+            out.writeShort(name);
+            return add("C" + internalName, 1);
+        }
+
+        int methodRef(String owner, String name, String descriptor) throws IOException {
+            String key = "M" + owner + "." + name + descriptor;
+            Integer index = entries.get(key);
+            if (index != null) {
+                return index;
+            }
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int typeIndex = utf8(descriptor);
+            out.writeByte(12); // NameAndType
+            out.writeShort(nameIndex);
+            out.writeShort(typeIndex);
+            int nameAndType = next++;
+            out.writeByte(10); // Methodref
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+            return add(key, 1);
+        }
+
+        int doubleConstant(double value) throws IOException {
+            String key = "D" + Double.doubleToRawLongBits(value);
+            Integer index = entries.get(key);
+            if (index != null) {
+                return index;
+            }
+            out.writeByte(6);
+            out.writeDouble(value);
+            return add(key, 2); // Doubles take two constant pool slots
+        }
+
+        private int add(String key, int slots) {
+            int index = next;
+            next += slots;
+            entries.put(key, index);
+            return index;
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            out.flush();
+            target.writeShort(next);
+            bytes.writeTo(target);
+        }
+    }
+}
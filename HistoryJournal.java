@@ -0,0 +1,297 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*HistoryJournal --> Write-behind queue for 'HISTORY' inserts.
+ * -- append() never blocks: records go onto an in-memory queue.
+ * -- a single flusher thread writes them with JDBC batches (DataBase.insertBatch) once BATCH_SIZE
+ *    records are waiting or FLUSH_INTERVAL_MS has passed, whichever comes first.
+ * -- while MySQL is unreachable, batches are appended to a local spill file instead and replayed,
+ *    oldest first, as soon as the database is healthy again.
+ * -- shutdown() drains the queue (to MySQL or the spill file) before returning.
+ * -- the spill file is shared by every process (GUI, BatchCli, ApiServer), so spilling and replaying
+ *    also hold an OS file lock on <spill file>.lock: a spill waits for it, a replay skips its turn
+ *    while another process holds it.*/
+
+public class HistoryJournal{
+    private static final int BATCH_SIZE = 100;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final int QUEUE_CAPACITY = 10000; //beyond this, records go straight to the spill file
+    private static final long SHUTDOWN_TIMEOUT_MS = 10000;
+
+    private final DataBase database;
+    private final Path spillFile;
+    private final Path lockFile;
+    private final BlockingQueue<HistoryRecord> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread flusher;
+    private static final Object spillLock = new Object(); //guards the spill file within this JVM (file locks are per process)
+    private volatile boolean running = true;
+    private volatile Consumer<List<HistoryRecord>> flushListener; //told about every batch that reached MySQL
+
+		/*HistoryJournal() --> Constructor, starts the flusher thread*/
+    HistoryJournal(DataBase database, Path spillFile){
+        this.database = database;
+        this.spillFile = spillFile;
+        this.lockFile = spillFile.resolveSibling(spillFile.getFileName() + ".lock");
+        this.flusher = new Thread(this::runFlusher, "history-journal");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+		/*append() --> Queues a record for writing, never blocks
+		 * -- returns <void>*/
+    public void append(HistoryRecord record){
+        if(!running || !queue.offer(record)){
+            List<HistoryRecord> overflow = new ArrayList<>(1);
+            overflow.add(record);
+            spill(overflow); //queue full or shutting down: keep it on disk rather than drop it
+        }
+    }
+
+		/*setFlushListener() --> @param listener is called on the flusher thread with each batch committed to MySQL*/
+    public void setFlushListener(Consumer<List<HistoryRecord>> listener){
+        this.flushListener = listener;
+    }
+
+		/*shutdown() --> Stops the flusher after writing everything still queued
+		 * -- returns <void>*/
+    public void shutdown(){
+        running = false;
+        flusher.interrupt();
+        try{
+            flusher.join(SHUTDOWN_TIMEOUT_MS);
+        } catch(InterruptedException except){
+            Thread.currentThread().interrupt();
+        }
+        //anything left (flusher timed out) is kept for the next start
+        List<HistoryRecord> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if(!rest.isEmpty()){
+            spill(rest);
+        }
+    }
+
+    private void runFlusher(){
+        List<HistoryRecord> batch = new ArrayList<>(BATCH_SIZE);
+        long batchStarted = 0;
+        while(running){
+            try{
+                HistoryRecord record = queue.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if(record != null){
+                    if(batch.isEmpty()){
+                        batchStarted = System.currentTimeMillis();
+                    }
+                    batch.add(record);
+                    queue.drainTo(batch, BATCH_SIZE - batch.size());
+                }
+                boolean full = batch.size() >= BATCH_SIZE;
+                boolean due = !batch.isEmpty() && System.currentTimeMillis() - batchStarted >= FLUSH_INTERVAL_MS;
+                if(full || due){
+                    flush(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                } else if(batch.isEmpty()){
+                    replaySpill(); //idle tick: catch up on anything written while MySQL was down
+                }
+            } catch(InterruptedException except){
+                break; //shutdown()
+            }
+        }
+
+        //draining on shutdown
+        queue.drainTo(batch);
+        if(!batch.isEmpty()){
+            flush(batch);
+        }
+    }
+
+		/*flush() --> Writes one batch, older spilled records first so the table stays in order*/
+    private void flush(List<HistoryRecord> batch){
+        if(!replaySpill() || !write(batch)){
+            spill(batch);
+        }
+    }
+
+		/*write() --> One JDBC batch to MySQL
+		 * -- returns <bool> true if committed*/
+    private boolean write(List<HistoryRecord> batch){
+        if(!database.isConnected()){
+            return false;
+        }
+        try{
+            List<HistoryRecord> stored = database.insertBatch(batch); //with the ids MySQL generated
+            Consumer<List<HistoryRecord>> listener = flushListener;
+            if(listener != null){
+                listener.accept(stored);
+            }
+            return true;
+        } catch(SQLException except){
+            System.err.println("HistoryJournal::Flush-Failed " + except.getMessage());
+            return false;
+        }
+    }
+
+		/*spill() --> Appends records to the local journal file
+		 * -- format: one record per line, <epoch millis> TAB <FilePath> TAB <Question>, with \ tab CR LF escaped*/
+    private void spill(List<HistoryRecord> records){
+        synchronized(spillLock){
+            try{
+                Files.createDirectories(spillFile.toAbsolutePath().getParent());
+                try(FileChannel lock = openLock(); FileLock held = lock.lock();
+                    BufferedWriter writer = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)){
+                    for(HistoryRecord record : records){
+                        writer.write(record.getCreated().getTime() + "\t" + escape(record.getFilePath()) + "\t" + escape(record.getQuestion()));
+                        writer.newLine();
+                    }
+                }
+                System.err.println("HistoryJournal::Spilled " + records.size());
+            } catch(IOException except){
+                System.err.println("HistoryJournal::Spill-Failed " + except.getMessage() + " (" + records.size() + " records lost)");
+            }
+        }
+    }
+
+		/*replaySpill() --> Writes spilled records to MySQL in batches; whatever could not be written
+		 * stays in the file for the next attempt.
+		 * -- returns <bool> true if the spill file is now empty*/
+    private boolean replaySpill(){
+        synchronized(spillLock){
+            if(!Files.exists(spillFile)){
+                return true;
+            }
+            if(!database.isConnected()){
+                return false;
+            }
+            try(FileChannel lock = openLock(); FileLock held = lock.tryLock()){
+                if(held == null){
+                    return false; //another process is replaying (or spilling), try again next tick
+                }
+                return replayLocked();
+            } catch(IOException except){
+                System.err.println("HistoryJournal::Replay-Failed " + except.getMessage());
+                return false;
+            }
+        }
+    }
+
+		/*replayLocked() --> replaySpill() once this process holds the spill file lock
+		 * -- returns <bool> true if the spill file is now empty*/
+    private boolean replayLocked(){
+        if(!Files.exists(spillFile)){
+            return true; //another process replayed it meanwhile
+        }
+        List<HistoryRecord> pending = new ArrayList<>();
+        try(BufferedReader reader = Files.newBufferedReader(spillFile, StandardCharsets.UTF_8)){
+            String line;
+            while((line = reader.readLine()) != null){
+                HistoryRecord record = parse(line);
+                if(record != null){
+                    pending.add(record);
+                }
+            }
+        } catch(IOException except){
+            System.err.println("HistoryJournal::Replay-Failed " + except.getMessage());
+            return false;
+        }
+
+        int written = 0;
+        while(written < pending.size()){
+            List<HistoryRecord> chunk = pending.subList(written, Math.min(pending.size(), written + BATCH_SIZE));
+            if(!write(new ArrayList<>(chunk))){
+                break;
+            }
+            written += chunk.size();
+        }
+
+        try{
+            if(written == pending.size()){
+                Files.deleteIfExists(spillFile);
+                if(written > 0){
+                    System.err.println("HistoryJournal::Replayed " + written);
+                }
+                return true;
+            }
+            rewrite(pending.subList(written, pending.size())); //keep only what is still unwritten
+        } catch(IOException except){
+            System.err.println("HistoryJournal::Replay-Failed " + except.getMessage());
+        }
+        return false;
+    }
+
+		/*openLock() --> Channel on the lock file next to the spill file; closing it releases the lock*/
+    private FileChannel openLock() throws IOException{
+        return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private void rewrite(List<HistoryRecord> remaining) throws IOException{
+        Path tmp = spillFile.resolveSibling(spillFile.getFileName() + ".tmp");
+        try(BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)){
+            for(HistoryRecord record : remaining){
+                writer.write(record.getCreated().getTime() + "\t" + escape(record.getFilePath()) + "\t" + escape(record.getQuestion()));
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, spillFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static HistoryRecord parse(String line){
+        String[] fields = line.split("\t", -1);
+        if(fields.length != 3){
+            return null; //torn last line after a crash
+        }
+        try{
+            return new HistoryRecord(unescape(fields[1]), unescape(fields[2]), new Timestamp(Long.parseLong(fields[0])));
+        } catch(NumberFormatException except){
+            return null;
+        }
+    }
+
+    static String escape(String value){
+        StringBuilder out = new StringBuilder(value.length());
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            switch(c){
+                case '\\': out.append("\\\\"); break;
+                case '\t': out.append("\\t"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                default: out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    static String unescape(String value){
+        StringBuilder out = new StringBuilder(value.length());
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(c == '\\' && i + 1 < value.length()){
+                char next = value.charAt(++i);
+                switch(next){
+                    case 't': out.append('\t'); break;
+                    case 'n': out.append('\n'); break;
+                    case 'r': out.append('\r'); break;
+                    default: out.append(next);
+                }
+            } else{
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+}
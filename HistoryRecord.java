@@ -0,0 +1,34 @@
+import java.sql.Timestamp;
+
+/*HistoryRecord --> One row of the 'HISTORY' table.
+ * -- 'Created' is taken when the record is made (not when it reaches MySQL), so rows written
+ *    behind by HistoryJournal keep the order the user produced them in.*/
+
+public class HistoryRecord{
+    private final long id; //primary key, 0 until the store has assigned one
+    private final String FilePath;
+    private final String Question;
+    private final Timestamp Created;
+
+    HistoryRecord(String FilePath, String Question, Timestamp Created){
+        this(0L, FilePath, Question, Created);
+    }
+
+    HistoryRecord(long id, String FilePath, String Question, Timestamp Created){
+        this.id = id;
+        this.FilePath = FilePath;
+        this.Question = Question;
+        this.Created = Created;
+    }
+
+		/*now() --> Record stamped with the current time
+		 * -- returns <HistoryRecord>*/
+    static HistoryRecord now(String FilePath, String Question){
+        return new HistoryRecord(FilePath, Question, new Timestamp(System.currentTimeMillis()));
+    }
+
+    public long getId(){ return id; }
+    public String getFilePath(){ return FilePath; }
+    public String getQuestion(){ return Question; }
+    public Timestamp getCreated(){ return Created; }
+}
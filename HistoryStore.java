@@ -0,0 +1,75 @@
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*HistoryStore --> Where the 'HISTORY' rows live, as seen by the GUI, BatchIngest and RetentionJob.
+ * -- DataBase          --> MySQL (the default), written behind through HistoryJournal.
+ * -- LocalHistoryStore --> embedded append-only log file plus an in-memory index, no server needed.
+ * -- open() picks the backend from system properties:
+ *      -Dmathematica.store=mysql|local      (default mysql)
+ *      -Dmathematica.db.url / .db.user / .db.password   (MySQL only)
+ *      -Dmathematica.store.dir              (local only, default ~/.mathematica/history)
+ * -- failures are reported as SQLException by every backend, so callers handle one error type.*/
+
+public interface HistoryStore{
+
+		/*SearchMode --> How searchHistory() matches the query against stored questions / OCR text
+		 * TOKEN     --> whole words, ranked by relevance.
+		 * PREFIX    --> every word must start with one of the typed words, e.g. "deriv" finds "derivative".
+		 * SUBSTRING --> literal substring anywhere, newest first.*/
+    enum SearchMode{ TOKEN, PREFIX, SUBSTRING }
+
+		/*isConnected() --> Cached health, never blocks -- returns <bool>*/
+    boolean isConnected();
+
+		/*CreateData() --> Stores one history row, never blocks for long -- returns <void>*/
+    void CreateData(String ImagePath, String Question);
+
+		/*setHistoryListener() --> @param listener is told (possibly on a background thread) about every
+		 * batch of history rows that has been stored -- returns <void>*/
+    void setHistoryListener(Consumer<List<HistoryRecord>> listener);
+
+		/*getHistoryTableModel() --> Paged history table for the GUI -- returns <HistoryTableModel>*/
+    default HistoryTableModel getHistoryTableModel(){
+        return new HistoryTableModel(this);
+    }
+
+		/*fetchHistoryPage() --> Keyset pagination ordered by (Created, id)
+		 * -- @param afterCreated/afterId: the last row of the previous page, null for the first page.
+		 * -- returns <List<HistoryRecord>> at most @param limit rows*/
+    List<HistoryRecord> fetchHistoryPage(Timestamp afterCreated, long afterId, int limit) throws SQLException;
+
+		/*searchHistory() --> Ranked, paginated search over stored questions
+		 * -- returns <List<HistoryRecord>> at most @param limit rows, skipping the first @param offset*/
+    List<HistoryRecord> searchHistory(String query, SearchMode mode, int offset, int limit) throws SQLException;
+
+		/*Delete() --> Deletes rows more than @param days old -- returns <int> >> 'Number Of Rows Deleted'*/
+    int Delete(int days);
+
+		/*deleteHistoryChunk() --> Deletes up to @param chunkSize rows created before @param limit, oldest first
+		 * -- returns <int> >> 'Number Of Rows Deleted', 0 once nothing older than @param limit is left*/
+    int deleteHistoryChunk(Timestamp limit, int chunkSize) throws SQLException;
+
+		/*close() --> Flushes pending writes and releases files / connections -- returns <void>*/
+    void close();
+
+		/*open() --> Opens the backend selected by system properties (see above)
+		 * -- returns <HistoryStore>, check isConnected() for whether it is usable*/
+    static HistoryStore open(){
+        String backend = System.getProperty("mathematica.store", "mysql").trim().toLowerCase();
+        if(backend.equals("local")){
+            String dir = System.getProperty("mathematica.store.dir",
+                    Paths.get(System.getProperty("user.home"), ".mathematica", "history").toString());
+            return new LocalHistoryStore(Paths.get(dir));
+        }
+        if(!backend.equals("mysql")){
+            System.err.println("HistoryStore::Unknown backend '" + backend + "', using mysql");
+        }
+        return new DataBase(
+                System.getProperty("mathematica.db.url", DataBase.DEFAULT_URL),
+                System.getProperty("mathematica.db.user", "root"),
+                System.getProperty("mathematica.db.password", "dedakira"));
+    }
+}
@@ -0,0 +1,174 @@
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
+
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Lazily loaded model for the history table. Rows are fetched from the database one page at a
+ * time using keyset pagination on (Created, id), so no query ever reads the whole table. The next
+ * page is requested in the background when the table asks for a row near the end of what has been
+ * loaded, i.e. as the user scrolls. Newly written rows are appended without re-querying; rows
+ * written while a page is loading are held back and merged once it arrives.
+ * All methods must be called on the EDT.
+ */
+public class HistoryTableModel extends AbstractTableModel {
+
+    private static final String[] COLUMN_NAMES = { "FilePath", "Question", "Created" };
+    private static final int PAGE_SIZE = 200; // Rows fetched per query
+    private static final int PREFETCH_DISTANCE = 50; // Start loading the next page this many rows before the end
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final HistoryStore database;
+    private final List<HistoryRecord> rows = new ArrayList<>();
+    private final Set<Long> shownIds = new HashSet<>(); // ids of 'rows', so a row fetched and also announced is shown once
+    private final List<HistoryRecord> arrivedWhileLoading = new ArrayList<>(); // appendRecords() during a page query
+    // Created of the last row read from the database, null before the first page. Appended rows don't
+    // move it: their Created may not be what the store kept (MySQL TIMESTAMP drops the milliseconds).
+    private Timestamp cursorCreated;
+    private long cursorId; // id of the last row read from the database
+    private boolean loading; // A page query is in flight
+    private boolean exhausted; // The last page came back short; every stored row has been loaded
+
+    /**
+     * Creates the model and starts loading the first page.
+     *
+     * @param database The history store to page through.
+     */
+    public HistoryTableModel(HistoryStore database) {
+        this.database = database;
+        loadNextPage();
+    }
+
+    /**
+     * Creates a fixed model over rows that have already been fetched, e.g. search results.
+     *
+     * @param records The rows to show, in display order.
+     */
+    public HistoryTableModel(List<HistoryRecord> records) {
+        this.database = null;
+        this.rows.addAll(records);
+        for (HistoryRecord record : records) {
+            shownIds.add(record.getId());
+        }
+        this.exhausted = true; // Nothing more to page in
+    }
+
+    @Override
+    public int getRowCount() { return rows.size(); }
+
+    @Override
+    public int getColumnCount() { return COLUMN_NAMES.length; }
+
+    @Override
+    public String getColumnName(int column) { return COLUMN_NAMES[column]; }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        if (rowIndex >= rows.size() - PREFETCH_DISTANCE) {
+            loadNextPage(); // The table is rendering rows near the end; fetch more before the user gets there
+        }
+        HistoryRecord record = rows.get(rowIndex);
+        switch (columnIndex) {
+            case 0: return record.getFilePath();
+            case 1: return record.getQuestion();
+            default: return record.getCreated().toLocalDateTime().format(FORMATTER);
+        }
+    }
+
+    /**
+     * @param rowIndex A row index in the model.
+     * @return The record shown in that row.
+     */
+    public HistoryRecord getRecord(int rowIndex) {
+        return rows.get(rowIndex);
+    }
+
+    /**
+     * @return true once every stored row has been loaded into the model.
+     */
+    public boolean isFullyLoaded() {
+        return exhausted;
+    }
+
+    /**
+     * Fetches the page after the current cursor on a background worker, unless a page is already
+     * loading or the end has been reached.
+     */
+    public void loadNextPage() {
+        if (loading || exhausted) {
+            return;
+        }
+        loading = true;
+        Timestamp afterCreated = cursorCreated;
+        long afterId = cursorId;
+        new SwingWorker<List<HistoryRecord>, Void>() {
+            @Override
+            protected List<HistoryRecord> doInBackground() throws Exception {
+                return database.fetchHistoryPage(afterCreated, afterId, PAGE_SIZE);
+            }
+
+            @Override
+            protected void done() {
+                loading = false;
+                List<HistoryRecord> arrived = new ArrayList<>(arrivedWhileLoading);
+                arrivedWhileLoading.clear();
+                List<HistoryRecord> page;
+                try {
+                    page = get();
+                } catch (Exception e) {
+                    System.err.println("Could not load history page: " + e.getMessage());
+                    return; // Leaves the cursor alone; the next scroll retries, and pages in 'arrived' too
+                }
+                if (page.size() < PAGE_SIZE) {
+                    exhausted = true;
+                }
+                if (!page.isEmpty()) {
+                    HistoryRecord last = page.get(page.size() - 1);
+                    cursorCreated = last.getCreated();
+                    cursorId = last.getId();
+                    append(page);
+                }
+                if (exhausted) {
+                    append(arrived); // Those the page already contained are skipped
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Appends rows that have just been written to the store. When older pages are still unloaded
+     * the rows are skipped: keyset paging will reach them in order once the user scrolls that far.
+     * While a page is loading they are held until it arrives, since it may or may not contain them.
+     *
+     * @param records Newly committed history records with their ids, oldest first.
+     */
+    public void appendRecords(List<HistoryRecord> records) {
+        if (database == null || records.isEmpty()) {
+            return;
+        }
+        if (loading) {
+            arrivedWhileLoading.addAll(records);
+        } else if (exhausted) {
+            append(records);
+        }
+    }
+
+    /** Adds the records not shown yet to the end of the table. */
+    private void append(List<HistoryRecord> records) {
+        int first = rows.size();
+        for (HistoryRecord record : records) {
+            // id 0: the store didn't report one, nothing to match a fetched row against
+            if (record.getId() == 0 || shownIds.add(record.getId())) {
+                rows.add(record);
+            }
+        }
+        if (rows.size() > first) {
+            fireTableRowsInserted(first, rows.size() - 1);
+        }
+    }
+}
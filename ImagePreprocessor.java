@@ -0,0 +1,309 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*ImagePreprocessor --> Prepares a BufferedImage for OCR before it reaches Tesseract.
+ * Stages (each can be switched off):
+ * -- grayscale  --> luminance only, one byte per pixel.
+ * -- normalise  --> scales so the image is about 'targetDpi' assuming a page width of 8.5in,
+ *                   which shrinks 12MP phone photos to something Tesseract reads just as well.
+ * -- binarize   --> adaptive (local mean) threshold, robust to uneven lighting.
+ * -- deskew     --> rotates by the angle in [-maxSkew, maxSkew] with the sharpest row profile.
+ * -- crop       --> trims the margins around the ink bounding box.
+ * process() records how long each stage took; getLastTimings() returns them in stage order.*/
+
+public class ImagePreprocessor{
+    private boolean grayscale = true;
+    private boolean normalise = true;
+    private boolean binarize = true;
+    private boolean deskew = true;
+    private boolean crop = true;
+
+    private int targetDpi = 300; //resolution Tesseract is trained around
+    private int thresholdWindow = 31; //side of the local-mean window in pixels (odd)
+    private int thresholdOffset = 12; //pixel must be this much darker than its neighbourhood to count as ink
+    private double maxSkewDegrees = 5.0;
+    private double skewStepDegrees = 0.5;
+    private int cropMargin = 10; //pixels kept around the text region
+
+    private static final double PAGE_WIDTH_INCHES = 8.5;
+
+    //per-stage timings of the last process() call on this thread
+    private final ThreadLocal<Map<String, Long>> lastTimings = ThreadLocal.withInitial(LinkedHashMap::new);
+
+    public ImagePreprocessor setGrayscale(boolean enabled){ this.grayscale = enabled; return this; }
+    public ImagePreprocessor setNormalise(boolean enabled){ this.normalise = enabled; return this; }
+    public ImagePreprocessor setBinarize(boolean enabled){ this.binarize = enabled; return this; }
+    public ImagePreprocessor setDeskew(boolean enabled){ this.deskew = enabled; return this; }
+    public ImagePreprocessor setCrop(boolean enabled){ this.crop = enabled; return this; }
+    public ImagePreprocessor setTargetDpi(int dpi){ this.targetDpi = dpi; return this; }
+    public ImagePreprocessor setThresholdWindow(int window){ this.thresholdWindow = window | 1; return this; }
+    public ImagePreprocessor setThresholdOffset(int offset){ this.thresholdOffset = offset; return this; }
+    public ImagePreprocessor setMaxSkewDegrees(double degrees){ this.maxSkewDegrees = degrees; return this; }
+    public ImagePreprocessor setCropMargin(int margin){ this.cropMargin = margin; return this; }
+
+		/*fingerprint() --> Describes the enabled stages and parameters, so cached OCR results
+		 * produced under a different preprocessing setup are never reused.
+		 * -- returns <String>*/
+    public String fingerprint(){
+        return "g" + grayscale + ",n" + normalise + "@" + targetDpi + ",b" + binarize + "@" + thresholdWindow + "/" + thresholdOffset
+                + ",d" + deskew + "@" + maxSkewDegrees + ",c" + crop + "@" + cropMargin;
+    }
+
+		/*process() --> Runs the enabled stages in order
+		 * -- returns <BufferedImage> ready for ITesseract.doOCR(BufferedImage)*/
+    public BufferedImage process(BufferedImage source){
+        Map<String, Long> timings = lastTimings.get();
+        timings.clear();
+        BufferedImage image = source;
+        long start;
+
+        if(grayscale){
+            start = System.nanoTime();
+            image = toGrayscale(image);
+            timings.put("grayscale", System.nanoTime() - start);
+        }
+        if(normalise){
+            start = System.nanoTime();
+            image = normaliseResolution(image);
+            timings.put("normalise", System.nanoTime() - start);
+        }
+        if(binarize){
+            start = System.nanoTime();
+            image = adaptiveThreshold(image);
+            timings.put("binarize", System.nanoTime() - start);
+        }
+        if(deskew){
+            start = System.nanoTime();
+            image = deskew(image);
+            timings.put("deskew", System.nanoTime() - start);
+        }
+        if(crop){
+            start = System.nanoTime();
+            image = cropToText(image);
+            timings.put("crop", System.nanoTime() - start);
+        }
+        return image;
+    }
+
+		/*getLastTimings() --> Stage name --> nanoseconds for the last process() call on the calling thread
+		 * -- returns <Map<String, Long>>*/
+    public Map<String, Long> getLastTimings(){
+        return new LinkedHashMap<>(lastTimings.get());
+    }
+
+		/*formatTimings() --> One-line summary of getLastTimings() in milliseconds
+		 * -- returns <String>*/
+    public String formatTimings(){
+        StringBuilder line = new StringBuilder("Preprocess::");
+        long total = 0;
+        for(Map.Entry<String, Long> stage : lastTimings.get().entrySet()){
+            line.append(' ').append(stage.getKey()).append('=').append(String.format("%.1fms", stage.getValue() / 1e6));
+            total += stage.getValue();
+        }
+        return line.append(" total=").append(String.format("%.1fms", total / 1e6)).toString();
+    }
+
+		/*toGrayscale() --> Converts to TYPE_BYTE_GRAY
+		 * -- returns <BufferedImage>*/
+    static BufferedImage toGrayscale(BufferedImage image){
+        if(image.getType() == BufferedImage.TYPE_BYTE_GRAY){
+            return image;
+        }
+        BufferedImage gray = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = gray.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return gray;
+    }
+
+		/*normaliseResolution() --> Scales the image so its width matches 'targetDpi' on a letter page.
+		 * Only ever downscales; small crops are left untouched.
+		 * -- returns <BufferedImage>*/
+    BufferedImage normaliseResolution(BufferedImage image){
+        int targetWidth = (int) Math.round(PAGE_WIDTH_INCHES * targetDpi);
+        if(image.getWidth() <= targetWidth){
+            return image;
+        }
+        double scale = (double) targetWidth / image.getWidth();
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage scaled = new BufferedImage(targetWidth, targetHeight, gray(image) ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+        g.dispose();
+        return scaled;
+    }
+
+		/*adaptiveThreshold() --> Local-mean (Bradley) thresholding using an integral image, O(pixels)
+		 * -- returns <BufferedImage> TYPE_BYTE_GRAY holding only 0 (ink) and 255 (paper)*/
+    BufferedImage adaptiveThreshold(BufferedImage image){
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] luma = luminance(image);
+
+        long[] integral = new long[(width + 1) * (height + 1)];
+        for(int y = 0; y < height; y++){
+            long rowSum = 0;
+            for(int x = 0; x < width; x++){
+                rowSum += luma[y * width + x];
+                integral[(y + 1) * (width + 1) + (x + 1)] = integral[y * (width + 1) + (x + 1)] + rowSum;
+            }
+        }
+
+        int half = thresholdWindow / 2;
+        byte[] out = new byte[width * height];
+        for(int y = 0; y < height; y++){
+            int y0 = Math.max(0, y - half);
+            int y1 = Math.min(height - 1, y + half);
+            for(int x = 0; x < width; x++){
+                int x0 = Math.max(0, x - half);
+                int x1 = Math.min(width - 1, x + half);
+                long sum = integral[(y1 + 1) * (width + 1) + (x1 + 1)] - integral[y0 * (width + 1) + (x1 + 1)]
+                         - integral[(y1 + 1) * (width + 1) + x0] + integral[y0 * (width + 1) + x0];
+                int count = (x1 - x0 + 1) * (y1 - y0 + 1);
+                boolean ink = (long) luma[y * width + x] * count < (sum - (long) thresholdOffset * count);
+                out[y * width + x] = ink ? 0 : (byte) 255;
+            }
+        }
+        return fromBytes(out, width, height);
+    }
+
+		/*deskew() --> Tries angles in [-maxSkew, maxSkew]; the correct one lines text rows up, which
+		 * maximises the variance of the horizontal ink projection. Scoring runs on a subsample.
+		 * -- returns <BufferedImage> rotated copy, or the input if no rotation helps*/
+    BufferedImage deskew(BufferedImage image){
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] luma = luminance(image);
+
+        //collect ink pixels (subsampled) once, then score every candidate angle against them
+        int stride = Math.max(1, Math.max(width, height) / 600);
+        int inkCount = 0;
+        int[] inkX = new int[1024];
+        int[] inkY = new int[1024];
+        for(int y = 0; y < height; y += stride){
+            for(int x = 0; x < width; x += stride){
+                if(luma[y * width + x] < 128){
+                    if(inkCount == inkX.length){
+                        inkX = Arrays.copyOf(inkX, inkCount * 2);
+                        inkY = Arrays.copyOf(inkY, inkCount * 2);
+                    }
+                    inkX[inkCount] = x;
+                    inkY[inkCount] = y;
+                    inkCount++;
+                }
+            }
+        }
+        if(inkCount == 0){
+            return image;
+        }
+
+        double bestAngle = 0.0;
+        double bestScore = -1.0;
+        int diagonal = (int) Math.ceil(Math.hypot(width, height));
+        int[] rows = new int[2 * diagonal + 1];
+        for(double angle = -maxSkewDegrees; angle <= maxSkewDegrees + 1e-9; angle += skewStepDegrees){
+            double radians = Math.toRadians(angle);
+            double sin = Math.sin(radians);
+            double cos = Math.cos(radians);
+            Arrays.fill(rows, 0);
+            for(int i = 0; i < inkCount; i++){
+                int row = (int) Math.round(inkY[i] * cos - inkX[i] * sin) + diagonal;
+                rows[row]++;
+            }
+            double score = 0.0;
+            for(int r = 1; r < rows.length; r++){
+                double diff = rows[r] - rows[r - 1];
+                score += diff * diff;
+            }
+            if(score > bestScore){
+                bestScore = score;
+                bestAngle = angle;
+            }
+        }
+        if(Math.abs(bestAngle) < skewStepDegrees / 2){
+            return image;
+        }
+
+        BufferedImage rotated = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = rotated.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.drawImage(image, AffineTransform.getRotateInstance(Math.toRadians(-bestAngle), width / 2.0, height / 2.0), null);
+        g.dispose();
+        return rotated;
+    }
+
+		/*cropToText() --> Trims to the bounding box of dark pixels plus 'cropMargin'
+		 * -- returns <BufferedImage>*/
+    BufferedImage cropToText(BufferedImage image){
+        Rectangle bounds = inkBounds(image, cropMargin);
+        if(bounds == null || (bounds.width == image.getWidth() && bounds.height == image.getHeight())){
+            return image;
+        }
+        return image.getSubimage(bounds.x, bounds.y, bounds.width, bounds.height);
+    }
+
+		/*inkBounds() --> Bounding box of pixels darker than mid-gray, grown by @param margin
+		 * -- returns <Rectangle>, null for a blank image*/
+    static Rectangle inkBounds(BufferedImage image, int margin){
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] luma = luminance(image);
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        for(int y = 0; y < height; y++){
+            for(int x = 0; x < width; x++){
+                if(luma[y * width + x] < 128){
+                    if(x < minX) minX = x;
+                    if(x > maxX) maxX = x;
+                    if(y < minY) minY = y;
+                    if(y > maxY) maxY = y;
+                }
+            }
+        }
+        if(maxX < 0){
+            return null;
+        }
+        minX = Math.max(0, minX - margin);
+        minY = Math.max(0, minY - margin);
+        maxX = Math.min(width - 1, maxX + margin);
+        maxY = Math.min(height - 1, maxY + margin);
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+		/*luminance() --> 0..255 luminance per pixel, read straight from the raster for gray images
+		 * -- returns <int[]> row-major*/
+    static int[] luminance(BufferedImage image){
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] luma = new int[width * height];
+        if(gray(image)){
+            image.getRaster().getSamples(0, 0, width, height, 0, luma);
+            return luma;
+        }
+        int[] rgb = image.getRGB(0, 0, width, height, null, 0, width);
+        for(int i = 0; i < rgb.length; i++){
+            int p = rgb[i];
+            luma[i] = (((p >> 16) & 0xFF) * 299 + ((p >> 8) & 0xFF) * 587 + (p & 0xFF) * 114) / 1000;
+        }
+        return luma;
+    }
+
+    private static boolean gray(BufferedImage image){
+        return image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+    }
+
+    private static BufferedImage fromBytes(byte[] pixels, int width, int height){
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        out.getRaster().setDataElements(0, 0, width, height, pixels);
+        return out;
+    }
+}
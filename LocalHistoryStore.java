@@ -0,0 +1,570 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*LocalHistoryStore --> Embedded 'HISTORY' backend, no database server needed.
+ * -- on disk: one append-only log file, one line per change:
+ *      A TAB <id> TAB <epoch millis> TAB <FilePath> TAB <Question>   (row added)
+ *      D TAB <id>                                                     (row deleted)
+ *    with \ tab CR LF escaped as in HistoryJournal's spill file.
+ * -- in memory, rebuilt by replaying the log on open:
+ *      an index of the live rows ordered by (Created, id), for paging and retention;
+ *      an inverted index, word --> ascending ids of the rows containing it, for TOKEN and PREFIX
+ *      search (the local counterpart of MySQL's FULLTEXT index). Ids are handed out in Created
+ *      order, so walking a list backwards is newest first and a search stops once its page is full.
+ *      Deleted rows stay in the lists (skipped on read) until the next compaction rebuilds them.
+ *      SUBSTRING search scans newest first, as LIKE does on MySQL.
+ * -- every write appends to the log and updates the indexes under one lock.
+ * -- CreateData() is called on the EDT, so it only stamps the row and queues it; one writer thread
+ *    appends and flushes in call order. No network hop, so no HistoryJournal batching or spilling;
+ *    close() writes everything still queued first.
+ * -- once deleted lines outnumber live rows the log is compacted (rewritten and swapped atomically).*/
+
+public class LocalHistoryStore implements HistoryStore{
+    private static final String LOG_NAME = "history.log";
+    private static final int COMPACT_MIN_DEAD = 1000; //don't rewrite the log for a handful of deletes
+    private static final Metrics.Counter ROWS_INSERTED = Metrics.counter("local.rowsInserted");
+
+    private final Path logFile;
+    private final NavigableMap<Key, HistoryRecord> index = new TreeMap<>(); //guarded by 'this'
+    private final Map<Long, Key> keysById = new HashMap<>(); //guarded by 'this'
+    private final Map<String, Postings> postings = new HashMap<>(); //word --> row ids, guarded by 'this'
+    private final NavigableSet<String> vocabulary = new TreeSet<>(); //postings' words in order, for PREFIX, guarded by 'this'
+    private BufferedWriter log; //guarded by 'this', null once closed or if the log could not be opened
+    private long nextId = 1; //guarded by 'this'
+    private long lastCreated; //newest Created written, keeps ids in Created order, guarded by 'this'
+    private int deadLines; //log lines that no longer describe a live row, guarded by 'this'
+    private volatile Consumer<List<HistoryRecord>> historyListener;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "local-history-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+		/*Key --> Index order, the same (Created, id) order MySQL pages by*/
+    private static final class Key implements Comparable<Key>{
+        final long created;
+        final long id;
+
+        Key(long created, long id){
+            this.created = created;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Key other){
+            int byCreated = Long.compare(created, other.created);
+            return byCreated != 0 ? byCreated : Long.compare(id, other.id);
+        }
+    }
+
+		/*Postings --> Ids of the rows containing one word, ascending, including deleted rows until the
+		 * next compaction*/
+    private static final class Postings{
+        long[] ids = new long[2];
+        int size;
+
+        void add(long id){
+            if(size > 0 && ids[size - 1] == id){
+                return; //the word appears twice in the row
+            }
+            if(size == ids.length){
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            if(size == 0 || ids[size - 1] < id){
+                ids[size++] = id; //the usual case, ids only grow
+                return;
+            }
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if(at < 0){
+                at = -at - 1; //a row replayed out of order from an older log
+                System.arraycopy(ids, at, ids, at + 1, size - at);
+                ids[at] = id;
+                size++;
+            }
+        }
+    }
+
+		/*Cursor --> Walks the union of several Postings from the highest id down, each id once*/
+    private static final class Cursor{
+        private final Postings[] lists;
+        private final int[] next; //per list, index of its next id
+        private final PriorityQueue<Integer> byHead; //lists by their next id, highest first
+
+        Cursor(List<Postings> lists){
+            this.lists = lists.toArray(new Postings[0]);
+            this.next = new int[this.lists.length];
+            this.byHead = new PriorityQueue<>(Math.max(1, this.lists.length),
+                    (a, b) -> Long.compare(this.lists[b].ids[next[b]], this.lists[a].ids[next[a]]));
+            for(int i = 0; i < this.lists.length; i++){
+                next[i] = this.lists[i].size - 1;
+                if(next[i] >= 0){
+                    byHead.add(i);
+                }
+            }
+        }
+
+			 /*head() --> The current id -- returns <long>, 0 once exhausted (ids start at 1)*/
+        long head(){
+            Integer list = byHead.peek();
+            return list == null ? 0 : lists[list].ids[next[list]];
+        }
+
+			 /*skipAbove() --> Moves past every id greater than @param bound*/
+        void skipAbove(long bound){
+            while(!byHead.isEmpty() && head() > bound){
+                int list = byHead.poll();
+                if(--next[list] >= 0){
+                    byHead.add(list);
+                }
+            }
+        }
+    }
+
+		/*LocalHistoryStore() --> Constructor, replays the log in @param directory into the index*/
+    LocalHistoryStore(Path directory){
+        this.logFile = directory.resolve(LOG_NAME);
+        try{
+            Files.createDirectories(directory);
+            boolean torn = load();
+            if(torn){
+                compact(); //drops the partial last line a crash can leave, so new lines start clean
+            }
+            this.log = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            System.err.println("LocalHistoryStore::Opened " + logFile + " (" + index.size() + " rows)");
+        } catch(IOException except){
+            System.err.println("LocalHistoryStore::Open-Failed " + except.getMessage());
+        }
+    }
+
+		/*load() --> Replays the log into the index
+		 * -- returns <bool> true if an unreadable line was skipped*/
+    private boolean load() throws IOException{
+        if(!Files.exists(logFile)){
+            return false;
+        }
+        boolean torn = false;
+        int lines = 0;
+        try(BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)){
+            String line;
+            while((line = reader.readLine()) != null){
+                lines++;
+                if(!apply(line)){
+                    torn = true;
+                }
+            }
+        }
+        deadLines = lines - index.size();
+        if(!index.isEmpty()){
+            lastCreated = index.lastKey().created;
+        }
+        return torn;
+    }
+
+    private boolean apply(String line){
+        String[] fields = line.split("\t", -1);
+        try{
+            if(fields.length == 5 && fields[0].equals("A")){
+                long id = Long.parseLong(fields[1]);
+                Timestamp created = new Timestamp(Long.parseLong(fields[2]));
+                index(new HistoryRecord(id, HistoryJournal.unescape(fields[3]), HistoryJournal.unescape(fields[4]), created));
+                nextId = Math.max(nextId, id + 1);
+                return true;
+            }
+            if(fields.length == 2 && fields[0].equals("D")){
+                unindex(Long.parseLong(fields[1]));
+                return true;
+            }
+        } catch(NumberFormatException except){
+            //falls through, torn line
+        }
+        return false;
+    }
+
+    private void index(HistoryRecord record){
+        Key key = new Key(record.getCreated().getTime(), record.getId());
+        index.put(key, record);
+        keysById.put(record.getId(), key);
+        addPostings(record);
+    }
+
+    private void addPostings(HistoryRecord record){
+        for(String word : words(record.getQuestion().toLowerCase(Locale.ROOT))){
+            Postings list = postings.get(word);
+            if(list == null){
+                list = new Postings();
+                postings.put(word, list);
+                vocabulary.add(word);
+            }
+            list.add(record.getId());
+        }
+    }
+
+    private boolean unindex(long id){
+        Key key = keysById.remove(id);
+        return key != null && index.remove(key) != null;
+    }
+
+	 /*isConnected() --> true while the log file is open -- returns <bool>*/
+    @Override
+    public synchronized boolean isConnected(){
+        return log != null;
+    }
+
+	 /*CreateData() --> Stamps one row and queues it for the writer thread
+		* -- returns <void> without waiting for the disk*/
+    @Override
+    public void CreateData(String ImagePath, String Question){
+        HistoryRecord stamped = HistoryRecord.now(ImagePath, Question);
+        try{
+            writer.execute(() -> append(stamped));
+        } catch(RejectedExecutionException except){
+            System.err.println("LocalHistoryStore::Not-Open, dropped " + ImagePath);
+        }
+    }
+
+		/*append() --> Appends one row to the log and the index, on the writer thread
+		 * -- returns <void>*/
+    private void append(HistoryRecord stamped){
+        HistoryRecord record;
+        synchronized(this){
+            if(log == null){
+                System.err.println("LocalHistoryStore::Not-Open, dropped " + stamped.getFilePath());
+                return;
+            }
+            //never older than the previous row, so ids stay in Created order (see Postings)
+            lastCreated = Math.max(lastCreated, stamped.getCreated().getTime());
+            record = new HistoryRecord(nextId++, stamped.getFilePath(), stamped.getQuestion(), new Timestamp(lastCreated));
+            try{
+                log.write("A\t" + record.getId() + "\t" + record.getCreated().getTime() + "\t"
+                        + HistoryJournal.escape(record.getFilePath()) + "\t" + HistoryJournal.escape(record.getQuestion()));
+                log.newLine();
+                log.flush();
+            } catch(IOException except){
+                System.err.println("LocalHistoryStore::Write-Failed " + except.getMessage());
+                return;
+            }
+            index(record);
+        }
+        ROWS_INSERTED.increment();
+
+        Consumer<List<HistoryRecord>> listener = historyListener;
+        if(listener != null){
+            listener.accept(Collections.singletonList(record));
+        }
+    }
+
+    @Override
+    public void setHistoryListener(Consumer<List<HistoryRecord>> listener){
+        this.historyListener = listener;
+    }
+
+    @Override
+    public synchronized List<HistoryRecord> fetchHistoryPage(Timestamp afterCreated, long afterId, int limit){
+        NavigableMap<Key, HistoryRecord> rest = afterCreated == null ? index
+                : index.tailMap(new Key(afterCreated.getTime(), afterId), false);
+        List<HistoryRecord> page = new ArrayList<>(Math.min(limit, rest.size()));
+        for(HistoryRecord record : rest.values()){
+            if(page.size() >= limit){
+                break;
+            }
+            page.add(record);
+        }
+        return page;
+    }
+
+		/*searchHistory() --> Looks the query up in the inverted index
+		 * -- TOKEN: rows containing any query word as a whole word, ranked by how many words match,
+		 *    newest first among equal scores.
+		 * -- PREFIX: every query word must start some word of the row, newest first.
+		 * -- SUBSTRING: the query anywhere in the row, newest first (a scan, no index).
+		 * -- matching is case-insensitive; each search stops once @param offset + @param limit rows are found.
+		 * -- returns <List<HistoryRecord>>*/
+    @Override
+    public List<HistoryRecord> searchHistory(String query, SearchMode mode, int offset, int limit){
+        String text = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if(text.isEmpty() || limit <= 0){
+            return new ArrayList<>();
+        }
+        int from = Math.max(offset, 0);
+        int wanted = (int) Math.min(Integer.MAX_VALUE, (long) from + limit);
+        Set<String> queryWords = new LinkedHashSet<>(Arrays.asList(words(text)));
+        List<HistoryRecord> matches;
+        synchronized(this){
+            if(mode == SearchMode.SUBSTRING || queryWords.isEmpty()){
+                matches = scan(text, wanted);
+            } else if(mode == SearchMode.PREFIX){
+                matches = allPrefixes(queryWords, wanted);
+            } else{
+                matches = anyWord(queryWords, wanted);
+            }
+        }
+        from = Math.min(from, matches.size());
+        return new ArrayList<>(matches.subList(from, Math.min(matches.size(), from + limit)));
+    }
+
+		/*anyWord() --> TOKEN search: merges the query words' lists newest first, counting for each row
+		 * how many of them it contains; stops early once @param wanted rows contain all of them
+		 * -- returns <List<HistoryRecord>> best first*/
+    private List<HistoryRecord> anyWord(Set<String> queryWords, int wanted){
+        List<Cursor> cursors = new ArrayList<>(queryWords.size());
+        for(String queryWord : queryWords){
+            Postings list = postings.get(queryWord);
+            if(list != null){
+                cursors.add(new Cursor(Collections.singletonList(list)));
+            }
+        }
+        List<List<Long>> byScore = new ArrayList<>(); //index = score - 1, each newest first
+        for(int score = 0; score < cursors.size(); score++){
+            byScore.add(new ArrayList<>());
+        }
+        while(!cursors.isEmpty() && byScore.get(cursors.size() - 1).size() < wanted){
+            long id = 0;
+            for(Cursor cursor : cursors){
+                id = Math.max(id, cursor.head());
+            }
+            if(id == 0){
+                break;
+            }
+            int score = 0;
+            for(Cursor cursor : cursors){
+                if(cursor.head() == id){
+                    score++;
+                    cursor.skipAbove(id - 1);
+                }
+            }
+            List<Long> ids = byScore.get(score - 1);
+            if(ids.size() < wanted && keysById.containsKey(id)){
+                ids.add(id);
+            }
+        }
+
+        List<HistoryRecord> matches = new ArrayList<>(wanted);
+        for(int score = byScore.size() - 1; score >= 0 && matches.size() < wanted; score--){
+            for(long id : byScore.get(score)){
+                if(matches.size() >= wanted){
+                    break;
+                }
+                matches.add(index.get(keysById.get(id)));
+            }
+        }
+        return matches;
+    }
+
+		/*allPrefixes() --> PREFIX search: walks, newest first, the rows found under every query word's
+		 * prefix range of the inverted index, stopping after @param wanted of them
+		 * -- returns <List<HistoryRecord>>*/
+    private List<HistoryRecord> allPrefixes(Set<String> queryWords, int wanted){
+        List<Cursor> cursors = new ArrayList<>(queryWords.size());
+        for(String queryWord : queryWords){
+            List<Postings> lists = new ArrayList<>();
+            for(String word : vocabulary.subSet(queryWord, true, queryWord + Character.MAX_VALUE, false)){
+                lists.add(postings.get(word));
+            }
+            cursors.add(new Cursor(lists));
+        }
+        List<HistoryRecord> matches = new ArrayList<>(Math.min(wanted, 1024));
+        while(matches.size() < wanted){
+            long target = Long.MAX_VALUE; //the lowest head: no row above it can be in every list
+            for(Cursor cursor : cursors){
+                target = Math.min(target, cursor.head());
+            }
+            if(target == 0){
+                break;
+            }
+            boolean everywhere = true;
+            for(Cursor cursor : cursors){
+                cursor.skipAbove(target);
+                everywhere &= cursor.head() == target;
+            }
+            if(everywhere){
+                Key key = keysById.get(target);
+                if(key != null){
+                    matches.add(index.get(key));
+                }
+                for(Cursor cursor : cursors){
+                    cursor.skipAbove(target - 1);
+                }
+            }
+        }
+        return matches;
+    }
+
+		/*scan() --> SUBSTRING search, newest first, stopping after @param wanted matches
+		 * -- returns <List<HistoryRecord>>*/
+    private List<HistoryRecord> scan(String text, int wanted){
+        List<HistoryRecord> matches = new ArrayList<>(Math.min(wanted, 1024));
+        for(HistoryRecord record : index.descendingMap().values()){
+            if(matches.size() >= wanted){
+                break;
+            }
+            if(record.getQuestion().toLowerCase(Locale.ROOT).contains(text)){
+                matches.add(record);
+            }
+        }
+        return matches;
+    }
+
+		/*words() --> Splits @param text into runs of letters, digits and '_' (the regex [\\p{L}\\p{N}_]+,
+		 * by hand because it runs for every row on open)
+		 * -- returns <String[]>*/
+    private static String[] words(String text){
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for(int i = 0; i < text.length(); ){
+            int codePoint = text.codePointAt(i);
+            boolean wordChar = Character.isLetter(codePoint) || codePoint == '_' || isNumber(codePoint);
+            if(wordChar && start < 0){
+                start = i;
+            } else if(!wordChar && start >= 0){
+                words.add(text.substring(start, i));
+                start = -1;
+            }
+            i += Character.charCount(codePoint);
+        }
+        if(start >= 0){
+            words.add(text.substring(start));
+        }
+        return words.toArray(new String[0]);
+    }
+
+    private static boolean isNumber(int codePoint){
+        int type = Character.getType(codePoint);
+        return type == Character.DECIMAL_DIGIT_NUMBER || type == Character.LETTER_NUMBER || type == Character.OTHER_NUMBER;
+    }
+
+		/*Delete() --> Deletes rows more than @param days old
+		 * -- return <int> >> 'Number Of Rows Deleted'*/
+    @Override
+    public int Delete(int days){
+        Timestamp limit = Timestamp.valueOf(LocalDateTime.now().minusDays(days));
+        int rowsDeleted = 0;
+        try{
+            int chunk;
+            do{
+                chunk = deleteHistoryChunk(limit, RetentionJob.DEFAULT_CHUNK_SIZE);
+                rowsDeleted += chunk;
+            } while(chunk > 0);
+        } catch(SQLException except){
+            System.out.println(except.getMessage());
+        }
+        return rowsDeleted;
+    }
+
+    @Override
+    public synchronized int deleteHistoryChunk(Timestamp limit, int chunkSize) throws SQLException{
+        if(log == null){
+            throw new SQLException("LocalHistoryStore::Not-Open", "08003");
+        }
+        List<Long> ids = new ArrayList<>(chunkSize);
+        for(Key key : index.headMap(new Key(limit.getTime(), Long.MIN_VALUE), false).keySet()){
+            if(ids.size() >= chunkSize){
+                break;
+            }
+            ids.add(key.id);
+        }
+        if(ids.isEmpty()){
+            return 0;
+        }
+        try{
+            for(long id : ids){
+                log.write("D\t" + id);
+                log.newLine();
+            }
+            log.flush();
+        } catch(IOException except){
+            throw new SQLException("LocalHistoryStore::Delete-Failed " + except.getMessage(), except);
+        }
+        for(long id : ids){
+            unindex(id);
+        }
+        deadLines += 2 * ids.size(); //the add line and the delete line
+        if(deadLines >= COMPACT_MIN_DEAD && deadLines > index.size()){
+            try{
+                log.close();
+                compact();
+            } catch(IOException except){
+                System.err.println("LocalHistoryStore::Compact-Failed " + except.getMessage());
+            } finally{
+                try{
+                    log = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                } catch(IOException except){
+                    log = null;
+                    System.err.println("LocalHistoryStore::Reopen-Failed " + except.getMessage());
+                }
+            }
+        }
+        return ids.size();
+    }
+
+		/*compact() --> Rewrites the log with only the live rows, oldest first, then swaps it in*/
+    private void compact() throws IOException{
+        Path tmp = logFile.resolveSibling(LOG_NAME + ".tmp");
+        try(BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)){
+            for(HistoryRecord record : index.values()){
+                writer.write("A\t" + record.getId() + "\t" + record.getCreated().getTime() + "\t"
+                        + HistoryJournal.escape(record.getFilePath()) + "\t" + HistoryJournal.escape(record.getQuestion()));
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deadLines = 0;
+        postings.clear(); //drops the deleted rows' ids too
+        vocabulary.clear();
+        for(HistoryRecord record : index.values()){
+            addPostings(record);
+        }
+        System.err.println("LocalHistoryStore::Compacted " + index.size() + " rows");
+    }
+
+		/*close() --> Writes the queued rows, then flushes and closes the log -- returns <void>*/
+    @Override
+    public void close(){
+        writer.shutdown();
+        try{
+            if(!writer.awaitTermination(10, TimeUnit.SECONDS)){
+                System.err.println("LocalHistoryStore::Close-Timeout, queued rows may be lost");
+            }
+        } catch(InterruptedException except){
+            Thread.currentThread().interrupt();
+        }
+        synchronized(this){
+            if(log == null){
+                return;
+            }
+            try{
+                log.close();
+            } catch(IOException except){
+                System.err.println(except.getMessage());
+            }
+            log = null;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters and latency timers for the hot paths: OCR, history store operations,
+ * expression compilation and evaluation, and chart building.
+ * <p>
+ * Timers keep a log-linear histogram (four buckets per power of two; a percentile is reported as
+ * the upper end of its bucket, at most 25% high) in lock-free counters; recording is a few atomic
+ * adds and never allocates. Metrics are
+ * published as JMX MXBeans under {@code mathematica:type=Timer|Counter,name=...} and, when
+ * {@code -Dmathematica.metrics.file=<path>} is set, written to that file every
+ * {@code mathematica.metrics.period} seconds (default 60) and at exit.
+ * <p>
+ * {@code -Dmathematica.metrics=false} turns everything off: {@link Timer#start()} then doesn't
+ * even read the clock, and the JIT folds the disabled checks away.
+ * <p>
+ * Usage:
+ * <pre>
+ * private static final Metrics.Timer PARSE = Metrics.timer("expr.compile");
+ * long start = PARSE.start();
+ * try { ... } finally { PARSE.stop(start); }
+ * </pre>
+ */
+public final class Metrics {
+
+    /** Whether metrics are collected at all. */
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("mathematica.metrics", "true"));
+
+    private static final String SNAPSHOT_FILE = System.getProperty("mathematica.metrics.file");
+    private static final long SNAPSHOT_PERIOD_SECONDS = Long.getLong("mathematica.metrics.period", 60);
+
+    private static final Map<String, Timer> TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+    static {
+        if (ENABLED && SNAPSHOT_FILE != null) {
+            ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+            writer.scheduleAtFixedRate(Metrics::writeSnapshot, SNAPSHOT_PERIOD_SECONDS, SNAPSHOT_PERIOD_SECONDS, TimeUnit.SECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(Metrics::writeSnapshot, "metrics-final-snapshot"));
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * @param name Dotted name, e.g. {@code "db.search"}.
+     * @return The timer of that name, created on first use. Keep it in a static field.
+     */
+    public static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, key -> register(new Timer(key), "Timer", key));
+    }
+
+    /**
+     * @param name Dotted name, e.g. {@code "ocr.cache.hits"}.
+     * @return The counter of that name, created on first use. Keep it in a static field.
+     */
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, key -> register(new Counter(key), "Counter", key));
+    }
+
+    private static <T> T register(T metric, String type, String name) {
+        if (ENABLED) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.registerMBean(metric, new ObjectName("mathematica:type=" + type + ",name=" + ObjectName.quote(name)));
+            } catch (Exception e) {
+                System.err.println("Metrics::JMX-Failed " + name + ": " + e.getMessage()); // Still counted, just not exported
+            }
+        }
+        return metric;
+    }
+
+    /** JMX view of a {@link Timer}; times in milliseconds. */
+    public interface TimerMXBean {
+        long getCount();
+        double getTotalMillis();
+        double getMeanMillis();
+        double getP50Millis();
+        double getP95Millis();
+        double getP99Millis();
+        double getMaxMillis();
+    }
+
+    /** JMX view of a {@link Counter}. */
+    public interface CounterMXBean {
+        long getCount();
+    }
+
+    /**
+     * Latency histogram of one operation.
+     */
+    public static final class Timer implements TimerMXBean {
+        private static final int SUB_BUCKET_BITS = 2;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+        private final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        /** @return A start time for {@link #stop(long)}; 0 when metrics are off. */
+        public long start() {
+            return ENABLED ? System.nanoTime() : 0;
+        }
+
+        /** Records the time since {@code start}, which came from {@link #start()}. */
+        public void stop(long start) {
+            if (ENABLED) {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        /** Records one duration, in nanoseconds. */
+        public void record(long nanos) {
+            if (!ENABLED) {
+                return;
+            }
+            long value = Math.max(0, nanos);
+            buckets.incrementAndGet(bucketOf(value));
+            count.increment();
+            totalNanos.add(value);
+            maxNanos.accumulate(value);
+        }
+
+        /** Values below 4 get a bucket each, above that four buckets per power of two. */
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int msb = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (msb - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        /** Largest value that falls into a bucket. */
+        static long upperBoundOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int msb = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            int sub = bucket % SUB_BUCKETS;
+            long lower = (long) (SUB_BUCKETS | sub) << (msb - SUB_BUCKET_BITS);
+            return lower + (1L << (msb - SUB_BUCKET_BITS)) - 1;
+        }
+
+        /**
+         * @param quantile Between 0 and 1.
+         * @return The value at that quantile in nanoseconds (the upper end of its bucket, capped at
+         *         the maximum seen), 0 if nothing was recorded.
+         */
+        public long percentileNanos(double quantile) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), maxNanos.get());
+                }
+            }
+            return maxNanos.get();
+        }
+
+        public String getName() { return name; }
+
+        @Override public long getCount() { return count.sum(); }
+
+        @Override public double getTotalMillis() { return totalNanos.sum() / 1e6; }
+
+        @Override
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : totalNanos.sum() / 1e6 / n;
+        }
+
+        @Override public double getP50Millis() { return percentileNanos(0.50) / 1e6; }
+
+        @Override public double getP95Millis() { return percentileNanos(0.95) / 1e6; }
+
+        @Override public double getP99Millis() { return percentileNanos(0.99) / 1e6; }
+
+        @Override public double getMaxMillis() { return maxNanos.get() / 1e6; }
+    }
+
+    /**
+     * A count of events (or of items, e.g. rows written).
+     */
+    public static final class Counter implements CounterMXBean {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            if (ENABLED) {
+                count.increment();
+            }
+        }
+
+        public void add(long amount) {
+            if (ENABLED) {
+                count.add(amount);
+            }
+        }
+
+        public String getName() { return name; }
+
+        @Override public long getCount() { return count.sum(); }
+    }
+
+    /**
+     * @return Every metric, one per line and sorted by name, e.g.
+     *         {@code db.search count=12 mean=3.10ms p50=2.62ms p95=7.86ms p99=7.86ms max=7.90ms}.
+     */
+    public static String snapshot() {
+        StringBuilder text = new StringBuilder();
+        for (Timer timer : new TreeMap<>(TIMERS).values()) {
+            text.append(String.format("%s count=%d mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms%n",
+                    timer.getName(), timer.getCount(), timer.getMeanMillis(), timer.getP50Millis(),
+                    timer.getP95Millis(), timer.getP99Millis(), timer.getMaxMillis()));
+        }
+        for (Counter counter : new TreeMap<>(COUNTERS).values()) {
+            text.append(counter.getName()).append(" count=").append(counter.getCount()).append(System.lineSeparator());
+        }
+        return text.toString();
+    }
+
+    /** Replaces the snapshot file, through a temporary file so readers never see half of it. */
+    private static void writeSnapshot() {
+        Path file = Paths.get(SNAPSHOT_FILE).toAbsolutePath();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write("# " + Instant.now() + System.lineSeparator());
+                writer.write(snapshot());
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Metrics::Snapshot-Failed " + e.getMessage()); // Keep the periodic task alive
+        }
+    }
+}
@@ -0,0 +1,226 @@
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.data.Range;
+
+import javax.swing.SwingUtilities;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.util.Arrays;
+
+/**
+ * Shows a reduced copy of a chart's dataset, so drawing costs scale with the width of the plot
+ * rather than with the number of samples.
+ * <p>
+ * The visible x range is cut into one column per pixel, and of the points in each column only the
+ * first, the lowest, the highest and the last are kept (in x order). That draws the same picture as
+ * the full data: the line enters and leaves each column at the same place and still spans its full
+ * height, so narrow spikes survive. Everything left of the view is one more column, as is everything
+ * to the right, which keeps the lines running off the edges and the y bounds of the data intact.
+ * NaN breaks are always kept.
+ * <p>
+ * The reduced dataset is recomputed when the domain axis changes, when the panel is resized and
+ * when a new full dataset is set. Runs on the EDT.
+ */
+public class MinMaxDecimator {
+
+    private static final int FALLBACK_PIXELS = 800; // Until the panel has been laid out
+    private static final int POINTS_PER_COLUMN = 4;
+    private static final Metrics.Timer DECIMATE_TIMER = Metrics.timer("plot.decimate");
+
+    private final ChartPanel chartPanel;
+    private final XYPlot plot;
+    private final ValueAxis domainAxis;
+    private ArrayXYDataset source;
+
+    // What the plot currently shows was decimated from these; unchanged inputs need no new pass.
+    private ArrayXYDataset shownSource;
+    private Range shownView;
+    private int shownColumns;
+    private boolean scheduled;
+
+    /**
+     * Attaches to a chart and replaces its dataset with a decimated view of {@code source}.
+     *
+     * @param chartPanel The panel showing the chart, used for its width in pixels.
+     * @param source     The full data.
+     */
+    public MinMaxDecimator(ChartPanel chartPanel, ArrayXYDataset source) {
+        this.chartPanel = chartPanel;
+        this.plot = chartPanel.getChart().getXYPlot();
+        this.domainAxis = plot.getDomainAxis();
+        this.source = source;
+
+        // Several changes often arrive together (a zoom sets the range and fires again for the
+        // tick units); one pass after the burst is enough.
+        domainAxis.addChangeListener(event -> schedule());
+        chartPanel.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                schedule();
+            }
+        });
+        update();
+    }
+
+    /** @return The full data behind the chart. */
+    public ArrayXYDataset getSource() {
+        return source;
+    }
+
+    /**
+     * Replaces the full data and shows its decimated view.
+     *
+     * @param source The new data.
+     */
+    public void setSource(ArrayXYDataset source) {
+        this.source = source;
+        update();
+    }
+
+    private void schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            SwingUtilities.invokeLater(() -> {
+                scheduled = false;
+                update();
+            });
+        }
+    }
+
+    private void update() {
+        Range view = domainAxis.getRange();
+        int columns = columns();
+        if (source == shownSource && view.equals(shownView) && columns == shownColumns) {
+            return; // Setting the dataset fires axis changes of its own; don't loop on them
+        }
+        shownSource = source;
+        shownView = view;
+        shownColumns = columns;
+        long start = DECIMATE_TIMER.start();
+        ArrayXYDataset decimated = decimate(source, view.getLowerBound(), view.getUpperBound(), columns);
+        DECIMATE_TIMER.stop(start);
+        plot.setDataset(decimated);
+    }
+
+    /** Width of the plot area in pixels, or an estimate before the chart has been drawn. */
+    private int columns() {
+        double width = chartPanel.getScreenDataArea().getWidth();
+        if (width < 1) {
+            width = chartPanel.getWidth() > 0 ? chartPanel.getWidth() : FALLBACK_PIXELS;
+        }
+        return (int) Math.ceil(width);
+    }
+
+    /**
+     * Keeps the first, lowest, highest and last point of each of {@code columns} equal columns of
+     * [from, to], plus one column each for the points left and right of it, and every NaN break.
+     * Series too small to benefit are passed through as they are.
+     *
+     * @return The reduced dataset; {@code source} itself if no series needed reducing.
+     */
+    static ArrayXYDataset decimate(ArrayXYDataset source, double from, double to, int columns) {
+        int threshold = POINTS_PER_COLUMN * (columns + 2);
+        boolean reduced = false;
+        ArrayXYDataset.Builder builder = new ArrayXYDataset.Builder();
+        for (int s = 0; s < source.getSeriesCount(); s++) {
+            double[] xs = source.getXs(s);
+            double[] ys = source.getYs(s);
+            if (xs.length <= threshold) {
+                builder.addSeries(source.getSeriesKey(s), xs, ys);
+            } else {
+                Column column = new Column(xs, ys, Math.min(xs.length, threshold));
+                double width = (to - from) / columns;
+                for (int i = 0; i < xs.length; i++) {
+                    double x = xs[i];
+                    if (Double.isNaN(ys[i])) {
+                        column.addBreak(i);
+                    } else if (x < from) {
+                        column.add(i, -1);
+                    } else if (x >= to) {
+                        column.add(i, columns);
+                    } else {
+                        column.add(i, Math.min(columns - 1, (int) ((x - from) / width)));
+                    }
+                }
+                column.flush();
+                builder.addSeries(source.getSeriesKey(s), Arrays.copyOf(column.outX, column.count), Arrays.copyOf(column.outY, column.count));
+                reduced = true;
+            }
+        }
+        return reduced ? builder.build() : source;
+    }
+
+    /** The column being scanned and the output so far, for one series. */
+    private static final class Column {
+        private static final long NONE = Long.MIN_VALUE;
+
+        final double[] xs;
+        final double[] ys;
+        double[] outX;
+        double[] outY;
+        int count;
+
+        long index = NONE; // Column of the current run of points; NONE after a break
+        int first, last, min, max;
+        final int[] picked = new int[POINTS_PER_COLUMN];
+
+        Column(double[] xs, double[] ys, int capacity) {
+            this.xs = xs;
+            this.ys = ys;
+            this.outX = new double[capacity];
+            this.outY = new double[capacity];
+        }
+
+        void add(int i, long column) {
+            if (column != index) {
+                flush();
+                index = column;
+                first = last = min = max = i;
+                return;
+            }
+            last = i;
+            if (ys[i] < ys[min]) {
+                min = i;
+            }
+            if (ys[i] > ys[max]) {
+                max = i;
+            }
+        }
+
+        void addBreak(int i) {
+            flush();
+            index = NONE;
+            if (count == 0 || !Double.isNaN(outY[count - 1])) {
+                emit(i);
+            }
+        }
+
+        /** Emits the current column's points in x order, each once. */
+        void flush() {
+            if (index == NONE) {
+                return;
+            }
+            picked[0] = first;
+            picked[1] = min;
+            picked[2] = max;
+            picked[3] = last;
+            Arrays.sort(picked);
+            for (int k = 0; k < picked.length; k++) {
+                if (k == 0 || picked[k] != picked[k - 1]) {
+                    emit(picked[k]);
+                }
+            }
+            index = NONE;
+        }
+
+        private void emit(int i) {
+            if (count == outX.length) {
+                outX = Arrays.copyOf(outX, count * 2);
+                outY = Arrays.copyOf(outY, count * 2);
+            }
+            outX[count] = xs[i];
+            outY[count++] = ys[i];
+        }
+    }
+}
@@ -0,0 +1,328 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*OcrCache --> Cache of OCR results keyed on image content + OCR configuration.
+ * -- tier 1: in-memory LRU (getMemoryCapacity() entries).
+ * -- tier 2: one text file per key under ~/.mathematica/ocr-cache, at most getMaxDiskBytes() of text
+ *    (-Dmathematica.ocr.cacheBytes=<n>, 64 MB by default). A hit touches the file's timestamp, and once
+ *    the tier is over its limit the least recently used files are deleted down to 90% of it.
+ * -- keys are SHA-256(image bytes) + ':' + TesseractPool.configFingerprint() (+ variant), so changing the
+ *    tessdata or language setting never returns stale text; invalidateAll() drops both tiers.
+ * -- keyFor() re-takes the fingerprint (a few file stats + a digest of a short string, cheap next to
+ *    hashing the image) and drops both tiers when it changed, e.g. traineddata replaced while running.*/
+
+public class OcrCache{
+    private static final int DEFAULT_MEMORY_CAPACITY = 256;
+    private static final long DEFAULT_MAX_DISK_BYTES = Long.getLong("mathematica.ocr.cacheBytes", 64L * 1024 * 1024);
+    private static final String CONFIG_FILE = "config.fingerprint"; //fingerprint the disk tier was written with
+    private static final String ENTRY_SUFFIX = ".txt";
+
+    private static volatile OcrCache sharedCache;
+
+    private final int memoryCapacity;
+    private final Path directory; //persistent tier, null if it could not be created
+    private final Map<String, String> memory; //access-ordered, guarded by 'this'
+    private final long maxDiskBytes;
+    private final AtomicLong diskBytes = new AtomicLong(); //size of the disk tier's entries, recounted by evict()
+    private final Object evictLock = new Object();
+    private final Object refreshLock = new Object();
+    private volatile String fingerprint; //TesseractPool.configFingerprint() as of opening / the last invalidateAll()
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+		/*shared() --> Process-wide cache stored in the user's home directory
+		 * -- returns <OcrCache>*/
+    public static OcrCache shared(){
+        OcrCache cache = sharedCache;
+        if(cache == null){
+            synchronized(OcrCache.class){
+                cache = sharedCache;
+                if(cache == null){
+                    Path dir = Paths.get(System.getProperty("user.home"), ".mathematica", "ocr-cache");
+                    cache = new OcrCache(dir, DEFAULT_MEMORY_CAPACITY);
+                    sharedCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+		/*OcrCache() --> Constructor, opens (or creates) the persistent tier in @param directory*/
+    OcrCache(Path directory, int memoryCapacity){
+        this(directory, memoryCapacity, DEFAULT_MAX_DISK_BYTES);
+    }
+
+    OcrCache(Path directory, int memoryCapacity, long maxDiskBytes){
+        this.memoryCapacity = memoryCapacity;
+        this.maxDiskBytes = maxDiskBytes;
+        this.fingerprint = TesseractPool.configFingerprint();
+        this.memory = new LinkedHashMap<String, String>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest){
+                return size() > OcrCache.this.memoryCapacity;
+            }
+        };
+
+        Path dir = directory;
+        try{
+            Files.createDirectories(dir);
+            checkConfiguration(dir);
+            diskBytes.set(totalSize(entries(dir)));
+        } catch(IOException except){
+            System.err.println("OcrCache::Disk-Tier-Disabled " + except.getMessage());
+            dir = null;
+        }
+        this.directory = dir;
+        if(dir != null && diskBytes.get() > maxDiskBytes){
+            evict(); //limit lowered since the last run
+        }
+    }
+
+		/*keyFor() --> Builds the cache key for an image file under the current OCR configuration
+		 * -- @param variant distinguishes results produced from the same file in different ways
+		 *    (e.g. the preprocessing setup), may be empty.
+		 * -- returns <String>, null if the image cannot be read*/
+    public String keyFor(File imageFile, String variant){
+        try(InputStream in = Files.newInputStream(imageFile.toPath())){
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while((read = in.read(buffer)) != -1){
+                digest.update(buffer, 0, read);
+            }
+            String key = toHex(digest.digest()) + ":" + currentFingerprint();
+            if(variant != null && !variant.isEmpty()){
+                key += ":" + Integer.toHexString(variant.hashCode());
+            }
+            return key;
+        } catch(IOException | NoSuchAlgorithmException except){
+            System.err.println(except.getMessage());
+            return null;
+        }
+    }
+
+		/*currentFingerprint() --> The configuration fingerprint, first invalidating the cache if the
+		 * traineddata or settings changed since it was last taken
+		 * -- returns <String>*/
+    private String currentFingerprint(){
+        String current = TesseractPool.configFingerprint();
+        if(!current.equals(fingerprint)){
+            synchronized(refreshLock){
+                if(!current.equals(fingerprint)){ //another lookup may have refreshed it already
+                    System.err.println("OcrCache::Configuration-Changed");
+                    invalidateAll();
+                }
+            }
+        }
+        return fingerprint;
+    }
+
+		/*get() --> Looks up a key, memory tier first, then disk (promoting disk hits to memory)
+		 * -- returns <String> cached text, or null on a miss*/
+    public String get(String key){
+        if(key == null){
+            return null;
+        }
+        String text;
+        synchronized(this){
+            text = memory.get(key);
+        }
+        if(text != null){
+            memoryHits.incrementAndGet();
+            return text;
+        }
+
+        if(directory != null){
+            Path file = fileFor(key);
+            try{
+                if(Files.exists(file)){
+                    text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                    synchronized(this){
+                        memory.put(key, text);
+                    }
+                    touch(file);
+                    diskHits.incrementAndGet();
+                    return text;
+                }
+            } catch(IOException except){
+                System.err.println(except.getMessage());
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+		/*put() --> Stores extracted text in both tiers
+		 * -- returns <void>*/
+    public void put(String key, String text){
+        if(key == null || text == null){
+            return;
+        }
+        synchronized(this){
+            memory.put(key, text);
+        }
+        if(directory != null){
+            try{
+                //write-then-rename so a concurrent reader never sees a half written entry
+                Path file = fileFor(key);
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                long replaced = Files.exists(file) ? Files.size(file) : 0;
+                Path tmp = Files.createTempFile(directory, "entry", ".tmp");
+                Files.write(tmp, bytes);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                if(diskBytes.addAndGet(bytes.length - replaced) > maxDiskBytes){
+                    evict();
+                }
+            } catch(IOException except){
+                System.err.println(except.getMessage());
+            }
+        }
+    }
+
+		/*evict() --> Deletes the least recently used disk entries (oldest timestamp first) until the tier
+		 * is back under 90% of its limit, so the next few puts don't evict again.
+		 * -- recounts the tier from the directory, correcting any drift in diskBytes from concurrent puts.
+		 * -- returns <void>*/
+    private void evict(){
+        synchronized(evictLock){
+            File[] entries = entries(directory);
+            long total = totalSize(entries);
+            long target = maxDiskBytes / 10 * 9;
+            if(total > maxDiskBytes){
+                Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+                int evicted = 0;
+                for(File entry : entries){
+                    if(total <= target){
+                        break;
+                    }
+                    long size = entry.length();
+                    if(entry.delete()){
+                        total -= size;
+                        evicted++;
+                    }
+                }
+                System.err.println("OcrCache::Evicted " + evicted);
+            }
+            diskBytes.set(total);
+        }
+    }
+
+		/*invalidateAll() --> Drops every entry from both tiers, e.g. after tessdata or the language changed
+		 * -- returns <void>*/
+    public void invalidateAll(){
+        fingerprint = TesseractPool.configFingerprint(); //picks up new traineddata or settings
+        synchronized(this){
+            memory.clear();
+        }
+        if(directory != null){
+            try{
+                clearDirectory(directory);
+                diskBytes.set(0);
+                writeConfiguration(directory);
+            } catch(IOException except){
+                System.err.println(except.getMessage());
+            }
+        }
+    }
+
+    public long getMemoryHits(){ return memoryHits.get(); }
+    public long getDiskHits(){ return diskHits.get(); }
+    public long getHits(){ return memoryHits.get() + diskHits.get(); }
+    public long getMisses(){ return misses.get(); }
+    public int getMemoryCapacity(){ return memoryCapacity; }
+    public long getMaxDiskBytes(){ return maxDiskBytes; }
+    public long getDiskBytes(){ return diskBytes.get(); }
+
+		/*getHitRatio() --> Fraction of lookups answered from either tier
+		 * -- returns <double> in [0, 1]*/
+    public double getHitRatio(){
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("OcrCache[memoryHits=%d, diskHits=%d, misses=%d, hitRatio=%.2f]",
+                getMemoryHits(), getDiskHits(), getMisses(), getHitRatio());
+    }
+
+		/*checkConfiguration() --> Purges the disk tier if it was written under a different OCR configuration*/
+    private void checkConfiguration(Path dir) throws IOException{
+        Path config = dir.resolve(CONFIG_FILE);
+        String current = fingerprint;
+        String stored = Files.exists(config) ? new String(Files.readAllBytes(config), StandardCharsets.UTF_8).trim() : "";
+        if(!current.equals(stored)){
+            clearDirectory(dir);
+            writeConfiguration(dir);
+        }
+    }
+
+    private void writeConfiguration(Path dir) throws IOException{
+        Files.write(dir.resolve(CONFIG_FILE), fingerprint.getBytes(StandardCharsets.UTF_8));
+    }
+
+		/*touch() --> Marks a disk entry as recently used, so evict() deletes it last*/
+    private static void touch(Path file){
+        try{
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch(IOException except){
+            //evicted meanwhile, the text is already in the memory tier
+        }
+    }
+
+		/*entries() --> The disk tier's entry files (not the fingerprint or temporary files)
+		 * -- returns <File[]>, empty if the directory can't be listed*/
+    private static File[] entries(Path dir){
+        File[] entries = dir.toFile().listFiles((parent, name) -> name.endsWith(ENTRY_SUFFIX));
+        return entries == null ? new File[0] : entries;
+    }
+
+    private static long totalSize(File[] entries){
+        long total = 0;
+        for(File entry : entries){
+            total += entry.length();
+        }
+        return total;
+    }
+
+    private static void clearDirectory(Path dir) throws IOException{
+        File[] entries = dir.toFile().listFiles();
+        if(entries == null){
+            return;
+        }
+        for(File entry : entries){
+            if(entry.isFile()){
+                Files.deleteIfExists(entry.toPath());
+            }
+        }
+    }
+
+    private Path fileFor(String key){
+        return directory.resolve(key.replace(':', '_') + ENTRY_SUFFIX);
+    }
+
+    static String toHex(byte[] bytes){
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes){
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,178 @@
+import javax.swing.SwingUtilities;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background OCR executor used by the Window so that text extraction never runs on the
+ * Event Dispatch Thread. Jobs are queued on a bounded queue; when the queue is full new
+ * submissions are rejected instead of piling up behind a slow scan.
+ * All listener callbacks are delivered on the EDT, so listeners may touch Swing components directly.
+ */
+public class OcrPipeline {
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 8; // Maximum number of images waiting for a worker
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Receives progress and results for a single OCR job. Every method is invoked on the EDT.
+     */
+    public interface Listener {
+        /** Called when the job changes stage (queued, extracting, ...). */
+        void onProgress(OcrJob job, String message);
+
+        /**
+         * Called once when the job completes successfully.
+         *
+         * @param extractedText The whole page text, regions joined in reading order.
+         * @param candidates    The text of each line/equation region, as separate candidate expressions.
+         */
+        void onResult(OcrJob job, String extractedText, List<String> candidates);
+
+        /** Called once if the job fails with an unexpected error. */
+        void onFailure(OcrJob job, Exception error);
+    }
+
+    /**
+     * Handle for a submitted OCR job. It can be used to cancel the job while it is
+     * still queued or running; a cancelled job never delivers a result.
+     */
+    public static class OcrJob {
+        private final String imagePath;
+        private volatile Future<?> future;
+        private volatile boolean cancelled;
+
+        OcrJob(String imagePath) {
+            this.imagePath = imagePath;
+        }
+
+        public String getImagePath() { return imagePath; } // Absolute path of the image being processed
+
+        public String getFileName() { return new File(imagePath).getName(); } // Short name for status messages
+
+        /**
+         * Cancels the job. A queued job is removed before it starts; a running job is interrupted
+         * and its result is discarded.
+         *
+         * @return true if the job had not already finished or been cancelled.
+         */
+        public boolean cancel() {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            Future<?> f = future;
+            return f == null || f.cancel(true);
+        }
+
+        public boolean isCancelled() { return cancelled; }
+
+        public boolean isDone() {
+            Future<?> f = future;
+            return cancelled || (f != null && f.isDone());
+        }
+    }
+
+    /**
+     * Creates a pipeline with the given number of worker threads and the default queue capacity.
+     *
+     * @param workers Number of images that may be recognised concurrently.
+     */
+    public OcrPipeline(int workers) {
+        this(workers, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a pipeline with the given number of worker threads and queue capacity.
+     *
+     * @param workers       Number of images that may be recognised concurrently.
+     * @param queueCapacity Number of images that may wait for a free worker before submissions are rejected.
+     */
+    public OcrPipeline(int workers, int queueCapacity) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, "ocr-worker-" + threadIndex.incrementAndGet());
+            t.setDaemon(true); // Never keep the JVM alive just for OCR
+            return t;
+        };
+        this.executor = new ThreadPoolExecutor(workers, workers, 30L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true); // Idle workers are released between uploads
+    }
+
+    /**
+     * Queues an image for text extraction.
+     *
+     * @param imagePath Absolute path of the image to recognise.
+     * @param listener  Receives progress and the result on the EDT.
+     * @return The job handle, or null if the queue is full and the job was rejected.
+     */
+    public OcrJob submit(String imagePath, Listener listener) {
+        OcrJob job = new OcrJob(imagePath);
+        try {
+            job.future = executor.submit(() -> runJob(job, listener));
+        } catch (RejectedExecutionException except) {
+            return null;
+        }
+        publishProgress(job, listener, "Queued " + job.getFileName() + " for text extraction...");
+        return job;
+    }
+
+    /**
+     * Runs a single job on a worker thread and hands the outcome back to the EDT.
+     */
+    private void runJob(OcrJob job, Listener listener) {
+        if (job.isCancelled()) {
+            return;
+        }
+        publishProgress(job, listener, "Extracting text from " + job.getFileName() + "...");
+        try {
+            // A fresh TextExtract per job keeps its result fields confined to this worker thread.
+            TextExtract extractor = new TextExtract();
+            List<String> candidates = extractor.performRegions(job.getImagePath());
+            String extractedText = extractor.getExtractedText();
+            if (job.isCancelled() || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (!job.isCancelled()) {
+                    listener.onResult(job, extractedText, candidates);
+                }
+            });
+        } catch (Exception except) {
+            if (!job.isCancelled()) {
+                SwingUtilities.invokeLater(() -> listener.onFailure(job, except));
+            }
+        }
+    }
+
+    private void publishProgress(OcrJob job, Listener listener, String message) {
+        SwingUtilities.invokeLater(() -> {
+            if (!job.isCancelled()) {
+                listener.onProgress(job, message);
+            }
+        });
+    }
+
+    /**
+     * @return The number of jobs that are queued or currently running.
+     */
+    public int getPendingCount() {
+        return executor.getQueue().size() + executor.getActiveCount();
+    }
+
+    /**
+     * Stops accepting jobs and interrupts any that are still running.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Samples several curves at once on a fork-join pool, for overlaid plots and for re-sampling every
+ * curve of a chart after a zoom.
+ * <p>
+ * Each request is split into x-range chunks that are sampled independently with
+ * {@link AdaptiveSampler} and stitched back together, so one expensive curve also spreads over
+ * the cores. Every chunk creates its own evaluator on the worker thread that runs it: interpreted
+ * evaluators carry a mutable operand stack and must not be shared.
+ */
+public final class ParallelSampler {
+
+    private static final int MIN_CHUNK_BUDGET = 512; // Below this a chunk spends most of its budget on the uniform pass
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("plot-sampler-" + thread.getPoolIndex());
+        return thread;
+    }, null, false);
+
+    private ParallelSampler() {
+    }
+
+    /**
+     * One curve to sample over [from, to].
+     */
+    public static final class Request {
+        final CompiledExpression expression;
+        final double from;
+        final double to;
+        final int budget;
+
+        /**
+         * @param expression The curve.
+         * @param from       Left end of the interval.
+         * @param to         Right end of the interval.
+         * @param budget     Evaluations for the whole interval.
+         */
+        public Request(CompiledExpression expression, double from, double to, int budget) {
+            this.expression = expression;
+            this.from = from;
+            this.to = to;
+            this.budget = budget;
+        }
+    }
+
+    /**
+     * Samples every request in parallel and waits for all of them.
+     *
+     * @param requests The curves and intervals to sample.
+     * @return One result per request, in the same order.
+     */
+    public static List<AdaptiveSampler.Samples> sampleAll(List<Request> requests) {
+        List<CurveTask> tasks = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            tasks.add(new CurveTask(request));
+        }
+        return POOL.invoke(new RecursiveTask<List<AdaptiveSampler.Samples>>() {
+            @Override
+            protected List<AdaptiveSampler.Samples> compute() {
+                invokeAll(tasks);
+                List<AdaptiveSampler.Samples> results = new ArrayList<>(tasks.size());
+                for (CurveTask task : tasks) {
+                    results.add(task.join());
+                }
+                return results;
+            }
+        });
+    }
+
+    /** Splits one curve into chunks, samples them as subtasks and stitches the results. */
+    private static final class CurveTask extends RecursiveTask<AdaptiveSampler.Samples> {
+        private final Request request;
+
+        CurveTask(Request request) {
+            this.request = request;
+        }
+
+        @Override
+        protected AdaptiveSampler.Samples compute() {
+            int chunks = Math.max(1, Math.min(POOL.getParallelism(), request.budget / MIN_CHUNK_BUDGET));
+            if (chunks == 1) {
+                return new AdaptiveSampler(request.budget).sample(request.expression.newEvaluator(), request.from, request.to);
+            }
+            List<ChunkTask> parts = new ArrayList<>(chunks);
+            double width = (request.to - request.from) / chunks;
+            for (int i = 0; i < chunks; i++) {
+                double from = request.from + i * width;
+                double to = i == chunks - 1 ? request.to : request.from + (i + 1) * width;
+                parts.add(new ChunkTask(request.expression, from, to, request.budget / chunks));
+            }
+            invokeAll(parts);
+            List<AdaptiveSampler.Samples> results = new ArrayList<>(chunks);
+            for (ChunkTask part : parts) {
+                results.add(part.join());
+            }
+            return stitch(results);
+        }
+    }
+
+    private static final class ChunkTask extends RecursiveTask<AdaptiveSampler.Samples> {
+        private final CompiledExpression expression;
+        private final double from;
+        private final double to;
+        private final int budget;
+
+        ChunkTask(CompiledExpression expression, double from, double to, int budget) {
+            this.expression = expression;
+            this.from = from;
+            this.to = to;
+            this.budget = budget;
+        }
+
+        @Override
+        protected AdaptiveSampler.Samples compute() {
+            return new AdaptiveSampler(budget).sample(expression.newEvaluator(), from, to);
+        }
+    }
+
+    /**
+     * Joins adjacent chunks: the point shared by two chunks is kept once, as is a gap that spans
+     * the boundary. The typical y range is the union of the chunks' ranges.
+     */
+    static AdaptiveSampler.Samples stitch(List<AdaptiveSampler.Samples> parts) {
+        int total = 0;
+        for (AdaptiveSampler.Samples part : parts) {
+            total += part.size();
+        }
+        double[] xs = new double[total];
+        double[] ys = new double[total];
+        int count = 0;
+        int evaluations = 0;
+        double low = Double.NaN;
+        double high = Double.NaN;
+        for (AdaptiveSampler.Samples part : parts) {
+            double[] px = part.getXs();
+            double[] py = part.getYs();
+            for (int i = 0; i < part.size(); i++) {
+                if (count > 0 && i == 0 && (px[i] == xs[count - 1] || (Double.isNaN(py[i]) && Double.isNaN(ys[count - 1])))) {
+                    continue; // Same point (or same gap) as the end of the previous chunk
+                }
+                xs[count] = px[i];
+                ys[count++] = py[i];
+            }
+            evaluations += part.getEvaluations();
+            low = Double.isNaN(low) || part.getYLow() < low ? part.getYLow() : low;
+            high = Double.isNaN(high) || part.getYHigh() > high ? part.getYHigh() : high;
+        }
+        return new AdaptiveSampler.Samples(Arrays.copyOf(xs, count), Arrays.copyOf(ys, count), evaluations, low, high);
+    }
+}
@@ -0,0 +1,203 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sourceforge.tess4j.*;
+
+/*RegionOcr --> Splits a page into line/equation regions and recognises them in parallel.
+ * -- segment(): horizontal ink bands (text lines), each split again on wide horizontal gaps
+ *    so two equations written side by side become two regions. Returned in reading order.
+ * -- recognise(): one task per region on a shared worker pool; each task borrows its own
+ *    engine from TesseractPool, so regions of one page run on as many cores as there are engines.*/
+
+public class RegionOcr{
+    private static final int MIN_REGION_HEIGHT = 8; //bands thinner than this are noise / rules
+    private static final int MIN_REGION_WIDTH = 8;
+    private static final double ROW_GAP_FACTOR = 0.25; //rows closer than this * median band height are merged (e.g. exponents)
+    private static final double COLUMN_GAP_FACTOR = 2.5; //horizontal gaps wider than this * band height split a band
+
+    private static volatile ExecutorService regionExecutor;
+
+		/*segment() --> Finds text regions on a (preferably binarized) page image
+		 * -- returns <List<Rectangle>> top-to-bottom, left-to-right*/
+    public static List<Rectangle> segment(BufferedImage page){
+        int width = page.getWidth();
+        int height = page.getHeight();
+        int[] luma = ImagePreprocessor.luminance(page);
+
+        //row projection: number of ink pixels per row
+        int[] rowInk = new int[height];
+        for(int y = 0; y < height; y++){
+            int count = 0;
+            for(int x = 0, i = y * width; x < width; x++, i++){
+                if(luma[i] < 128){
+                    count++;
+                }
+            }
+            rowInk[y] = count;
+        }
+
+        List<int[]> bands = new ArrayList<>(); //{top, bottom} inclusive
+        int start = -1;
+        for(int y = 0; y <= height; y++){
+            boolean ink = y < height && rowInk[y] > 0;
+            if(ink && start < 0){
+                start = y;
+            } else if(!ink && start >= 0){
+                bands.add(new int[]{start, y - 1});
+                start = -1;
+            }
+        }
+        if(bands.isEmpty()){
+            return new ArrayList<>();
+        }
+
+        //merge bands separated by small gaps (superscripts, fraction bars, dots of i/j)
+        int medianHeight = medianBandHeight(bands);
+        int maxRowGap = Math.max(2, (int) (medianHeight * ROW_GAP_FACTOR));
+        List<int[]> merged = new ArrayList<>();
+        int[] current = bands.get(0);
+        for(int b = 1; b < bands.size(); b++){
+            int[] next = bands.get(b);
+            if(next[0] - current[1] - 1 <= maxRowGap){
+                current = new int[]{current[0], next[1]};
+            } else{
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+
+        List<Rectangle> regions = new ArrayList<>();
+        for(int[] band : merged){
+            int bandHeight = band[1] - band[0] + 1;
+            if(bandHeight < MIN_REGION_HEIGHT){
+                continue;
+            }
+            splitBand(luma, width, band[0], band[1], (int) (bandHeight * COLUMN_GAP_FACTOR), regions);
+        }
+        return regions;
+    }
+
+		/*splitBand() --> Splits one text band on column gaps wider than @param maxColumnGap*/
+    private static void splitBand(int[] luma, int width, int top, int bottom, int maxColumnGap, List<Rectangle> regions){
+        boolean[] columnInk = new boolean[width];
+        for(int y = top; y <= bottom; y++){
+            for(int x = 0, i = y * width; x < width; x++, i++){
+                if(luma[i] < 128){
+                    columnInk[x] = true;
+                }
+            }
+        }
+
+        int left = -1;
+        int right = -1;
+        int gap = 0;
+        for(int x = 0; x <= width; x++){
+            boolean ink = x < width && columnInk[x];
+            if(ink){
+                if(left < 0){
+                    left = x;
+                }
+                right = x;
+                gap = 0;
+            } else if(left >= 0){
+                gap++;
+                if(gap > maxColumnGap || x == width){
+                    if(right - left + 1 >= MIN_REGION_WIDTH){
+                        regions.add(padded(left, top, right, bottom, width, luma.length / width));
+                    }
+                    left = -1;
+                    gap = 0;
+                }
+            }
+        }
+    }
+
+		/*padded() --> Region rectangle with a few pixels of white border, which Tesseract reads better*/
+    private static Rectangle padded(int left, int top, int right, int bottom, int width, int height){
+        int pad = 4;
+        int x0 = Math.max(0, left - pad);
+        int y0 = Math.max(0, top - pad);
+        int x1 = Math.min(width - 1, right + pad);
+        int y1 = Math.min(height - 1, bottom + pad);
+        return new Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+    }
+
+    private static int medianBandHeight(List<int[]> bands){
+        int[] heights = new int[bands.size()];
+        for(int b = 0; b < heights.length; b++){
+            heights[b] = bands.get(b)[1] - bands.get(b)[0] + 1;
+        }
+        Arrays.sort(heights);
+        return heights[heights.length / 2];
+    }
+
+		/*recognise() --> OCRs each region in parallel and reassembles the results in reading order
+		 * -- returns <List<String>> one trimmed text per region (blank regions are dropped)*/
+    public static List<String> recognise(BufferedImage page, List<Rectangle> regions) throws InterruptedException{
+        ExecutorService executor = executor();
+        List<Future<String>> pending = new ArrayList<>(regions.size());
+        for(Rectangle region : regions){
+            BufferedImage crop = page.getSubimage(region.x, region.y, region.width, region.height);
+            pending.add(executor.submit(() -> recogniseRegion(crop)));
+        }
+
+        List<String> candidates = new ArrayList<>(regions.size());
+        try{
+            for(Future<String> future : pending){
+                try{
+                    String text = future.get().replaceAll("\\s+", " ").trim(); //one region, one line
+                    if(!text.isEmpty()){
+                        candidates.add(text);
+                    }
+                } catch(ExecutionException except){
+                    System.err.println(except.getCause().getMessage()); //skip the failed region, keep the rest
+                }
+            }
+        } finally{
+            for(Future<String> future : pending){
+                future.cancel(true); //no-op for finished regions, stops the rest if we were interrupted
+            }
+        }
+        return candidates;
+    }
+
+    private static String recogniseRegion(BufferedImage region) throws InterruptedException, TesseractException{
+        TesseractPool pool = TesseractPool.shared();
+        ITesseract tesseract = pool.borrow();
+        try{
+            return tesseract.doOCR(region);
+        } finally{
+            pool.release(tesseract);
+        }
+    }
+
+		/*executor() --> Shared region workers, one per pooled engine
+		 * -- returns <ExecutorService>*/
+    private static ExecutorService executor(){
+        ExecutorService executor = regionExecutor;
+        if(executor == null){
+            synchronized(RegionOcr.class){
+                executor = regionExecutor;
+                if(executor == null){
+                    AtomicInteger threadIndex = new AtomicInteger();
+                    executor = Executors.newFixedThreadPool(TesseractPool.shared().getSize(), r -> {
+                        Thread t = new Thread(r, "region-ocr-" + threadIndex.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+                    regionExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,113 @@
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*RetentionJob --> Background purge of old 'HISTORY' rows.
+ * -- runs once a day (and on demand via runNow()) on its own thread, never on the EDT.
+ * -- deletes in chunks of 'chunkSize' rows by primary key (HistoryStore.deleteHistoryChunk()), pausing
+ *    between chunks, so each transaction is short and concurrent inserts only wait milliseconds.
+ * -- the retention window defaults to -Dmathematica.retention.days (15 when unset).*/
+
+public class RetentionJob{
+    static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final long CHUNK_PAUSE_MS = 50; //gives waiting inserts a turn between chunks
+    private static final long SCHEDULE_HOURS = 24;
+    private static final long INITIAL_DELAY_MINUTES = 5; //stay out of the way of startup
+
+    private final HistoryStore database;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile int retentionDays;
+    private volatile int chunkSize = DEFAULT_CHUNK_SIZE;
+
+		/*Listener --> Progress of one purge, called on the retention thread*/
+    public interface Listener{
+        void onProgress(int deletedSoFar);
+        void onFinished(int totalDeleted, boolean failed);
+    }
+
+		/*RetentionJob() --> Constructor, schedules the daily purge*/
+    RetentionJob(HistoryStore database){
+        this(database, configuredDays());
+    }
+
+		/*configuredDays() --> Retention from -Dmathematica.retention.days, for callers that need it before
+		 * a job exists -- returns <int> days (default 15)*/
+    static int configuredDays(){
+        return Integer.getInteger("mathematica.retention.days", 15);
+    }
+
+    RetentionJob(HistoryStore database, int retentionDays){
+        this.database = database;
+        this.retentionDays = retentionDays;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "history-retention");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        this.scheduler.scheduleWithFixedDelay(() -> purge(null), INITIAL_DELAY_MINUTES,
+                TimeUnit.HOURS.toMinutes(SCHEDULE_HOURS), TimeUnit.MINUTES);
+    }
+
+    public int getRetentionDays(){ return retentionDays; }
+    public void setRetentionDays(int days){ this.retentionDays = days; }
+    public void setChunkSize(int rows){ this.chunkSize = Math.max(1, rows); }
+
+		/*runNow() --> Starts a purge in the background right away
+		 * -- returns <bool> false if a purge is already running*/
+    public boolean runNow(Listener listener){
+        if(running.get()){
+            return false;
+        }
+        scheduler.execute(() -> purge(listener));
+        return true;
+    }
+
+		/*purge() --> Deletes everything older than the retention window, one chunk at a time*/
+    private void purge(Listener listener){
+        if(!running.compareAndSet(false, true)){
+            return;
+        }
+        int total = 0;
+        boolean failed = false;
+        try{
+            if(!database.isConnected()){
+                failed = true;
+                return;
+            }
+            Timestamp limit = Timestamp.valueOf(LocalDateTime.now().minusDays(retentionDays));
+            int deleted;
+            do{
+                deleted = database.deleteHistoryChunk(limit, chunkSize);
+                total += deleted;
+                if(deleted > 0){
+                    if(listener != null){
+                        listener.onProgress(total);
+                    }
+                    Thread.sleep(CHUNK_PAUSE_MS);
+                }
+            } while(deleted > 0);
+            System.err.println("RetentionJob::Deleted " + total + " (older than " + retentionDays + " days)");
+        } catch(SQLException except){
+            failed = true;
+            System.err.println("RetentionJob::Failed " + except.getMessage());
+        } catch(InterruptedException except){
+            Thread.currentThread().interrupt(); //shutdown()
+        } finally{
+            running.set(false);
+            if(listener != null){
+                listener.onFinished(total, failed);
+            }
+        }
+    }
+
+		/*shutdown() --> Stops the schedule; a purge in progress stops after its current chunk*/
+    public void shutdown(){
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,197 @@
+import javax.swing.SwingUtilities;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Brings up the application's slow subsystems (history store, OCR, charting) in parallel in the
+ * background while the window is already on screen, and keeps track of how far each one got.
+ * <p>
+ * Also measures startup, from JVM start: the time to the window's first paint and the time until
+ * every subsystem has finished starting (successfully or not). Both are printed once known, and
+ * available from the getters and as {@code startup.*} {@link Metrics} so regressions can be tracked.
+ * <p>
+ * State is EDT-confined: {@link #start} and the getters are called on the EDT, and completions and
+ * listener calls are delivered there.
+ */
+public final class StartupTracker {
+
+    /** Where a subsystem is in its startup. */
+    public enum State { STARTING, READY, FAILED }
+
+    /** Told about every state change, on the EDT. */
+    public interface Listener {
+        void onStartupChanged(StartupTracker tracker);
+    }
+
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    /** Threads die off once startup is over. */
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "startup-" + THREAD_INDEX.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Map<String, Subsystem> subsystems = new LinkedHashMap<>();
+    private Listener listener;
+    private long firstPaintMillis = -1;
+    private long readyMillis = -1;
+    private boolean reported;
+
+    private static final class Subsystem {
+        State state = State.STARTING;
+        long millis; // Time spent starting, once finished
+        String detail; // Why it failed
+    }
+
+    /** @param listener Notified of every change from now on; replaces the previous one. */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts a subsystem on a background thread; it is ready once {@code init} returns.
+     *
+     * @param name Shown to the user; unique.
+     * @param init The slow part, run off the EDT.
+     */
+    public void start(String name, Callable<?> init) {
+        start(name, init, (result, error) -> { });
+    }
+
+    /**
+     * Starts a subsystem on a background thread.
+     *
+     * @param name   Shown to the user; unique.
+     * @param init   The slow part, run off the EDT.
+     * @param onDone Receives the result, or the failure, on the EDT before the subsystem's state is
+     *               reported. An exception thrown here marks it failed.
+     * @param <T>    What {@code init} produces.
+     */
+    public <T> void start(String name, Callable<T> init, BiConsumer<T, Throwable> onDone) {
+        if (subsystems.containsKey(name)) {
+            throw new IllegalArgumentException("Subsystem already started: " + name);
+        }
+        Subsystem subsystem = new Subsystem();
+        subsystems.put(name, subsystem);
+        notifyListener();
+        executor.execute(() -> {
+            long began = System.nanoTime();
+            T result = null;
+            Throwable error = null;
+            try {
+                result = init.call();
+            } catch (Exception | LinkageError e) { // LinkageError: native libraries that failed to load
+                error = e;
+            }
+            long millis = (System.nanoTime() - began) / 1_000_000;
+            T finalResult = result;
+            Throwable finalError = error;
+            SwingUtilities.invokeLater(() -> finish(name, subsystem, millis, finalResult, finalError, onDone));
+        });
+    }
+
+    private <T> void finish(String name, Subsystem subsystem, long millis, T result, Throwable error, BiConsumer<T, Throwable> onDone) {
+        try {
+            onDone.accept(result, error);
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        subsystem.millis = millis;
+        subsystem.state = error == null ? State.READY : State.FAILED;
+        subsystem.detail = error == null ? null : (error.getMessage() != null ? error.getMessage() : error.toString());
+        if (error != null) {
+            System.err.println("Startup: " + name + " unavailable: " + subsystem.detail);
+        }
+        Metrics.timer("startup." + name).record(millis * 1_000_000);
+        if (readyMillis < 0 && subsystems.values().stream().noneMatch(s -> s.state == State.STARTING)) {
+            readyMillis = uptimeMillis();
+            Metrics.timer("startup.ready").record(readyMillis * 1_000_000);
+            executor.shutdown();
+        }
+        notifyListener();
+        report();
+    }
+
+    /** Records the first paint of the main window; later calls are ignored. Call on the EDT. */
+    public void markFirstPaint() {
+        if (firstPaintMillis < 0) {
+            firstPaintMillis = uptimeMillis();
+            Metrics.timer("startup.firstPaint").record(firstPaintMillis * 1_000_000);
+            notifyListener();
+            report();
+        }
+    }
+
+    /** Prints the startup times once both are known. */
+    private void report() {
+        if (reported || firstPaintMillis < 0 || readyMillis < 0) {
+            return;
+        }
+        reported = true;
+        StringBuilder line = new StringBuilder("Startup: first paint ").append(firstPaintMillis)
+                .append(" ms, ready ").append(readyMillis).append(" ms (");
+        String separator = "";
+        for (Map.Entry<String, Subsystem> entry : subsystems.entrySet()) {
+            line.append(separator).append(entry.getKey()).append(' ').append(entry.getValue().millis).append(" ms");
+            if (entry.getValue().state == State.FAILED) {
+                line.append(", failed");
+            }
+            separator = "; ";
+        }
+        System.out.println(line.append(')'));
+    }
+
+    private void notifyListener() {
+        if (listener != null) {
+            listener.onStartupChanged(this);
+        }
+    }
+
+    private static long uptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    /** @return The names of the subsystems started so far, in start order. */
+    public List<String> getSubsystems() {
+        return new ArrayList<>(subsystems.keySet());
+    }
+
+    /** @return The state of a started subsystem. */
+    public State getState(String name) {
+        return subsystems.get(name).state;
+    }
+
+    /** @return How long a subsystem took to start, in ms; 0 while still starting. */
+    public long getMillis(String name) {
+        return subsystems.get(name).millis;
+    }
+
+    /** @return Why a subsystem failed, or null. */
+    public String getDetail(String name) {
+        return subsystems.get(name).detail;
+    }
+
+    /** @return Time from JVM start to the first paint of the window in ms, or -1 if not yet painted. */
+    public long getFirstPaintMillis() {
+        return firstPaintMillis;
+    }
+
+    /** @return Time from JVM start until every subsystem had finished starting in ms, or -1. */
+    public long getReadyMillis() {
+        return readyMillis;
+    }
+
+    /** @return Whether every subsystem has finished starting, successfully or not. */
+    public boolean isReady() {
+        return readyMillis >= 0;
+    }
+}
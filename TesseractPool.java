@@ -0,0 +1,233 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sourceforge.tess4j.*;
+
+/*TesseractPool --> Pool of configured, reusable Tesseract engines.
+ * -- engines are created once with the datapath, language and tess variables applied, and each keeps its
+ *    native handle (with the traineddata loaded) until shutdown(), so only an engine's first call pays for Init.
+ * -- an engine is used by one thread at a time: borrow() --> doOCR() --> release().
+ * -- the pool never holds more than 'size' engines (defaults to the number of cores,
+ *    -Dmathematica.ocr.engines=<n> to override).*/
+
+public class TesseractPool{
+    public static final String DATAPATH = System.getProperty("mathematica.tessdata", "C:\\Tess4J\\tessdata"); //dataset for tesseract, -Dmathematica.tessdata=<dir>
+    public static final String LANGUAGE = "eng+equ"; //configuring for reading equations
+    public static final Map<String, String> TESS_VARIABLES; //optimizing for mathematical expressions
+
+    static{
+        Map<String, String> variables = new LinkedHashMap<>();
+        variables.put("load_system_dawg", "false");
+        variables.put("load_freq_dawg", "false");
+        TESS_VARIABLES = Collections.unmodifiableMap(variables);
+    }
+
+    private static volatile TesseractPool sharedPool;
+
+    private final int size;
+    private final BlockingQueue<ITesseract> idle; //engines ready to be borrowed
+    private final AtomicInteger created = new AtomicInteger(); //engines created so far (<= size)
+    private volatile boolean shutdown; //set by shutdown(), engines released afterwards are closed
+
+		/*shared() --> Process-wide pool sized to -Dmathematica.ocr.engines, else the number of available cores
+		 * -- returns <TesseractPool>*/
+    public static TesseractPool shared(){
+        TesseractPool pool = sharedPool;
+        if(pool == null){
+            synchronized(TesseractPool.class){
+                pool = sharedPool;
+                if(pool == null){
+                    pool = new TesseractPool(Math.max(1, Integer.getInteger("mathematica.ocr.engines", Runtime.getRuntime().availableProcessors())));
+                    sharedPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+		/*TesseractPool() --> Constructor, engines are created lazily up to @param size*/
+    TesseractPool(int size){
+        if(size < 1){
+            throw new IllegalArgumentException("TesseractPool::size must be at least 1");
+        }
+        this.size = size;
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+		/*warmUp() --> Creates every engine up front so the first extractions don't pay for it
+		 * -- returns <void>*/
+    public void warmUp(){
+        while(true){
+            int current = created.get();
+            if(current >= size){
+                return;
+            }
+            if(created.compareAndSet(current, current + 1)){
+                idle.offer(createEngine());
+            }
+        }
+    }
+
+		/*prime() --> Runs one engine on a blank image, loading the native library and initialising that engine
+		 * (traineddata included), which then stays initialised in the pool. Other engines initialise on their
+		 * first call. Throws if Tesseract isn't usable here.
+		 * -- returns <void>*/
+    public void prime() throws TesseractException, InterruptedException{
+        ITesseract engine = borrow();
+        try{
+            engine.doOCR(new BufferedImage(32, 32, BufferedImage.TYPE_BYTE_GRAY));
+        }finally{
+            release(engine);
+        }
+    }
+
+		/*borrow() --> Checks out an engine, creating one if the pool isn't full yet,
+		 * otherwise waits for another thread to release one.
+		 * -- returns <ITesseract>*/
+    public ITesseract borrow() throws InterruptedException{
+        if(shutdown){
+            throw new IllegalStateException("TesseractPool::pool has been shut down");
+        }
+        ITesseract engine = idle.poll();
+        if(engine != null){
+            return engine;
+        }
+        while(true){
+            int current = created.get();
+            if(current >= size){
+                return idle.take(); //pool exhausted, wait for a release
+            }
+            if(created.compareAndSet(current, current + 1)){
+                return createEngine();
+            }
+        }
+    }
+
+		/*release() --> Returns a borrowed engine to the pool
+		 * -- returns <void>*/
+    public void release(ITesseract engine){
+        if(engine == null){
+            return;
+        }
+        if(shutdown){
+            close(engine);
+            return;
+        }
+        idle.offer(engine);
+        if(shutdown && idle.remove(engine)){ //raced with shutdown() draining the queue
+            close(engine);
+        }
+    }
+
+		/*shutdown() --> Frees the native handle of every idle engine; engines still borrowed are freed when
+		 * they're released. The pool shouldn't be borrowed from afterwards.
+		 * -- returns <void>*/
+    public void shutdown(){
+        shutdown = true;
+        ITesseract engine;
+        while((engine = idle.poll()) != null){
+            close(engine);
+        }
+    }
+
+    private static void close(ITesseract engine){
+        if(engine instanceof WarmTesseract){
+            ((WarmTesseract)engine).close();
+        }
+    }
+
+    public int getSize(){
+        return size;
+    }
+
+		/*configFingerprint() --> Short digest of everything that changes OCR output: datapath, language,
+		 * tess variables and the size/timestamp of each traineddata file in use. Stats files on every call
+		 * (OcrCache re-checks it per key to notice replaced traineddata).
+		 * -- returns <String> (16 hex chars)*/
+    public static String configFingerprint(){
+        StringBuilder config = new StringBuilder();
+        config.append(DATAPATH).append('|').append(LANGUAGE);
+        for(Map.Entry<String, String> variable : TESS_VARIABLES.entrySet()){
+            config.append('|').append(variable.getKey()).append('=').append(variable.getValue());
+        }
+        for(String language : LANGUAGE.split("\\+")){
+            File trainedData = new File(DATAPATH, language + ".traineddata");
+            config.append('|').append(language).append(':').append(trainedData.length()).append(':').append(trainedData.lastModified());
+        }
+        try{
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(config.toString().getBytes(StandardCharsets.UTF_8));
+            return OcrCache.toHex(digest).substring(0, 16);
+        } catch(NoSuchAlgorithmException except){
+            return Integer.toHexString(config.toString().hashCode()); //SHA-256 is always present, kept for the checked exception
+        }
+    }
+
+		/*createEngine() --> newEngine() for a slot already counted in 'created'; gives the slot back if
+		 * the engine can't be built (e.g. missing natives), so later borrowers don't wait forever
+		 * -- returns <ITesseract>*/
+    private ITesseract createEngine(){
+        try{
+            return newEngine();
+        }catch(RuntimeException | Error except){
+            created.decrementAndGet();
+            throw except;
+        }
+    }
+
+		/*newEngine() --> Builds a Tesseract instance with the shared configuration
+		 * -- returns <ITesseract>*/
+    private static ITesseract newEngine(){
+        ITesseract tesseract = new WarmTesseract();
+        tesseract.setDatapath(DATAPATH);
+        tesseract.setLanguage(LANGUAGE);
+        for(Map.Entry<String, String> variable : TESS_VARIABLES.entrySet()){
+            tesseract.setVariable(variable.getKey(), variable.getValue());
+        }
+        return tesseract;
+    }
+
+		/*WarmTesseract --> Tesseract whose doOCR() doesn't create, Init and delete a native handle per call:
+		 * -- init() creates and initialises the handle on the first call only.
+		 * -- dispose() just Clears the recognition results, keeping the handle and its traineddata.
+		 * -- close() deletes the handle (which Ends it), called by the pool on shutdown.
+		 * Only one thread uses an engine at a time (borrow/release), so the flags need no locking.*/
+    static class WarmTesseract extends Tesseract{
+        private boolean initialised;
+        private boolean closed;
+
+        @Override
+        protected void init(){
+            if(closed){
+                throw new IllegalStateException("TesseractPool::engine used after shutdown");
+            }
+            if(!initialised){
+                super.init();
+                initialised = true;
+            }
+        }
+
+        @Override
+        protected void dispose(){
+            if(initialised){
+                getAPI().TessBaseAPIClear(getHandle());
+            }
+        }
+
+        void close(){
+            if(initialised){
+                super.dispose(); //TessBaseAPIDelete, whose destructor does the End
+                initialised = false;
+            }
+            closed = true;
+        }
+    }
+}
@@ -1,44 +1,216 @@
 import java.io.File;
+import java.io.IOException;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.imageio.ImageIO;
 import net.sourceforge.tess4j.*;
 
 public class TextExtract{
     private String extractedText; //Resultant Text after Extraction.
+    private List<String> candidates = new ArrayList<>(); //Per-region texts from performRegions(), in reading order.
+
+    //Shared preprocessing setup, disable with -Dmathematica.preprocess=false.
+    static final ImagePreprocessor PREPROCESSOR = new ImagePreprocessor();
+    static final boolean PREPROCESS = Boolean.parseBoolean(System.getProperty("mathematica.preprocess", "true"));
+
+    //Hot-path timings, see Metrics.
+    private static final Metrics.Timer PERFORM_TIMER = Metrics.timer("ocr.perform");
+    private static final Metrics.Timer REGIONS_TIMER = Metrics.timer("ocr.performRegions");
+    private static final Metrics.Timer RECOGNISE_TIMER = Metrics.timer("ocr.recognise"); //one doOCR
+    private static final Metrics.Timer REGION_SET_TIMER = Metrics.timer("ocr.recogniseRegions"); //every region of a page
+    private static final Metrics.Timer PREPROCESS_TIMER = Metrics.timer("ocr.preprocess");
+    private static final Metrics.Counter CACHE_HITS = Metrics.counter("ocr.cache.hits");
+    private static final Metrics.Counter CACHE_MISSES = Metrics.counter("ocr.cache.misses");
 
 		/*perform() --> Method performs OCR on given images.
+		 * -- returns the cached text when the same image was recognised before (OcrCache).
+		 * -- otherwise preprocesses the image in memory (ImagePreprocessor) and recognises it with
+		 *    a pre-configured engine borrowed from TesseractPool.
 		 * -- returns <string> 'extractedText'*/
     public String perform(String ImagePath){
+        long start = PERFORM_TIMER.start();
+        try{
+            return performUntimed(ImagePath);
+        } finally{
+            PERFORM_TIMER.stop(start);
+        }
+    }
+
+    private String performUntimed(String ImagePath){
         File ImageFile = new File(ImagePath);
-        ITesseract tesseract = new Tesseract();
- 
-        tesseract.setDatapath("C:\\Tess4J\\tessdata"); //getting dataset for tesseract
-        tesseract.setLanguage("eng+equ"); //configuring for reading equations
-        tesseract.setTessVariable("load_system_dawg", "false"); //optimizing for mathematical expressions
-        tesseract.setTessVariable("load_freq_dawg", "false");
         this.extractedText = "";
 
+				//Validating - ImagePath Exists.
+        if(!ImageFile.exists()){
+            System.err.println("File::Error");
+            this.extractedText = "File::Error";
+            return this.extractedText;
+        }
+
+        OcrCache cache = OcrCache.shared();
+        String cacheKey = cache.keyFor(ImageFile, PREPROCESS ? PREPROCESSOR.fingerprint() : ""); //content digest + OCR configuration
+        String cachedText = cache.get(cacheKey);
+        if(cachedText != null){
+            CACHE_HITS.increment();
+            this.extractedText = cachedText;
+            return this.extractedText;
+        }
+        CACHE_MISSES.increment();
+
+        BufferedImage image = PREPROCESS ? loadPreprocessed(ImageFile) : null;
+        try{
+            this.extractedText = recognise(image, ImageFile);
+            cache.put(cacheKey, this.extractedText);
+        } catch(TesseractException except){
+            System.err.println(except.getMessage());
+        } catch(InterruptedException except){
+            Thread.currentThread().interrupt(); //job was cancelled while waiting for an engine
+        }
+        return this.extractedText;
+    }
+
+		/*performRegions() --> Method performs OCR region by region on a page of equations.
+		 * -- the page is segmented into line/equation regions (RegionOcr) which are recognised in
+		 *    parallel on separate engines and reassembled in reading order.
+		 * -- each region's text is kept as its own candidate expression, see getCandidates().
+		 * -- returns <List<String>> 'candidates'; 'extractedText' holds them joined by newlines.*/
+    public List<String> performRegions(String ImagePath){
+        long start = REGIONS_TIMER.start();
         try{
-						//Validating - ImagePath Exists.
-            if(!ImageFile.exists()){
-                System.err.println("File::Error");
-                this.extractedText = "File::Error";
+            return performRegionsUntimed(ImagePath);
+        } finally{
+            REGIONS_TIMER.stop(start);
+        }
+    }
+
+    private List<String> performRegionsUntimed(String ImagePath){
+        File ImageFile = new File(ImagePath);
+        this.extractedText = "";
+        this.candidates = new ArrayList<>();
+
+				//Validating - ImagePath Exists.
+        if(!ImageFile.exists()){
+            System.err.println("File::Error");
+            this.extractedText = "File::Error";
+            return this.candidates;
+        }
+
+        OcrCache cache = OcrCache.shared();
+        String cacheKey = cache.keyFor(ImageFile, "regions|" + (PREPROCESS ? PREPROCESSOR.fingerprint() : ""));
+        String cachedText = cache.get(cacheKey);
+        if(cachedText != null){
+            CACHE_HITS.increment();
+            this.extractedText = cachedText;
+            this.candidates = splitCandidates(cachedText);
+            return this.candidates;
+        }
+        CACHE_MISSES.increment();
+
+        BufferedImage page = PREPROCESS ? loadPreprocessed(ImageFile) : loadImage(ImageFile);
+        if(page == null){
+            //format Tesseract can read but ImageIO can't: fall back to whole-page OCR
+            perform(ImagePath);
+            this.candidates = splitCandidates(this.extractedText);
+            return this.candidates;
+        }
+
+        try{
+            List<Rectangle> regions = RegionOcr.segment(page);
+            if(regions.size() > 1){
+                long start = REGION_SET_TIMER.start();
+                this.candidates = RegionOcr.recognise(page, regions);
+                REGION_SET_TIMER.stop(start);
+                this.extractedText = String.join("\n", this.candidates);
             } else{
-                this.extractedText = tesseract.doOCR(ImageFile); //performing OCR..
+                this.extractedText = recognise(page, ImageFile);
+                this.candidates = splitCandidates(this.extractedText);
             }
+            cache.put(cacheKey, this.extractedText);
         } catch(TesseractException except){
             System.err.println(except.getMessage());
+        } catch(InterruptedException except){
+            Thread.currentThread().interrupt(); //job was cancelled while waiting for an engine
+        }
+        return this.candidates;
+    }
+
+		/*recognise() --> Runs one doOCR on a borrowed engine; preprocessed pixels go straight to
+		 * Tesseract (no temporary file), a null image makes Tesseract read the file itself.
+		 * -- returns <String>*/
+    private static String recognise(BufferedImage image, File ImageFile) throws TesseractException, InterruptedException{
+        TesseractPool pool = TesseractPool.shared();
+        ITesseract tesseract = pool.borrow();
+        try{
+            long start = RECOGNISE_TIMER.start();
+            String text = (image != null) ? tesseract.doOCR(image) : tesseract.doOCR(ImageFile); //performing OCR..
+            RECOGNISE_TIMER.stop(start);
+            return text;
+        } finally{
+            pool.release(tesseract);
         }
-        return this.extractedText;
+    }
+
+		/*loadPreprocessed() --> Decodes the image and runs the preprocessing stages, recording the total
+		 * and per-stage timings (ocr.preprocess, ocr.preprocess.<stage>)
+		 * -- returns <BufferedImage>, null if the format can't be decoded (Tesseract then reads the file itself)*/
+    private static BufferedImage loadPreprocessed(File ImageFile){
+        BufferedImage source = loadImage(ImageFile);
+        if(source == null){
+            return null;
+        }
+        long start = PREPROCESS_TIMER.start();
+        BufferedImage processed = PREPROCESSOR.process(source);
+        PREPROCESS_TIMER.stop(start);
+        if(Metrics.ENABLED){
+            for(Map.Entry<String, Long> stage : PREPROCESSOR.getLastTimings().entrySet()){
+                Metrics.timer("ocr.preprocess." + stage.getKey()).record(stage.getValue());
+            }
+        }
+        return processed;
+    }
+
+    private static BufferedImage loadImage(File ImageFile){
+        try{
+            return ImageIO.read(ImageFile);
+        } catch(IOException except){
+            System.err.println(except.getMessage());
+            return null;
+        }
+    }
+
+		/*splitCandidates() --> Non-blank lines of @param text, trimmed
+		 * -- returns <List<String>>*/
+    static List<String> splitCandidates(String text){
+        List<String> lines = new ArrayList<>();
+        for(String line : text.split("\\R")){
+            if(!line.trim().isEmpty()){
+                lines.add(line.trim());
+            }
+        }
+        return lines;
     }
     
 		//getExtractedText() --> Getter Method for `private variable` -> extractedText
     public String getExtractedText(){
         return this.extractedText;
     }
+
+		//getCandidates() --> Getter Method for `private variable` -> candidates
+    public List<String> getCandidates(){
+        return this.candidates;
+    }
     
 		/*TextExtract() --> Constructor for Class -- 'TextExtract'
 		 * -- calls the 'perform()' method.*/
     TextExtract(String ImagePath){
         perform(ImagePath);
+    }
+
+		/*TextExtract() --> Constructor without an initial extraction, for callers that use performRegions()*/
+    TextExtract(){
+        this.extractedText = "";
     }
 }
-    
@@ -0,0 +1,296 @@
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.data.Range;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the curves of a chart sampled at screen resolution as the user zooms and pans.
+ * <p>
+ * For each curve, samples are kept as non-overlapping segments of x, each remembering the resolution (x units per
+ * pixel) it was sampled for. When the domain axis changes or the panel is resized, and once the user has paused for
+ * {@link #DEBOUNCE_MS}, only the parts of the visible interval (plus half a screen either side, for
+ * panning) that no segment covers finely enough are sampled in the background, every curve at
+ * once through {@link ParallelSampler}. The new segments replace the coarser parts they overlap,
+ * and the chart's {@link MinMaxDecimator} gets a new {@link ArrayXYDataset} built from the segments.
+ * Zooming back out reuses everything already computed.
+ * <p>
+ * The segments are only touched on the EDT; background tasks get thread-confined evaluators and
+ * hand back new segments.
+ */
+public class ViewportResampler {
+
+    private static final int DEBOUNCE_MS = 120;
+    private static final int INITIAL_PIXELS = 800; // Screen width the first, whole-range sampling is meant for
+    private static final double PAN_MARGIN = 0.5; // Of the visible width, sampled on each side
+    private static final double RESOLUTION_SLACK = 1.5; // Reuse segments up to this much coarser than needed
+    private static final int POINTS_PER_PIXEL = 3; // Evaluation budget per pixel column of a missing piece
+    private static final int MAX_PIECE_BUDGET = 50000;
+    private static final int MAX_STORED_POINTS = 400000; // Per curve; segments far from the view are dropped beyond this
+
+    /** One coordinating thread shared by every chart; the sampling itself runs on ParallelSampler's pool. */
+    private static final ExecutorService SAMPLER_THREAD = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "viewport-sampler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final List<Curve> curves = new ArrayList<>();
+    private final ChartPanel chartPanel;
+    private final MinMaxDecimator decimator;
+    private final ValueAxis domainAxis;
+    private final Range homeRange;
+    private final Timer debounce;
+    private int generation; // Bumped per background task; only the latest queued task replaces the dataset
+
+    /** One plotted expression, its series key and its samples. */
+    private static final class Curve {
+        final CompiledExpression expression;
+        final Comparable<?> key;
+        final TreeMap<Double, Segment> segments = new TreeMap<>(); // By start; EDT only
+
+        Curve(CompiledExpression expression, Comparable<?> key) {
+            this.expression = expression;
+            this.key = key;
+        }
+    }
+
+    /** Samples covering [start, end] at a given resolution. */
+    private static final class Segment {
+        final double start;
+        final double end;
+        final double resolution;
+        final double[] xs;
+        final double[] ys;
+
+        Segment(double start, double end, double resolution, double[] xs, double[] ys) {
+            this.start = start;
+            this.end = end;
+            this.resolution = resolution;
+            this.xs = xs;
+            this.ys = ys;
+        }
+
+        /** The samples of this segment that lie in [from, to]. */
+        Segment slice(double from, double to) {
+            int first = 0;
+            while (first < xs.length && xs[first] < from) {
+                first++;
+            }
+            int last = first;
+            while (last < xs.length && xs[last] <= to) {
+                last++;
+            }
+            double[] sx = new double[last - first];
+            double[] sy = new double[last - first];
+            System.arraycopy(xs, first, sx, 0, sx.length);
+            System.arraycopy(ys, first, sy, 0, sy.length);
+            return new Segment(from, to, resolution, sx, sy);
+        }
+    }
+
+    /**
+     * Attaches to a chart whose curves were just sampled over {@code [xMin, xMax]}. The full
+     * dataset behind the decimator is replaced on the EDT as the view changes.
+     *
+     * @param expressions The plotted expressions.
+     * @param keys        The series key of each expression.
+     * @param initial     The samples the chart currently shows for each expression.
+     * @param xMin        Left end of the initial samples, also the left end of the "home" view.
+     * @param xMax        Right end of the initial samples and the home view.
+     * @param chartPanel  The panel showing the chart, used for its width in pixels.
+     * @param decimator   Draws the chart's data; handed each new dataset.
+     */
+    public ViewportResampler(List<CompiledExpression> expressions, List<? extends Comparable<?>> keys, List<AdaptiveSampler.Samples> initial,
+                             double xMin, double xMax, ChartPanel chartPanel, MinMaxDecimator decimator) {
+        this.chartPanel = chartPanel;
+        this.decimator = decimator;
+        this.domainAxis = chartPanel.getChart().getXYPlot().getDomainAxis();
+        this.homeRange = new Range(xMin, xMax);
+        double resolution = (xMax - xMin) / INITIAL_PIXELS;
+        for (int i = 0; i < expressions.size(); i++) {
+            Curve curve = new Curve(expressions.get(i), keys.get(i));
+            AdaptiveSampler.Samples samples = initial.get(i);
+            curve.segments.put(xMin, new Segment(xMin, xMax, resolution, samples.getXs(), samples.getYs()));
+            curves.add(curve);
+        }
+
+        // Auto range would follow the data (which extends past the view), and that would grow the
+        // view on every update; the view is always explicit, "restore auto bounds" goes home instead.
+        domainAxis.setAutoRange(false);
+        domainAxis.setRange(homeRange);
+
+        debounce = new Timer(DEBOUNCE_MS, e -> resample());
+        debounce.setRepeats(false);
+        domainAxis.addChangeListener(event -> debounce.restart());
+        chartPanel.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                debounce.restart(); // More pixels may need more samples
+            }
+        });
+    }
+
+    /** Works out what the current view is missing and samples it in the background. */
+    private void resample() {
+        if (domainAxis.isAutoRange()) {
+            domainAxis.setRange(homeRange); // "Restore auto bounds" from the chart's menu; fires another change
+            return;
+        }
+        Range view = domainAxis.getRange();
+        double pixels = Math.max(100, chartPanel.getScreenDataArea().getWidth());
+        double resolution = view.getLength() / pixels;
+        double margin = view.getLength() * PAN_MARGIN;
+        double from = view.getLowerBound() - margin;
+        double to = view.getUpperBound() + margin;
+
+        List<Curve> owners = new ArrayList<>();
+        List<ParallelSampler.Request> requests = new ArrayList<>();
+        for (Curve curve : curves) {
+            for (double[] piece : missing(curve, from, to, resolution)) {
+                int budget = (int) Math.min(MAX_PIECE_BUDGET, (piece[1] - piece[0]) / resolution * POINTS_PER_PIXEL);
+                owners.add(curve);
+                requests.add(new ParallelSampler.Request(curve.expression, piece[0], piece[1], budget));
+            }
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+        int request = ++generation;
+        SAMPLER_THREAD.execute(() -> {
+            List<AdaptiveSampler.Samples> results = ParallelSampler.sampleAll(requests);
+            SwingUtilities.invokeLater(() -> {
+                for (int i = 0; i < results.size(); i++) {
+                    ParallelSampler.Request piece = requests.get(i);
+                    AdaptiveSampler.Samples samples = results.get(i);
+                    insert(owners.get(i), new Segment(piece.from, piece.to, resolution, samples.getXs(), samples.getYs()));
+                }
+                for (Curve curve : curves) {
+                    evict(curve, (from + to) / 2, from, to);
+                }
+                if (request == generation) {
+                    decimator.setSource(buildDataset());
+                }
+            });
+        });
+    }
+
+    /**
+     * The parts of [from, to] not covered by a segment sampled at (about) the given resolution.
+     *
+     * @return {start, end} pieces in increasing x.
+     */
+    private static List<double[]> missing(Curve curve, double from, double to, double resolution) {
+        TreeMap<Double, Segment> segments = curve.segments;
+        List<double[]> pieces = new ArrayList<>();
+        double cursor = from;
+        Map.Entry<Double, Segment> before = segments.floorEntry(from);
+        Iterable<Segment> candidates = before == null ? segments.tailMap(from, true).values()
+                : segments.tailMap(before.getKey(), true).values();
+        for (Segment segment : candidates) {
+            if (segment.start >= to) {
+                break;
+            }
+            if (segment.end <= cursor || segment.resolution > resolution * RESOLUTION_SLACK) {
+                continue; // Behind the cursor, or too coarse for this zoom level
+            }
+            if (segment.start > cursor) {
+                pieces.add(new double[] { cursor, segment.start });
+            }
+            cursor = Math.max(cursor, segment.end);
+        }
+        if (cursor < to) {
+            pieces.add(new double[] { cursor, to });
+        }
+        pieces.removeIf(piece -> piece[1] - piece[0] < resolution); // Less than a pixel wide
+        return pieces;
+    }
+
+    /** Adds a segment, trimming whatever it overlaps. */
+    private static void insert(Curve curve, Segment added) {
+        TreeMap<Double, Segment> segments = curve.segments;
+        List<Segment> overlapping = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (segment.start < added.end && segment.end > added.start) {
+                overlapping.add(segment);
+            }
+        }
+        for (Segment segment : overlapping) {
+            segments.remove(segment.start);
+            if (segment.start < added.start) {
+                Segment left = segment.slice(segment.start, added.start);
+                segments.put(left.start, left);
+            }
+            if (segment.end > added.end) {
+                Segment right = segment.slice(added.end, segment.end);
+                segments.put(right.start, right);
+            }
+        }
+        segments.put(added.start, added);
+    }
+
+    /** Drops the segments furthest from the view once too many points are stored. */
+    private static void evict(Curve curve, double center, double from, double to) {
+        TreeMap<Double, Segment> segments = curve.segments;
+        int stored = 0;
+        for (Segment segment : segments.values()) {
+            stored += segment.xs.length;
+        }
+        while (stored > MAX_STORED_POINTS) {
+            Segment furthest = null;
+            double distance = -1;
+            for (Segment segment : segments.values()) {
+                if (segment.end > from && segment.start < to) {
+                    continue; // Visible, keep
+                }
+                double d = Math.min(Math.abs(segment.start - center), Math.abs(segment.end - center));
+                if (d > distance) {
+                    distance = d;
+                    furthest = segment;
+                }
+            }
+            if (furthest == null) {
+                return;
+            }
+            segments.remove(furthest.start);
+            stored -= furthest.xs.length;
+        }
+    }
+
+    /** A dataset of every stored segment per curve, with a gap between segments that don't touch. */
+    private ArrayXYDataset buildDataset() {
+        ArrayXYDataset.Builder builder = new ArrayXYDataset.Builder();
+        for (Curve curve : curves) {
+            int total = 0;
+            for (Segment segment : curve.segments.values()) {
+                total += segment.xs.length + 1;
+            }
+            double[] xs = new double[total];
+            double[] ys = new double[total];
+            int count = 0;
+            Segment previous = null;
+            for (Segment segment : curve.segments.values()) {
+                if (previous != null && segment.start > previous.end) {
+                    xs[count] = (previous.end + segment.start) / 2; // Not sampled in between
+                    ys[count++] = Double.NaN;
+                }
+                System.arraycopy(segment.xs, 0, xs, count, segment.xs.length);
+                System.arraycopy(segment.ys, 0, ys, count, segment.ys.length);
+                count += segment.xs.length;
+                previous = segment;
+            }
+            builder.addSeries(curve.key, Arrays.copyOf(xs, count), Arrays.copyOf(ys, count));
+        }
+        return builder.build();
+    }
+}
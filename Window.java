@@ -2,23 +2,32 @@ import javax.swing.*;
 import javax.swing.border.Border;
 import javax.swing.border.LineBorder;
 import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
 import javax.swing.table.DefaultTableCellRenderer;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
+import org.jfree.chart.ChartUtils;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.PlotOrientation;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
-import net.objecthunter.exp4j.Expression;
-import net.objecthunter.exp4j.ExpressionBuilder;
+import org.jfree.data.Range;
 
 /**
  * The main class for the Mathematica application, representing the graphical user interface.
@@ -31,13 +40,23 @@ public class Window extends JFrame {
     // --- UI Components ---
     private JTextField searchBar; // Input field for user queries or expressions
     private JTable historyTable; // Table to display historical queries and results
+    private HistoryTableModel historyModel; // Paged model behind historyTable, null while disconnected
+    private JTextField historySearchField; // Filters the history table by question / extracted text
+    private Timer historySearchTimer; // Debounces typing in the history search field
+    private SwingWorker<List<HistoryRecord>, Void> historySearchWorker; // Search in flight, if any
+    private SwingWorker<JFreeChartGrapher.Plot, Void> plotWorker; // Multi-equation plot being sampled, if any
     private JTextArea extractedTextArea; // Area to display text extracted from images, editable by user
     private JPanel graphDisplayPanel; // Panel where JFreeChart graphs are displayed
+    private JLabel startupStatusLabel; // Status bar: readiness of each subsystem while starting up
 
     // --- Core Managers/Services ---
-    private DataBase crudManager; // Manages interactions with the database (e.g., saving/loading history)
-    private TextExtract textExtractor; // Handles OCR (Optical Character Recognition) for image files
+    private HistoryStore crudManager; // Stores history (MySQL or the embedded local store, see HistoryStore.open()); null until opened
+    private RetentionJob retentionJob; // Purges old history in the background (daily, or from the delete button)
     private JFreeChartGrapher jfreeChartGrapher; // Helper class for creating and managing JFreeChart plots
+    private OcrPipeline ocrPipeline; // Runs OCR jobs on background workers, off the Event Dispatch Thread
+    private final List<OcrPipeline.OcrJob> activeOcrJobs = new ArrayList<>(); // Jobs still queued or running (EDT-confined)
+    private BatchIngest activeBatch; // Batch ingest currently running, or null (EDT-confined)
+    private final StartupTracker startup = new StartupTracker(); // Background startup of the subsystems below, with timings
 
     // --- UI Color Palette Constants ---
     private static final Color PRIMARY_ACCENT = new Color(70, 130, 180); // Main accent color (e.g., for buttons)
@@ -52,8 +71,9 @@ public class Window extends JFrame {
 
     /**
      * Constructor for the Window class.
-     * Initializes the main application window, sets up the UI components,
-     * establishes database connection, and loads initial history data.
+     * Initializes the main application window and sets up the UI components. The history store,
+     * OCR and charting start in the background (see {@link #startSubsystems()}), so the window
+     * can be shown right away.
      */
     public Window() {
         // --- Frame Setup ---
@@ -73,21 +93,33 @@ public class Window extends JFrame {
         }
 
         // --- Initialize Core Managers ---
-        // Initializes the database manager. Consider making credentials configurable.
-        crudManager = new DataBase("root", "dedakira");
-        if (!crudManager.isConnected()) {
-            // Shows an error dialog if the database connection fails.
-            JOptionPane.showMessageDialog(this,
-                    "Database connection failed. Please check your MySQL server and credentials.",
-                    "Connection Error",
-                    JOptionPane.ERROR_MESSAGE);
-        }
-
-        // Initializes the text extractor (OCR). Needs a placeholder path, could be refined.
-        textExtractor = new TextExtract("");
+        // Both are cheap: worker threads and Tesseract engines are created on first use.
+        // Initializes the background OCR executor, one worker per pooled Tesseract engine.
+        ocrPipeline = new OcrPipeline(TesseractPool.shared().getSize());
         // Initializes the JFreeChart grapher.
         jfreeChartGrapher = new JFreeChartGrapher();
 
+        // Cancels outstanding OCR jobs when the window is closed.
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                for (OcrPipeline.OcrJob job : activeOcrJobs) {
+                    job.cancel();
+                }
+                ocrPipeline.shutdown();
+                if (activeBatch != null) {
+                    activeBatch.cancel();
+                }
+                TesseractPool.shared().shutdown(); // Frees the engines' native handles
+                if (retentionJob != null) {
+                    retentionJob.shutdown();
+                }
+                if (crudManager != null) {
+                    crudManager.close(); // Flushes queued history and closes connections / files
+                }
+            }
+        });
+
         // Sets the background color of the main content pane.
         getContentPane().setBackground(BACKGROUND_DARK);
 
@@ -105,9 +137,136 @@ public class Window extends JFrame {
 
         // Adds the main split pane to the CENTER region of the BorderLayout.
         add(mainSplitPane, BorderLayout.CENTER);
+        // Adds the status bar to the SOUTH region.
+        add(createStatusBar(), BorderLayout.SOUTH);
+
+        // --- Background Startup ---
+        startup.setListener(this::showStartupStatus);
+        startSubsystems(); // History data is loaded once the store is open.
+    }
+
+    /**
+     * Records the first paint of the window for the startup timings.
+     */
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        startup.markFirstPaint();
+    }
 
+    /**
+     * Starts the slow subsystems in parallel in the background: opening the history store (which
+     * may wait on a MySQL connection), loading the Tesseract native library and language data, and
+     * warming up the plotting path. Each reports to the status bar as it becomes ready; until then
+     * the features that need it stay unavailable or, for OCR and plotting, just take longer.
+     */
+    private void startSubsystems() {
+        // Opens the history store; backend and credentials come from system properties (see HistoryStore).
+        startup.start("History", () -> {
+            HistoryStore store = HistoryStore.open();
+            if (!store.isConnected()) {
+                throw new StoreNotConnectedException(store);
+            }
+            return store;
+        }, this::historyStoreOpened);
+        startup.start("OCR", () -> {
+            OcrCache.shared(); // Opens the persistent cache
+            TesseractPool.shared().prime();
+            return null;
+        });
+        startup.start("Charts", () -> {
+            jfreeChartGrapher.warmUp();
+            return null;
+        });
+    }
+
+    /**
+     * Thrown by the history startup task when the store opened but could not connect, so the status
+     * bar reports the failure while the window still keeps the store: it writes history behind and
+     * spills it to disk until the database is back.
+     */
+    private static class StoreNotConnectedException extends Exception {
+        final HistoryStore store;
+
+        StoreNotConnectedException(HistoryStore store) {
+            super("Could not connect to the history store");
+            this.store = store;
+        }
+    }
+
+    /**
+     * Hooks up the history store once it is open, or reports that it could not be. A store that
+     * opened without connecting is still used, so nothing saved in the meantime is lost.
+     */
+    private void historyStoreOpened(HistoryStore store, Throwable error) {
+        if (error instanceof StoreNotConnectedException) {
+            store = ((StoreNotConnectedException) error).store;
+        }
+        if (error != null) {
+            // Shows an error dialog if the database connection fails.
+            JOptionPane.showMessageDialog(this,
+                    "Database connection failed. Please check your MySQL server and credentials,\n"
+                            + "or start with -Dmathematica.store=local to keep history in a local file.",
+                    "Connection Error",
+                    JOptionPane.ERROR_MESSAGE);
+            if (store == null) {
+                loadHistoryData(); // Shows the empty, disconnected table
+                return;
+            }
+        }
+        crudManager = store;
+        // Schedules the daily background purge of old history.
+        retentionJob = new RetentionJob(crudManager);
+        // History rows are written behind; appends each committed batch to the table.
+        crudManager.setHistoryListener(records -> SwingUtilities.invokeLater(() -> appendHistoryRecords(records)));
         // --- Initial Data Load ---
-        loadHistoryData(); // Loads historical data into the history table on startup.
+        loadHistoryData(); // Loads historical data into the history table.
+    }
+
+    /**
+     * Creates the status bar along the bottom of the window, which shows startup progress.
+     *
+     * @return A JPanel holding the status label.
+     */
+    private JPanel createStatusBar() {
+        JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 15, 4));
+        panel.setBackground(BACKGROUND_LIGHT_DARKER);
+        panel.setBorder(BorderFactory.createMatteBorder(1, 0, 0, 0, BORDER_DARK));
+        startupStatusLabel = new JLabel("Starting...");
+        startupStatusLabel.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        startupStatusLabel.setForeground(TEXT_ACCENT);
+        panel.add(startupStatusLabel);
+        return panel;
+    }
+
+    /**
+     * Shows the readiness of each subsystem in the status bar, and the startup time once all are up.
+     */
+    private void showStartupStatus(StartupTracker tracker) {
+        StringBuilder text = new StringBuilder();
+        StringBuilder failures = new StringBuilder();
+        for (String name : tracker.getSubsystems()) {
+            if (text.length() > 0) {
+                text.append("     ");
+            }
+            switch (tracker.getState(name)) {
+                case STARTING:
+                    text.append(name).append(": starting...");
+                    break;
+                case READY:
+                    text.append(name).append(": ready");
+                    break;
+                case FAILED:
+                    text.append(name).append(": unavailable");
+                    failures.append(failures.length() > 0 ? "<br>" : "").append(name).append(": ").append(tracker.getDetail(name));
+                    break;
+            }
+        }
+        if (tracker.isReady()) {
+            text.append("     Started in ").append(tracker.getReadyMillis()).append(" ms");
+        }
+        startupStatusLabel.setText(text.toString());
+        startupStatusLabel.setToolTipText(failures.length() > 0 ? "<html>" + failures + "</html>" : null);
     }
 
     /**
@@ -235,6 +394,23 @@ public class Window extends JFrame {
         });
         buttonRowPanel.add(uploadBtn);
 
+        // --- Batch Upload Button ---
+        JButton batchBtn = new JButton("Batch Upload");
+        batchBtn.setFont(new Font("Segoe UI", Font.BOLD, 16));
+        batchBtn.setForeground(TEXT_LIGHT);
+        batchBtn.setBackground(BACKGROUND_LIGHT_DARKER.darker());
+        batchBtn.setFocusPainted(false);
+        batchBtn.setBorder(BorderFactory.createEmptyBorder(10, 25, 10, 25));
+        batchBtn.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        batchBtn.setToolTipText("Extract text from many images or whole folders at once");
+        batchBtn.addActionListener(e -> openBatchChooser()); // Action when clicked
+        // Mouse listeners for hover effect
+        batchBtn.addMouseListener(new MouseAdapter() {
+            public void mouseEntered(MouseEvent e) { batchBtn.setBackground(BACKGROUND_LIGHT_DARKER.darker().darker()); }
+            public void mouseExited(MouseEvent e) { batchBtn.setBackground(BACKGROUND_LIGHT_DARKER.darker()); }
+        });
+        buttonRowPanel.add(batchBtn);
+
         gbc.gridx = 0;
         gbc.gridy = 1;
         gbc.weighty = 0; // Don't grow vertically
@@ -379,7 +555,33 @@ public class Window extends JFrame {
         historyTitle.setFont(new Font("Segoe UI", Font.BOLD, 22));
         historyTitle.setForeground(TEXT_LIGHT);
         historyTitle.setBorder(BorderFactory.createEmptyBorder(0, 0, 15, 0));
-        panel.add(historyTitle, BorderLayout.NORTH);
+
+        // --- History Search Field ---
+        historySearchField = new JTextField();
+        historySearchField.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        historySearchField.setForeground(TEXT_LIGHT);
+        historySearchField.setBackground(BACKGROUND_DARK);
+        historySearchField.setCaretColor(PRIMARY_ACCENT);
+        historySearchField.setBorder(BorderFactory.createCompoundBorder(
+            new LineBorder(BORDER_DARK, 1),
+            BorderFactory.createEmptyBorder(6, 10, 6, 10)
+        ));
+        historySearchField.setToolTipText("Search past questions and extracted text (matches word beginnings)");
+        // Waits for a pause in typing before querying, so each keystroke doesn't hit the database.
+        historySearchTimer = new Timer(250, e -> runHistorySearch());
+        historySearchTimer.setRepeats(false);
+        historySearchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { historySearchTimer.restart(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { historySearchTimer.restart(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { historySearchTimer.restart(); }
+        });
+
+        JPanel historyHeader = new JPanel(new BorderLayout());
+        historyHeader.setOpaque(false);
+        historyHeader.add(historyTitle, BorderLayout.NORTH);
+        historyHeader.add(historySearchField, BorderLayout.SOUTH);
+        historyHeader.setBorder(BorderFactory.createEmptyBorder(0, 0, 10, 0));
+        panel.add(historyHeader, BorderLayout.NORTH);
 
         // --- History Table Setup ---
         historyTable = new JTable();
@@ -393,6 +595,7 @@ public class Window extends JFrame {
         historyTable.setGridColor(BORDER_DARK); // Color of grid lines
         historyTable.setShowVerticalLines(false); // Hides vertical grid lines
         historyTable.setShowHorizontalLines(true); // Shows horizontal grid lines
+        historyTable.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION); // Several rows can be plotted together
 
         // --- Table Header Customization ---
         historyTable.getTableHeader().setFont(new Font("Segoe UI", Font.BOLD, 14));
@@ -412,26 +615,49 @@ public class Window extends JFrame {
         panel.add(scrollPane, BorderLayout.CENTER);
 
         // --- Delete History Button ---
-        JButton deleteHistoryBtn = new JButton("Delete Old History (15 Days)");
+        int retentionDays = RetentionJob.configuredDays(); // The job itself starts with the history store
+        String deleteLabel = "Delete Old History (" + retentionDays + " Days)";
+        JButton deleteHistoryBtn = new JButton(deleteLabel);
         deleteHistoryBtn.setFont(new Font("Segoe UI", Font.BOLD, 15));
         deleteHistoryBtn.setForeground(TEXT_LIGHT);
         deleteHistoryBtn.setBackground(DELETE_BUTTON_COLOR);
         deleteHistoryBtn.setFocusPainted(false);
         deleteHistoryBtn.setBorder(BorderFactory.createEmptyBorder(10, 15, 10, 15));
         deleteHistoryBtn.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
-        deleteHistoryBtn.setToolTipText("Permanently delete history entries older than 15 days");
+        deleteHistoryBtn.setToolTipText("Permanently delete history entries older than " + retentionDays + " days");
         deleteHistoryBtn.addActionListener(e -> {
             // Confirmation dialog before deleting
-            if (crudManager != null && crudManager.isConnected()) {
+            if (crudManager != null && crudManager.isConnected() && retentionJob != null) {
                 int confirm = JOptionPane.showConfirmDialog(this,
-                    "Are you sure you want to delete all history older than 15 days?\nThis action cannot be undone.",
+                    "Are you sure you want to delete all history older than " + retentionDays + " days?\nThis action cannot be undone.",
                     "Confirm Deletion", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
                 if (confirm == JOptionPane.YES_OPTION) {
-                    int deletedCount = crudManager.Delete(15); // Calls DataBase method to delete
-                    JOptionPane.showMessageDialog(this,
-                        deletedCount + " old history entries deleted.",
-                        "Deletion Complete", JOptionPane.INFORMATION_MESSAGE);
-                    loadHistoryData(); // Reloads history to update the table
+                    // Runs the purge in the background, in small chunks; the button shows progress meanwhile.
+                    boolean started = retentionJob.runNow(new RetentionJob.Listener() {
+                        @Override
+                        public void onProgress(int deletedSoFar) {
+                            SwingUtilities.invokeLater(() -> deleteHistoryBtn.setText("Deleting... " + deletedSoFar + " entries"));
+                        }
+
+                        @Override
+                        public void onFinished(int totalDeleted, boolean failed) {
+                            SwingUtilities.invokeLater(() -> {
+                                deleteHistoryBtn.setText(deleteLabel);
+                                deleteHistoryBtn.setEnabled(true);
+                                JOptionPane.showMessageDialog(Window.this,
+                                    totalDeleted + " old history entries deleted." + (failed ? "\nThe database stopped responding; the rest will be removed on the next run." : ""),
+                                    "Deletion Complete", failed ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+                                loadHistoryData(); // Reloads history to update the table
+                            });
+                        }
+                    });
+                    if (started) {
+                        deleteHistoryBtn.setEnabled(false);
+                        deleteHistoryBtn.setText("Deleting...");
+                    } else {
+                        JOptionPane.showMessageDialog(this, "Old history is already being deleted.",
+                            "Deletion In Progress", JOptionPane.INFORMATION_MESSAGE);
+                    }
                 }
             } else {
                 // Warns user if database is not connected
@@ -446,8 +672,24 @@ public class Window extends JFrame {
             public void mouseExited(MouseEvent e) { deleteHistoryBtn.setBackground(DELETE_BUTTON_COLOR); }
         });
 
-        JPanel bottomPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 0, 15)); // Centers the button
+        // --- Plot Selected History Button ---
+        JButton plotHistoryBtn = new JButton("Plot Selected");
+        plotHistoryBtn.setFont(new Font("Segoe UI", Font.BOLD, 15));
+        plotHistoryBtn.setForeground(TEXT_LIGHT);
+        plotHistoryBtn.setBackground(PRIMARY_ACCENT.darker());
+        plotHistoryBtn.setFocusPainted(false);
+        plotHistoryBtn.setBorder(BorderFactory.createEmptyBorder(10, 15, 10, 15));
+        plotHistoryBtn.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        plotHistoryBtn.setToolTipText("Overlay the equations of all selected rows in one graph");
+        plotHistoryBtn.addActionListener(e -> plotSelectedHistory());
+        plotHistoryBtn.addMouseListener(new MouseAdapter() {
+            public void mouseEntered(MouseEvent e) { plotHistoryBtn.setBackground(PRIMARY_ACCENT.darker().darker()); }
+            public void mouseExited(MouseEvent e) { plotHistoryBtn.setBackground(PRIMARY_ACCENT.darker()); }
+        });
+
+        JPanel bottomPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 15)); // Centers the buttons
         bottomPanel.setOpaque(false);
+        bottomPanel.add(plotHistoryBtn);
         bottomPanel.add(deleteHistoryBtn);
         panel.add(bottomPanel, BorderLayout.SOUTH);
 
@@ -455,49 +697,126 @@ public class Window extends JFrame {
     }
 
     /**
-     * Attempts to plot a given mathematical equation using JFreeChartGrapher.
-     * Displays the generated graph or an error message if plotting fails.
+     * Attempts to plot a given mathematical equation using JFreeChartGrapher, sampled in the
+     * background. Displays the generated graph or an error message if plotting fails.
      *
      * @param equationToParse The mathematical equation string to be parsed and plotted.
      * @param originalQuery   The original query string for display purposes (e.g., in dialogs).
-     * @return true if the graph was successfully plotted, false otherwise.
      */
-    private boolean attemptPlotEquation(String equationToParse, String originalQuery) {
-        String plotTitle = "Plot of " + originalQuery;
-        String processedEquation = equationToParse;
-        boolean graphWasPlotted = false;
-
+    private void attemptPlotEquation(String equationToParse, String originalQuery) {
         // Removes "y =" prefix if present for easier parsing by exp4j.
-        if (processedEquation.toLowerCase().startsWith("y =")) {
-            processedEquation = processedEquation.substring(processedEquation.toLowerCase().indexOf("y =") + "y =".length()).trim();
-        }
-
-        try {
-            JPanel chartPanel = jfreeChartGrapher.createChartPanelForEquation(processedEquation, plotTitle);
-
-            if (chartPanel != null) {
-                displayCustomPanel(chartPanel); // Displays the generated chart
-                JOptionPane.showMessageDialog(this, "Graph for '" + originalQuery + "' displayed.", "Plot Success", JOptionPane.INFORMATION_MESSAGE);
-                graphWasPlotted = true;
-            } else {
+        List<String> equations = Collections.singletonList(stripAssignment(equationToParse));
+        plotInBackground(equations, "Plot of " + originalQuery,
+            () -> JOptionPane.showMessageDialog(this, "Graph for '" + originalQuery + "' displayed.", "Plot Success", JOptionPane.INFORMATION_MESSAGE),
+            () -> {
                 // Informs user if plotting failed (e.g., invalid equation)
                 JOptionPane.showMessageDialog(this,
                     "Could not plot equation: '" + originalQuery + "'.\n" +
                     "Please ensure it's a valid 'y = f(x)' format (e.g., 'x^2', '8*x - 9', '(8 - 2*x) / 3').",
                     "Plotting Error", JOptionPane.WARNING_MESSAGE);
                 clearGraphDisplay(); // Clears the graph area
-                graphWasPlotted = false;
+            });
+    }
+
+    /**
+     * Overlays every candidate expression that can be plotted in one chart, sampled in the background.
+     * No dialogs are shown for candidates that fail, since most pages mix equations with plain text.
+     *
+     * @param candidates      Candidate expressions, typically one per text region of an uploaded page.
+     * @param nothingPlotted  Run on the EDT instead if there are fewer than two candidates or none of
+     *                        them could be plotted.
+     */
+    private void plotCandidates(List<String> candidates, Runnable nothingPlotted) {
+        if (candidates == null || candidates.size() < 2) {
+            nothingPlotted.run(); // A single region is the same as the whole text; let the caller report errors
+            return;
+        }
+        List<String> equations = new ArrayList<>();
+        for (String candidate : candidates) {
+            equations.add(stripAssignment(candidate));
+        }
+        plotInBackground(equations, "Equations on the page", () -> { }, nothingPlotted);
+    }
+
+    /**
+     * Compiles and samples the equations on a SwingWorker, like OCR, so the EDT stays responsive while
+     * expensive curves are sampled, then shows the chart in done(). A newer plot supersedes one that
+     * is still sampling.
+     *
+     * @param plotted        Run on the EDT once the chart is shown.
+     * @param nothingPlotted Run on the EDT if none of the equations could be plotted.
+     */
+    private void plotInBackground(List<String> equations, String title, Runnable plotted, Runnable nothingPlotted) {
+        if (plotWorker != null) {
+            plotWorker.cancel(false); // Its chart would be replaced anyway
+        }
+        plotWorker = new SwingWorker<JFreeChartGrapher.Plot, Void>() {
+            @Override
+            protected JFreeChartGrapher.Plot doInBackground() {
+                return jfreeChartGrapher.samplePlot(equations, title);
             }
-        } catch (Exception e) {
-            // Catches unexpected errors during plotting
-            JOptionPane.showMessageDialog(this,
-                "An unexpected error occurred while plotting '" + originalQuery + "': " + e.getMessage(),
-                "Plotting Error", JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
-            clearGraphDisplay();
-            graphWasPlotted = false;
+
+            @Override
+            protected void done() {
+                if (isCancelled() || plotWorker != this) {
+                    return;
+                }
+                plotWorker = null;
+                JFreeChartGrapher.Plot plot;
+                try {
+                    plot = get();
+                } catch (Exception e) {
+                    System.err.println("Plotting failed: " + e.getMessage());
+                    plot = null;
+                }
+                if (plot != null) {
+                    displayCustomPanel(jfreeChartGrapher.createChartPanel(plot));
+                    plotted.run();
+                } else {
+                    nothingPlotted.run();
+                }
+            }
+        };
+        plotWorker.execute();
+    }
+
+    /**
+     * Overlays the equations of every selected history row in one chart. Rows holding several lines
+     * (e.g. the text of a whole page) contribute one candidate per line.
+     */
+    private void plotSelectedHistory() {
+        int[] rows = historyTable.getSelectedRows();
+        if (rows.length == 0) {
+            JOptionPane.showMessageDialog(this, "Select one or more history rows to plot (Ctrl/Shift-click for several).",
+                "Nothing Selected", JOptionPane.INFORMATION_MESSAGE);
+            return;
         }
-        return graphWasPlotted;
+        List<String> equations = new ArrayList<>();
+        for (int row : rows) {
+            Object question = historyTable.getModel().getValueAt(historyTable.convertRowIndexToModel(row), 1);
+            if (question != null) {
+                for (String line : TextExtract.splitCandidates(question.toString())) {
+                    equations.add(stripAssignment(line));
+                }
+            }
+        }
+        plotInBackground(equations, rows.length == 1 ? "Plot of history entry" : "Plot of " + rows.length + " history entries", () -> { },
+            () -> JOptionPane.showMessageDialog(this, "None of the selected entries contains an equation that can be plotted.",
+                "Plotting Error", JOptionPane.WARNING_MESSAGE));
+    }
+
+    /**
+     * Removes a leading "y =" from an equation so exp4j sees only the right-hand side.
+     *
+     * @param equation The equation as typed or extracted.
+     * @return The expression in terms of x.
+     */
+    static String stripAssignment(String equation) {
+        String processedEquation = equation.trim();
+        if (processedEquation.toLowerCase().startsWith("y =")) {
+            processedEquation = processedEquation.substring("y =".length()).trim();
+        }
+        return processedEquation;
     }
 
     /**
@@ -574,16 +893,18 @@ public class Window extends JFrame {
     private void performSearch() {
         String query = searchBar.getText().trim();
         if (!query.isEmpty()) {
-            if (crudManager != null && crudManager.isConnected()) {
+            if (crudManager != null) {
                 attemptPlotEquation(query, query); // Attempts to plot the query directly
-                crudManager.CreateData("N/A (text query)", query); // Saves the text query to database
-                JOptionPane.showMessageDialog(this, "Query submitted: \"" + query + "\"\n(Saved to database history)", "Search Action", JOptionPane.INFORMATION_MESSAGE);
-                loadHistoryData(); // Reloads history table to show new entry
+                // Queues the text query for the database (written behind, or spilled to disk while it is down)
+                crudManager.CreateData("N/A (text query)", query);
+                String saved = crudManager.isConnected() ? "(Saved to database history)"
+                        : "(Database not connected, it will be saved to history once it reconnects)";
+                JOptionPane.showMessageDialog(this, "Query submitted: \"" + query + "\"\n" + saved, "Search Action", JOptionPane.INFORMATION_MESSAGE);
                 // Resets extracted text area to its default message.
                 extractedTextArea.setText("Extracted text from images will appear here. You can edit it before plotting.");
             } else {
-                // Warns user if database is not connected
-                JOptionPane.showMessageDialog(this, "Database not connected. Cannot save search query.", "Error", JOptionPane.ERROR_MESSAGE);
+                // Warns user if there is no history store at all
+                JOptionPane.showMessageDialog(this, "History unavailable. Cannot save search query.", "Error", JOptionPane.ERROR_MESSAGE);
                 clearGraphDisplay();
             }
             searchBar.setText(""); // Clears the search bar
@@ -595,8 +916,8 @@ public class Window extends JFrame {
 
     /**
      * Opens a file chooser dialog to allow the user to select an image file.
-     * Upon selection, performs OCR on the image, displays extracted text,
-     * attempts to plot it, and saves the entry to history.
+     * Upon selection, the image is queued on the OCR pipeline; the extracted text is displayed,
+     * plotted and saved to history once the background job completes.
      */
     private void openFileChooser() {
         JFileChooser fc = new JFileChooser();
@@ -605,10 +926,7 @@ public class Window extends JFrame {
         fc.setFileFilter(new javax.swing.filechooser.FileFilter() {
             @Override
             public boolean accept(File f) {
-                if (f.isDirectory()) return true;
-                String name = f.getName().toLowerCase();
-                return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png") ||
-                       name.endsWith(".gif") || name.endsWith(".bmp") || name.endsWith(".webp");
+                return f.isDirectory() || BatchIngest.isImageFile(f);
             }
 
             @Override
@@ -620,71 +938,265 @@ public class Window extends JFrame {
         if (val == JFileChooser.APPROVE_OPTION) { // If user selects a file
             File selectedFile = fc.getSelectedFile();
             if (selectedFile != null) {
-                String imagePath = selectedFile.getAbsolutePath();
+                submitImageForExtraction(selectedFile.getAbsolutePath());
+            }
+        }
+    }
 
-                // Performs OCR using the TextExtract instance
-                String extractedText = textExtractor.perform(imagePath);
-                extractedTextArea.setText(extractedText); // Displays extracted text
+    /**
+     * Opens a file chooser that accepts several images and/or folders, then ingests every
+     * image found in the selection as a batch. Results stream into the history table and the
+     * database as each image finishes.
+     */
+    private void openBatchChooser() {
+        if (activeBatch != null) {
+            int choice = JOptionPane.showConfirmDialog(this,
+                "A batch is already being processed. Cancel it?", "Batch Upload", JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE);
+            if (choice == JOptionPane.YES_OPTION && activeBatch != null) {
+                activeBatch.cancel(); // The summary arrives through onFinished once running images finish
+                extractedTextArea.setText("Batch: cancelling...");
+            }
+            return;
+        }
 
-                // Attempts to plot the extracted text if it's valid
-                if (!extractedText.trim().isEmpty() && !extractedText.trim().equalsIgnoreCase("File::Error")) {
-                    attemptPlotEquation(extractedText.trim(), extractedText.trim());
-                } else {
-                    JOptionPane.showMessageDialog(this, "No valid text extracted from image to plot.", "Information", JOptionPane.INFORMATION_MESSAGE);
-                    clearGraphDisplay();
-                }
+        JFileChooser fc = new JFileChooser();
+        fc.setMultiSelectionEnabled(true); // Allows many files and folders to be selected
+        fc.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        fc.setDialogTitle("Select images or folders to ingest");
+        if (fc.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
 
-                // Saves image path and extracted text to database history
-                if (crudManager != null && crudManager.isConnected()) {
-                    crudManager.CreateData(imagePath, extractedText);
-                    JOptionPane.showMessageDialog(this, "Image selected and text extracted.\nSaved to history.", "Image Upload", JOptionPane.INFORMATION_MESSAGE);
-                    loadHistoryData(); // Reloads history to show new entry
-                } else {
-                    JOptionPane.showMessageDialog(this, "Database not connected. Image uploaded and text extracted, but not saved to history.", "Warning", JOptionPane.WARNING_MESSAGE);
-                }
-            }
+        List<File> images = BatchIngest.collectImages(fc.getSelectedFiles());
+        if (images.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "No image files were found in the selection.",
+                "Batch Upload", JOptionPane.INFORMATION_MESSAGE);
+            return;
         }
+
+        extractedTextArea.setText("Batch: processing " + images.size() + " images...");
+        activeBatch = new BatchIngest(TesseractPool.shared().getSize(), crudManager);
+        activeBatch.start(images, new BatchIngest.Listener() {
+            @Override
+            public void onImageDone(String imagePath, String extractedText, boolean failed, int completed, int total) {
+                extractedTextArea.setText("Batch: " + completed + "/" + total + " processed\n\n"
+                    + new File(imagePath).getName() + ":\n" + extractedText);
+            }
+
+            @Override
+            public void onFinished(BatchIngest.Summary summary) {
+                activeBatch = null;
+                String message = summary.isCancelled()
+                    ? String.format("Batch cancelled: %d of %d images processed in %.1f s.%n%d succeeded, %d failed, %d skipped.",
+                        summary.getCompleted(), summary.getTotal(), summary.getElapsedSeconds(),
+                        summary.getSucceeded(), summary.getFailed(), summary.getSkipped())
+                    : String.format("Batch complete: %d images in %.1f s (%.2f images/sec).%n%d succeeded, %d failed.",
+                        summary.getTotal(), summary.getElapsedSeconds(), summary.getImagesPerSecond(),
+                        summary.getSucceeded(), summary.getFailed());
+                JOptionPane.showMessageDialog(Window.this, message, "Batch Upload", JOptionPane.INFORMATION_MESSAGE);
+            }
+        });
     }
 
     /**
-     * Loads historical data from the database into the `historyTable`.
-     * Refreshes the table model and applies visual formatting.
+     * Queues an image on the OCR pipeline. Progress is shown in the extracted text area while
+     * the job runs; the UI stays responsive and further images may be submitted meanwhile.
+     *
+     * @param imagePath Absolute path of the image to extract text from.
      */
-    private void loadHistoryData() {
-        if (crudManager != null && crudManager.isConnected()) {
-            DefaultTableModel model = crudManager.getHistoryTableModel(); // Retrieves data from DataBase class
-            historyTable.setModel(model); // Sets the table model
+    private void submitImageForExtraction(String imagePath) {
+        OcrPipeline.OcrJob job = ocrPipeline.submit(imagePath, new OcrPipeline.Listener() {
+            @Override
+            public void onProgress(OcrPipeline.OcrJob job, String message) {
+                extractedTextArea.setText(message);
+            }
 
-            // Adjusts column widths for better display (assuming at least 3 columns: ID, Source, Question/Result)
-            if (model.getColumnCount() >= 3) {
-                historyTable.getColumnModel().getColumn(0).setPreferredWidth(80); // ID
-                historyTable.getColumnModel().getColumn(1).setPreferredWidth(180); // Source (e.g., filename)
-                historyTable.getColumnModel().getColumn(2).setPreferredWidth(400); // Question/Result snippet
-                historyTable.getColumnModel().getColumn(3).setPreferredWidth(150); // Timestamp
+            @Override
+            public void onResult(OcrPipeline.OcrJob job, String extractedText, List<String> candidates) {
+                activeOcrJobs.remove(job);
+                handleExtractedText(job.getImagePath(), extractedText, candidates);
+            }
+
+            @Override
+            public void onFailure(OcrPipeline.OcrJob job, Exception error) {
+                activeOcrJobs.remove(job);
+                extractedTextArea.setText("Error extracting text: " + error.getMessage());
+                JOptionPane.showMessageDialog(Window.this,
+                    "Text extraction failed for '" + job.getFileName() + "': " + error.getMessage(),
+                    "OCR Error", JOptionPane.ERROR_MESSAGE);
             }
+        });
+
+        if (job != null) {
+            activeOcrJobs.add(job);
+        } else {
+            // The bounded queue is full; ask the user to wait rather than piling up more work.
+            JOptionPane.showMessageDialog(this,
+                "Too many images are already being processed. Please wait for them to finish and try again.",
+                "OCR Busy", JOptionPane.WARNING_MESSAGE);
+        }
+    }
 
-            // Centers table header text
-            DefaultTableCellRenderer headerRenderer = (DefaultTableCellRenderer) historyTable.getTableHeader().getDefaultRenderer();
-            headerRenderer.setHorizontalAlignment(SwingConstants.CENTER);
+    /**
+     * Displays the text extracted from an image, attempts to plot it and saves the entry to history.
+     * Runs on the EDT once the background OCR job completes; the database write happens off the EDT.
+     *
+     * @param imagePath     The path of the image the text was extracted from.
+     * @param extractedText The text returned by the OCR job.
+     * @param candidates    The text of each region found on the page, in reading order.
+     */
+    private void handleExtractedText(String imagePath, String extractedText, List<String> candidates) {
+        extractedTextArea.setText(extractedText); // Displays extracted text
 
-            // Centers table cell content
-            DefaultTableCellRenderer cellRenderer = new DefaultTableCellRenderer();
-            cellRenderer.setHorizontalAlignment(SwingConstants.CENTER);
-            historyTable.setDefaultRenderer(Object.class, cellRenderer);
+        // Attempts to plot the extracted text if it's valid, one region (candidate expression) at a time
+        if (!extractedText.trim().isEmpty() && !extractedText.trim().equalsIgnoreCase("File::Error")) {
+            plotCandidates(candidates, () -> attemptPlotEquation(extractedText.trim(), extractedText.trim()));
+        } else {
+            JOptionPane.showMessageDialog(this, "No valid text extracted from image to plot.", "Information", JOptionPane.INFORMATION_MESSAGE);
+            clearGraphDisplay();
+        }
 
+        // Saves image path and extracted text to database history (queued, the table refreshes once it is written;
+        // while the database is down the store spills it to disk and writes it on reconnect)
+        if (crudManager != null) {
+            crudManager.CreateData(imagePath, extractedText);
+            if (crudManager.isConnected()) {
+                JOptionPane.showMessageDialog(this, "Image selected and text extracted.\nSaved to history.", "Image Upload", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(this, "Database not connected. Image uploaded and text extracted;\nit will be saved to history once the database reconnects.", "Warning", JOptionPane.WARNING_MESSAGE);
+            }
+        } else {
+            JOptionPane.showMessageDialog(this, "History unavailable. Image uploaded and text extracted, but not saved to history.", "Warning", JOptionPane.WARNING_MESSAGE);
+        }
+    }
+
+    /**
+     * Loads historical data from the database into the `historyTable`.
+     * The table gets a fresh paged model; rows are fetched in the background a page at a time
+     * as the user scrolls, so this returns immediately.
+     */
+    private void loadHistoryData() {
+        if (crudManager != null && crudManager.isConnected()) {
+            historyModel = crudManager.getHistoryTableModel(); // Paged model backed by the history store
+            if (historySearchField.getText().trim().isEmpty()) {
+                applyHistoryModel(historyModel);
+            } else {
+                runHistorySearch(); // Keeps showing search results, refreshed after the change
+            }
             System.out.println("Database history data loaded into UI.");
         } else {
             System.err.println("Database not connected or manager not initialized. Cannot load history data.");
             // Sets an empty table model if no database connection
+            historyModel = null;
             historyTable.setModel(new DefaultTableModel(new Vector<>(), new Vector<>()));
         }
     }
 
+    /**
+     * Runs the history search for the text in the search field on a background worker and shows
+     * the ranked results in the history table. An empty field restores the full, paged history.
+     */
+    private void runHistorySearch() {
+        String query = historySearchField.getText().trim();
+        if (historySearchWorker != null) {
+            historySearchWorker.cancel(true); // Results for older text are no longer wanted
+            historySearchWorker = null;
+        }
+        if (query.isEmpty()) {
+            if (historyModel != null) {
+                applyHistoryModel(historyModel); // Back to the paged history, where the user left it
+            } else {
+                loadHistoryData();
+            }
+            return;
+        }
+        if (crudManager == null || !crudManager.isConnected()) {
+            return;
+        }
+
+        historySearchWorker = new SwingWorker<List<HistoryRecord>, Void>() {
+            @Override
+            protected List<HistoryRecord> doInBackground() throws Exception {
+                return crudManager.searchHistory(query, HistoryStore.SearchMode.PREFIX, 0, 200);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || historySearchWorker != this) {
+                    return;
+                }
+                historySearchWorker = null;
+                try {
+                    applyHistoryModel(new HistoryTableModel(get()));
+                } catch (Exception e) {
+                    System.err.println("History search failed: " + e.getMessage());
+                }
+            }
+        };
+        historySearchWorker.execute();
+    }
+
+    /**
+     * Appends history rows that were just written to the database, without re-querying the table.
+     * Falls back to a full load if no paged model is installed yet (e.g. the database just came back).
+     *
+     * @param records The committed records, oldest first.
+     */
+    private void appendHistoryRecords(List<HistoryRecord> records) {
+        if (historyModel != null) {
+            historyModel.appendRecords(records);
+        } else {
+            loadHistoryData();
+        }
+    }
+
+    /**
+     * Sets the history table model and applies column widths and centering.
+     *
+     * @param model The table model loaded from the database.
+     */
+    private void applyHistoryModel(TableModel model) {
+        historyTable.setModel(model); // Sets the table model
+
+        // Adjusts column widths for better display (3 columns: Source, Question/Result, Timestamp)
+        if (model.getColumnCount() >= 3) {
+            historyTable.getColumnModel().getColumn(0).setPreferredWidth(180); // Source (e.g., filename)
+            historyTable.getColumnModel().getColumn(1).setPreferredWidth(400); // Question/Result snippet
+            historyTable.getColumnModel().getColumn(2).setPreferredWidth(150); // Timestamp
+        }
+
+        // Centers table header text
+        DefaultTableCellRenderer headerRenderer = (DefaultTableCellRenderer) historyTable.getTableHeader().getDefaultRenderer();
+        headerRenderer.setHorizontalAlignment(SwingConstants.CENTER);
+
+        // Centers table cell content
+        DefaultTableCellRenderer cellRenderer = new DefaultTableCellRenderer();
+        cellRenderer.setHorizontalAlignment(SwingConstants.CENTER);
+        historyTable.setDefaultRenderer(Object.class, cellRenderer);
+    }
+
     /**
      * Static nested class responsible for creating JFreeChart panels for mathematical equations.
      * This class uses the exp4j library to parse and evaluate expressions.
      */
     static class JFreeChartGrapher {
+        private static final double X_MIN = -10.0;
+        private static final double X_MAX = 10.0;
+        private static final double OUTLIER_FACTOR = 4.0; // Clip the y axis when values near a pole are this far beyond the typical range
+        private static final Metrics.Timer CHART_TIMER = Metrics.timer("plot.chart"); // Compile, sample and build one chart
+        private static final Metrics.Timer PNG_TIMER = Metrics.timer("plot.png"); // The same, drawn to a PNG file
+
+        private int pointBudget = AdaptiveSampler.DEFAULT_BUDGET;
+
+        /**
+         * Sets how many evaluations each plotted curve may use.
+         *
+         * @param points The point budget per curve.
+         */
+        public void setPointBudget(int points) {
+            this.pointBudget = points;
+        }
 
         /**
          * Creates a ChartPanel containing a line chart for the given mathematical equation.
@@ -695,68 +1207,231 @@ public class Window extends JFrame {
          * @return A JPanel containing the chart, or null if an error occurs during plotting.
          */
         public JPanel createChartPanelForEquation(String equation, String title) {
-            XYSeries series = new XYSeries("y = " + equation);
+            return createChartPanelForEquations(Collections.singletonList(equation), title);
+        }
+
+        /**
+         * Loads and warms up the plotting path (expression compiler, sampler, JFreeChart and Java2D)
+         * by drawing a small chart off screen, so the first real plot doesn't pay for it. Safe to
+         * call off the EDT.
+         */
+        public void warmUp() {
+            CompiledExpression expression = CompiledExpression.compile("sin(x) * x^2");
+            AdaptiveSampler.Samples samples = ParallelSampler.sampleAll(Collections.singletonList(
+                    new ParallelSampler.Request(expression, X_MIN, X_MAX, pointBudget))).get(0);
+            ArrayXYDataset dataset = new ArrayXYDataset.Builder().addSeries("y", samples.getXs(), samples.getYs()).build();
+            JFreeChart chart = ChartFactory.createXYLineChart("", "X", "Y", dataset, PlotOrientation.VERTICAL, true, false, false);
+            BufferedImage image = new BufferedImage(320, 200, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = image.createGraphics();
             try {
-                // Builds an expression from the input string, recognizing 'x' as a variable.
-                Expression expression = new ExpressionBuilder(equation)
-                        .variables("x")
-                        .build();
-
-                // Iterates through x-values to calculate corresponding y-values.
-                // Plots from x = -10 to 10 with a step of 0.1.
-                for (double x = -10; x <= 10; x += 0.1) {
-                    try {
-                        expression.setVariable("x", x);
-                        double y = expression.evaluate();
-                        // Only add finite values to avoid issues with division by zero, log of non-positive, etc.
-                        if (Double.isFinite(y)) {
-                            series.add(x, y);
-                        }
-                    } catch (IllegalArgumentException e) {
-                        // Catches exp4j specific errors for invalid operations at a point (e.g., log(0)).
-                        // These points are skipped due to the isFinite() check.
-                        // Can be logged for debugging if needed, but often okay to ignore for plotting.
-                        System.err.println("Warning: Skipping point for x=" + x + " due to calculation error: " + e.getMessage());
-                    }
-                }
+                chart.draw(g, new Rectangle(image.getWidth(), image.getHeight()));
+            } finally {
+                g.dispose();
+            }
+        }
 
-                XYSeriesCollection dataset = new XYSeriesCollection();
-                dataset.addSeries(series);
-
-                // Creates the XY line chart using JFreeChart.
-                JFreeChart chart = ChartFactory.createXYLineChart(
-                    title,               // Chart title
-                    "X",                 // X-axis label
-                    "Y",                 // Y-axis label
-                    dataset,             // Data
-                    PlotOrientation.VERTICAL, // Plot orientation
-                    true,                // Show legend
-                    true,                // Tooltips
-                    false                // URLs
-                );
-
-                // --- Customizing Chart Appearance ---
-                chart.setBackgroundPaint(new Color(60, 65, 75)); // Chart background
-                chart.getTitle().setPaint(new Color(220, 220, 220)); // Title color
-                chart.getXYPlot().setBackgroundPaint(new Color(40, 44, 52)); // Plot area background
-                chart.getXYPlot().setDomainGridlinePaint(new Color(80, 85, 95)); // X-axis grid lines
-                chart.getXYPlot().setRangeGridlinePaint(new Color(80, 85, 95)); // Y-axis grid lines
-
-                chart.getXYPlot().getDomainAxis().setLabelPaint(new Color(170, 180, 200)); // X-axis label color
-                chart.getXYPlot().getDomainAxis().setTickLabelPaint(new Color(170, 180, 200)); // X-axis tick label color
-                chart.getXYPlot().getRangeAxis().setLabelPaint(new Color(170, 180, 200)); // Y-axis label color
-                chart.getXYPlot().getRangeAxis().setTickLabelPaint(new Color(170, 180, 200)); // Y-axis tick label color
-
-                chart.getLegend().setItemPaint(new Color(220, 220, 220)); // Legend item color
-
-                return new ChartPanel(chart); // Returns a JPanel that displays the chart
+        /**
+         * Creates a ChartPanel overlaying several equations in one chart, e.g. every equation found on
+         * an uploaded page. Equations that don't parse are skipped; all curves are sampled in parallel.
+         *
+         * @param equations The equations to plot, each in terms of 'x'.
+         * @param title     The title for the chart.
+         * @return A JPanel containing the chart, or null if none of the equations could be plotted.
+         */
+        public JPanel createChartPanelForEquations(List<String> equations, String title) {
+            Plot plot = samplePlot(equations, title);
+            return plot != null ? createChartPanel(plot) : null;
+        }
 
+        /**
+         * The background half of {@link #createChartPanelForEquations}: compiles and samples the
+         * equations and builds the chart, without touching Swing. Safe to call off the EDT.
+         *
+         * @return The chart and its data, or null if none of the equations could be plotted.
+         */
+        Plot samplePlot(List<String> equations, String title) {
+            long start = CHART_TIMER.start();
+            try {
+                return buildPlot(equations, title, X_MIN, X_MAX, pointBudget);
             } catch (Exception e) {
-                // Catches general errors during chart creation (e.g., malformed expression).
-                System.err.println("Error creating chart for equation '" + equation + "': " + e.getMessage());
+                // Catches general errors during chart creation.
+                System.err.println("Error creating chart for " + equations + ": " + e.getMessage());
                 e.printStackTrace();
                 return null; // Returns null if chart cannot be created
+            } finally {
+                CHART_TIMER.stop(start);
+            }
+        }
+
+        /**
+         * Renders the equations to a PNG file off screen, as {@link #createChartPanelForEquations}
+         * would display them. Needs no display, so it works headless.
+         *
+         * @param equations The equations to plot, each in terms of 'x'.
+         * @param title     The title for the chart.
+         * @param file      The PNG file to write.
+         * @param width     Image width in pixels.
+         * @param height    Image height in pixels.
+         * @return true if the file was written, false if none of the equations could be plotted.
+         * @throws IOException If the file cannot be written.
+         */
+        public boolean writeChartAsPng(List<String> equations, String title, File file, int width, int height) throws IOException {
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            if (!writeChartAsPng(equations, title, png, width, height)) {
+                return false;
+            }
+            Files.write(file.toPath(), png.toByteArray());
+            return true;
+        }
+
+        /**
+         * Renders the equations as a PNG image to a stream, e.g. an HTTP response.
+         *
+         * @return true if the image was written, false if none of the equations could be plotted
+         *         (nothing is written then).
+         * @throws IOException If the stream cannot be written.
+         * @see #writeChartAsPng(List, String, File, int, int)
+         */
+        public boolean writeChartAsPng(List<String> equations, String title, OutputStream out, int width, int height) throws IOException {
+            return writeChartAsPng(equations, title, out, width, height, X_MIN, X_MAX, pointBudget);
+        }
+
+        /**
+         * Renders the equations over x = xMin to xMax as a PNG image to a stream. Leaves this
+         * grapher's own settings alone, so one grapher can serve concurrent requests with
+         * different ranges.
+         *
+         * @param xMin   Left end of the plotted range.
+         * @param xMax   Right end of the plotted range.
+         * @param points The point budget per curve.
+         * @see #writeChartAsPng(List, String, OutputStream, int, int)
+         */
+        public boolean writeChartAsPng(List<String> equations, String title, OutputStream out, int width, int height,
+                                       double xMin, double xMax, int points) throws IOException {
+            long start = PNG_TIMER.start();
+            try {
+                Plot plot = buildPlot(equations, title, xMin, xMax, points);
+                if (plot == null) {
+                    return false;
+                }
+                ChartUtils.writeChartAsPNG(out, plot.chart, width, height);
+                return true;
+            } finally {
+                PNG_TIMER.stop(start);
+            }
+        }
+
+        /**
+         * The EDT half of {@link #createChartPanelForEquations}: wraps a sampled chart in a panel that
+         * decimates and re-samples as the user zooms.
+         *
+         * @param plot A chart from {@link #samplePlot}.
+         * @return A JPanel containing the chart.
+         */
+        JPanel createChartPanel(Plot plot) {
+            ChartPanel chartPanel = new ChartPanel(plot.chart); // A JPanel that displays the chart
+            // Draws at most a few points per pixel column, however densely the curves are sampled.
+            MinMaxDecimator decimator = new MinMaxDecimator(chartPanel, plot.dataset);
+            // Re-samples the newly visible x range in the background when the user zooms or pans.
+            new ViewportResampler(plot.expressions, plot.keys, plot.sampled, X_MIN, X_MAX, chartPanel, decimator);
+            return chartPanel;
+        }
+
+        /**
+         * A styled chart and the sampled curves behind it.
+         */
+        static class Plot {
+            JFreeChart chart;
+            ArrayXYDataset dataset;
+            List<CompiledExpression> expressions;
+            List<String> keys;
+            List<AdaptiveSampler.Samples> sampled;
+        }
+
+        /**
+         * Compiles and samples the equations over x = xMin to xMax and builds the styled chart.
+         *
+         * @return The chart and its data, or null if none of the equations could be plotted.
+         */
+        private Plot buildPlot(List<String> equations, String title, double xMin, double xMax, int points) {
+            // Compiles each expression in 'x' once; re-plotting the same equation reuses the cached program.
+            Map<String, CompiledExpression> compiled = new LinkedHashMap<>(); // One curve per distinct expression
+            for (String equation : equations) {
+                try {
+                    CompiledExpression expression = CompiledExpression.compile(equation);
+                    compiled.putIfAbsent(expression.getSource(), expression);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Skipping '" + equation + "': " + e.getMessage());
+                }
+            }
+            if (compiled.isEmpty()) {
+                return null;
+            }
+            List<CompiledExpression> expressions = new ArrayList<>(compiled.values());
+
+            // Samples x = xMin to xMax adaptively (dense on bends and spikes, sparse on straight
+            // stretches), all curves at once across the cores.
+            List<ParallelSampler.Request> requests = new ArrayList<>();
+            for (CompiledExpression expression : expressions) {
+                requests.add(new ParallelSampler.Request(expression, xMin, xMax, points));
             }
+            List<AdaptiveSampler.Samples> sampled = ParallelSampler.sampleAll(requests);
+
+            // The samples' own arrays back the dataset: no per-point objects, nothing copied.
+            ArrayXYDataset.Builder builder = new ArrayXYDataset.Builder();
+            List<String> keys = new ArrayList<>();
+            double low = Double.NaN;
+            double high = Double.NaN;
+            for (int c = 0; c < expressions.size(); c++) {
+                AdaptiveSampler.Samples samples = sampled.get(c);
+                String key = "y = " + expressions.get(c).getSource();
+                builder.addSeries(key, samples.getXs(), samples.getYs()); // NaN marks a gap (pole, jump or undefined region); the renderer breaks the line there
+                keys.add(key);
+                low = Double.isNaN(low) || samples.getYLow() < low ? samples.getYLow() : low;
+                high = Double.isNaN(high) || samples.getYHigh() > high ? samples.getYHigh() : high;
+            }
+            ArrayXYDataset dataset = builder.build();
+
+            // Creates the XY line chart using JFreeChart.
+            JFreeChart chart = ChartFactory.createXYLineChart(
+                title,               // Chart title
+                "X",                 // X-axis label
+                "Y",                 // Y-axis label
+                dataset,             // Data
+                PlotOrientation.VERTICAL, // Plot orientation
+                true,                // Show legend
+                true,                // Tooltips
+                false                // URLs
+            );
+
+            // --- Customizing Chart Appearance ---
+            chart.setBackgroundPaint(new Color(60, 65, 75)); // Chart background
+            chart.getTitle().setPaint(new Color(220, 220, 220)); // Title color
+            chart.getXYPlot().setBackgroundPaint(new Color(40, 44, 52)); // Plot area background
+            chart.getXYPlot().setDomainGridlinePaint(new Color(80, 85, 95)); // X-axis grid lines
+            chart.getXYPlot().setRangeGridlinePaint(new Color(80, 85, 95)); // Y-axis grid lines
+
+            chart.getXYPlot().getDomainAxis().setLabelPaint(new Color(170, 180, 200)); // X-axis label color
+            chart.getXYPlot().getDomainAxis().setTickLabelPaint(new Color(170, 180, 200)); // X-axis tick label color
+            chart.getXYPlot().getRangeAxis().setLabelPaint(new Color(170, 180, 200)); // Y-axis label color
+            chart.getXYPlot().getRangeAxis().setTickLabelPaint(new Color(170, 180, 200)); // Y-axis tick label color
+
+            chart.getLegend().setItemPaint(new Color(220, 220, 220)); // Legend item color
+
+            // Near a pole a curve runs off towards infinity; scale the y axis to the typical values instead.
+            Range dataRange = dataset.getRangeBounds(false);
+            if (dataRange != null && high > low && dataRange.getLength() > OUTLIER_FACTOR * (high - low)) {
+                double pad = (high - low) * 0.1;
+                chart.getXYPlot().getRangeAxis().setRange(low - pad, high + pad);
+            }
+
+            Plot plot = new Plot();
+            plot.chart = chart;
+            plot.dataset = dataset;
+            plot.expressions = expressions;
+            plot.keys = keys;
+            plot.sampled = sampled;
+            return plot;
         }
     }
 
@@ -830,7 +1505,7 @@ public class Window extends JFrame {
         @Override
         public int getIconWidth() { return size; } // Returns the width of the icon
         @Override
-        public int int getIconHeight() { return size; } // Returns the height of the icon
+        public int getIconHeight() { return size; } // Returns the height of the icon
 
         /**
          * Paints the folder upload icon onto the given Graphics context.
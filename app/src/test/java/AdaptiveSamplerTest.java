@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Gaps in the sampled curve: poles, jumps and the edges of a function's domain must come out as a
+ * single NaN sample between defined points, and smooth curves must have none.
+ */
+class AdaptiveSamplerTest {
+
+    private static AdaptiveSampler.Samples sample(String expression, double from, double to) {
+        return new AdaptiveSampler(2000).sample(CompiledExpression.compile(expression).newEvaluator(), from, to);
+    }
+
+    @Test
+    void smoothCurveHasNoGaps() {
+        AdaptiveSampler.Samples samples = sample("x^3 - 2x", -10, 10);
+        assertWellFormed(samples, -10, 10);
+        for (double y : samples.getYs()) {
+            assertFalse(Double.isNaN(y));
+        }
+    }
+
+    @Test
+    void poleBecomesOneGap() {
+        AdaptiveSampler.Samples samples = sample("1 / x", -1, 1);
+        assertWellFormed(samples, -1, 1);
+        assertEquals(1, gapCount(samples));
+        assertGapAround(samples, 0);
+    }
+
+    @Test
+    void everyPoleOfTanIsAGap() {
+        AdaptiveSampler.Samples samples = sample("tan(x)", -4, 4);
+        assertWellFormed(samples, -4, 4);
+        assertEquals(2, gapCount(samples));
+        assertGapAround(samples, -Math.PI / 2);
+        assertGapAround(samples, Math.PI / 2);
+    }
+
+    @Test
+    void jumpBecomesAGap() {
+        AdaptiveSampler.Samples samples = sample("floor(x)", 0.5, 2.5);
+        assertWellFormed(samples, 0.5, 2.5);
+        assertEquals(2, gapCount(samples));
+        assertGapAround(samples, 1);
+        assertGapAround(samples, 2);
+    }
+
+    @Test
+    void undefinedStretchIsOneGapUpToTheDomainEdge() {
+        AdaptiveSampler.Samples samples = sample("sqrt(x)", -1, 1);
+        assertWellFormed(samples, -1, 1);
+        assertEquals(1, gapCount(samples));
+        double[] xs = samples.getXs();
+        double[] ys = samples.getYs();
+        assertTrue(Double.isNaN(ys[0]));
+        double firstDefined = xs[1];
+        assertTrue(firstDefined >= 0 && firstDefined < 1e-3, "domain edge found at " + firstDefined);
+    }
+
+    @Test
+    void nothingDefinedIsASingleGap() {
+        AdaptiveSampler.Samples samples = sample("log(-1 - x ^ 2)", -5, 5);
+        assertEquals(1, samples.size());
+        assertTrue(Double.isNaN(samples.getYs()[0]));
+        assertTrue(Double.isNaN(samples.getYLow()));
+    }
+
+    @Test
+    void staysWithinBudget() {
+        for (int budget : new int[] { 1, AdaptiveSampler.MIN_BUDGET, 300, 1000, 5000 }) {
+            AdaptiveSampler sampler = new AdaptiveSampler(budget);
+            assertEquals(Math.max(budget, AdaptiveSampler.MIN_BUDGET), sampler.getPointBudget());
+            AdaptiveSampler.Samples samples = sampler.sample(CompiledExpression.compile("sin(1 / x)").newEvaluator(), -1, 1);
+            assertTrue(samples.getEvaluations() <= sampler.getPointBudget());
+        }
+    }
+
+    /** Increasing x from exactly {@code from} to exactly {@code to}, and never two gaps in a row. */
+    private static void assertWellFormed(AdaptiveSampler.Samples samples, double from, double to) {
+        double[] xs = samples.getXs();
+        double[] ys = samples.getYs();
+        assertEquals(from, xs[0]);
+        assertEquals(to, xs[xs.length - 1]);
+        for (int i = 1; i < xs.length; i++) {
+            assertTrue(xs[i] > xs[i - 1], "x not increasing at " + i);
+            assertFalse(Double.isNaN(ys[i]) && Double.isNaN(ys[i - 1]), "two gaps in a row at " + i);
+        }
+        for (double y : ys) {
+            assertFalse(Double.isInfinite(y));
+        }
+    }
+
+    private static int gapCount(AdaptiveSampler.Samples samples) {
+        int gaps = 0;
+        for (double y : samples.getYs()) {
+            if (Double.isNaN(y)) {
+                gaps++;
+            }
+        }
+        return gaps;
+    }
+
+    /** A gap whose defined neighbours close in on {@code x} from both sides. */
+    private static void assertGapAround(AdaptiveSampler.Samples samples, double x) {
+        double[] xs = samples.getXs();
+        double[] ys = samples.getYs();
+        for (int i = 1; i < xs.length - 1; i++) {
+            if (Double.isNaN(ys[i]) && xs[i - 1] <= x && xs[i + 1] >= x) {
+                assertTrue(xs[i + 1] - xs[i - 1] < 1e-3, "gap at " + x + " is " + (xs[i + 1] - xs[i - 1]) + " wide");
+                return;
+            }
+        }
+        throw new AssertionError("no gap at " + x);
+    }
+}
@@ -0,0 +1,112 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The pool against an in-memory H2 database: reuse, the size limit, dropping broken and dead
+ * connections, and the per-connection statement cache.
+ */
+class ConnectionPoolTest {
+
+    private final ConnectionPool pool = new ConnectionPool(
+            "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "", 2);
+
+    @AfterEach
+    void close() {
+        pool.close();
+    }
+
+    @Test
+    void reusesReturnedConnections() throws SQLException {
+        Connection first;
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            first = lease.getConnection();
+        }
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            assertSame(first, lease.getConnection());
+        }
+        assertEquals(1, pool.getOpen());
+    }
+
+    @Test
+    void borrowWaitsForAConnectionOnceAllAreLeased() throws Exception {
+        ConnectionPool.Lease a = pool.borrow();
+        ConnectionPool.Lease b = pool.borrow();
+        assertNotSame(a.getConnection(), b.getConnection());
+        assertEquals(2, pool.getOpen());
+
+        CompletableFuture<Connection> waiting = CompletableFuture.supplyAsync(() -> {
+            try (ConnectionPool.Lease lease = pool.borrow()) {
+                return lease.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(waiting.isDone(), "no third connection is opened");
+
+        Connection released = a.getConnection();
+        a.close();
+        assertSame(released, waiting.get(2, TimeUnit.SECONDS));
+        b.close();
+        assertEquals(2, pool.getOpen());
+    }
+
+    @Test
+    void invalidatedLeasesAreClosedNotReturned() throws SQLException {
+        Connection broken;
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            broken = lease.getConnection();
+            lease.invalidate();
+        }
+        assertTrue(broken.isClosed());
+        assertEquals(0, pool.getOpen());
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            assertNotSame(broken, lease.getConnection());
+        }
+    }
+
+    @Test
+    void validateIdleDropsDeadConnections() throws Exception {
+        ConnectionPool.Lease a = pool.borrow();
+        ConnectionPool.Lease b = pool.borrow();
+        a.getConnection().close(); // Dies while idle, e.g. the server restarted
+        a.close();
+        b.close();
+        Thread.sleep(10); // validateIdle() skips connections used since it started
+
+        assertEquals(1, pool.validateIdle());
+        assertEquals(1, pool.getOpen());
+    }
+
+    @Test
+    void cachesPreparedStatementsPerConnection() throws SQLException {
+        PreparedStatement first;
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            first = lease.prepare("SELECT ?");
+            assertNotSame(first, lease.prepareReturningKeys("SELECT ?"));
+        }
+        try (ConnectionPool.Lease lease = pool.borrow()) {
+            assertSame(first, lease.prepare("SELECT ?"));
+        }
+    }
+
+    @Test
+    void refusesToLendOnceClosed() {
+        pool.close();
+        assertThrows(SQLException.class, pool::borrow);
+    }
+}
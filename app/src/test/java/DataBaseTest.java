@@ -0,0 +1,100 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * DataBase against an in-memory H2 database in MySQL mode: batch inserts with their ids, keyset
+ * paging, and retention's chunked deletes.
+ */
+class DataBaseTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private final String url = "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    @TempDir
+    Path dir;
+
+    private DataBase database;
+
+    @BeforeEach
+    void open() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE HISTORY (id INT AUTO_INCREMENT PRIMARY KEY,"
+                    + " FilePath VARCHAR(255) NOT NULL, Question TEXT NOT NULL, Created TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        }
+        database = new DataBase(url, "sa", "", dir.resolve("spill.log"));
+    }
+
+    @AfterEach
+    void close() {
+        database.close();
+    }
+
+    /** Inserts n rows one day apart, oldest first, the newest created now. */
+    private List<HistoryRecord> insert(int n) throws SQLException {
+        long now = System.currentTimeMillis();
+        List<HistoryRecord> records = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            records.add(new HistoryRecord("/img" + i + ".png", "x + " + i, new Timestamp(now - (n - 1 - i) * DAY)));
+        }
+        return database.insertBatch(records);
+    }
+
+    private static List<Long> ids(List<HistoryRecord> records) {
+        List<Long> ids = new ArrayList<>();
+        for (HistoryRecord record : records) {
+            ids.add(record.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    void insertBatchReturnsTheGeneratedIds() throws SQLException {
+        assertEquals(List.of(1L, 2L, 3L), ids(insert(3)));
+    }
+
+    @Test
+    void pagesByCreatedThenId() throws SQLException {
+        insert(5);
+        List<HistoryRecord> first = database.fetchHistoryPage(null, 0, 2);
+        assertEquals(List.of(1L, 2L), ids(first));
+
+        HistoryRecord last = first.get(1);
+        assertEquals(List.of(3L, 4L, 5L), ids(database.fetchHistoryPage(last.getCreated(), last.getId(), 10)));
+    }
+
+    @Test
+    void deletesOldRowsInChunksOldestFirst() throws SQLException {
+        insert(10); // Ages 9 days .. today
+        Timestamp fiveDaysAgo = new Timestamp(System.currentTimeMillis() - 5 * DAY + 60_000);
+
+        assertEquals(3, database.deleteHistoryChunk(fiveDaysAgo, 3));
+        assertEquals(List.of(4L, 5L), ids(database.fetchHistoryPage(null, 0, 2)));
+        assertEquals(2, database.deleteHistoryChunk(fiveDaysAgo, 3));
+        assertEquals(0, database.deleteHistoryChunk(fiveDaysAgo, 3));
+
+        assertEquals(List.of(6L, 7L, 8L, 9L, 10L), ids(database.fetchHistoryPage(null, 0, 100)));
+    }
+
+    @Test
+    void deleteRemovesEverythingOlderThanTheGivenDays() throws SQLException {
+        insert(10);
+        assertEquals(7, database.Delete(3)); // Ages 3 .. 9 days
+        assertEquals(3, database.fetchHistoryPage(null, 0, 100).size());
+    }
+}
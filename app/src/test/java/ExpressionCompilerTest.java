@@ -0,0 +1,135 @@
+import net.objecthunter.exp4j.Expression;
+import net.objecthunter.exp4j.ExpressionBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.function.DoubleUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * The generated bytecode against exp4j, which defines what an expression means, and against the
+ * opcode interpreter it replaces. Each expression is checked at the same points, including the
+ * ones where it has no value (division by zero, outside the domain of log and sqrt, overflow).
+ */
+class ExpressionCompilerTest {
+
+    private static final double[] POINTS = {
+            -1000, -100, -7.25, -3, -2, -1.5, -1, -0.5, -1e-9, 0, 1e-9, 0.5, 1, 1.5, 2, 3, 7.25, 100, 1000,
+    };
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "x + 2", "x - 2", "x * 3", "x / 4", "x ^ 3", "x % 3", "2 % x", "x ^ 0.5", "2 ^ x",
+    })
+    void operators(String source) {
+        assertMatchesExp4j(source);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "-x", "+x", "- -x", "2 - -x", "2 * -x", "-x ^ 2", "-(x ^ 2)", "(-x) ^ 2", "-2 ^ x", "-sin(x)",
+    })
+    void unaryMinus(String source) {
+        assertMatchesExp4j(source);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "2 + 3 * x", "(2 + 3) * x", "x - 2 - 4", "x - (2 - 4)", "x / 2 / 4", "x / (2 / 4)",
+            "2 ^ 3 ^ x", "(2 ^ 3) ^ x", "x * 2 ^ 3", "1 + x % 3 * 2", "2x", "2(x + 1)", "3x^2 - 2x + 1",
+            "pi * x", "e ^ x", "x / 3 * 3",
+    })
+    void precedence(String source) {
+        assertMatchesExp4j(source);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "sin(x)", "cos(x)", "tan(x)", "cot(x)", "asin(x)", "acos(x)", "atan(x)", "sinh(x)", "cosh(x)",
+            "tanh(x)", "abs(x)", "log(x)", "log10(x)", "log2(x)", "log1p(x)", "ceil(x)", "floor(x)", "sqrt(x)",
+            "cbrt(x)", "exp(x)", "expm1(x)", "signum(x)", "pow(x, 3)", "pow(2, x)", "sin(cos(x)) * exp(-x ^ 2)",
+    })
+    void functions(String source) {
+        assertMatchesExp4j(source);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "1 / x", "0 / x", "x / 0", "x % 0", "-1 / x", "log(x)", "log(x - 5)", "sqrt(x)", "sqrt(-x)",
+            "asin(x)", "exp(x)", "-exp(x)", "x ^ 1000", "1 / (x - x)", "cot(x)",
+    })
+    void nanAndInfinity(String source) {
+        assertMatchesExp4j(source);
+    }
+
+    /**
+     * exp4j throws on any division by zero, the compiled code follows IEEE arithmetic: an infinity
+     * that is divided into again gives a value where exp4j has none.
+     */
+    @Test
+    void divisionByZeroFollowsIeee() {
+        assertEquals(Double.POSITIVE_INFINITY, compiled("cot(x)").applyAsDouble(0));
+        assertEquals(0.0, compiled("1 / (1 / x)").applyAsDouble(0));
+        assertEquals(0.0, compiled("tan(x) / cot(x)").applyAsDouble(0));
+    }
+
+    @Test
+    void nonFiniteInput() {
+        DoubleUnaryOperator f = compiled("x * 2 + 1");
+        assertTrue(Double.isNaN(f.applyAsDouble(Double.NaN)));
+        assertEquals(Double.POSITIVE_INFINITY, f.applyAsDouble(Double.POSITIVE_INFINITY));
+        assertEquals(Double.NEGATIVE_INFINITY, f.applyAsDouble(Double.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    void verificationRejectsWrongCode() {
+        assertTrue(ExpressionCompiler.matchesExp4j("x + 1", x -> x + 1));
+        assertFalse(ExpressionCompiler.matchesExp4j("x + 1", x -> x + 2));
+        assertTrue(ExpressionCompiler.matchesExp4j("1 / x", x -> 1 / x)); // exp4j throws at 0, the code gives +-Inf
+    }
+
+    private static DoubleUnaryOperator compiled(String source) {
+        CompiledExpression expression = CompiledExpression.compile(source);
+        assertTrue(expression.isCompiled(), "not compiled to bytecode: " + source);
+        return expression.newEvaluator();
+    }
+
+    /**
+     * Where exp4j has a value the bytecode and the interpreter must agree with it (to rounding);
+     * where exp4j throws (division by zero) both must give an infinity or NaN.
+     */
+    private static void assertMatchesExp4j(String source) {
+        DoubleUnaryOperator bytecode = compiled(source);
+        DoubleUnaryOperator interpreter = CompiledExpression.compile(source).newInterpreter();
+        Expression reference = new ExpressionBuilder(source).variables("x").build();
+        for (double x : POINTS) {
+            double actual = bytecode.applyAsDouble(x);
+            assertSame(source, x, interpreter.applyAsDouble(x), actual);
+            double expected;
+            try {
+                expected = reference.setVariable("x", x).evaluate();
+            } catch (ArithmeticException e) {
+                assertFalse(Double.isFinite(actual), source + " at x = " + x + ": exp4j has no value, got " + actual);
+                continue;
+            }
+            assertSame(source, x, expected, actual);
+        }
+    }
+
+    private static void assertSame(String source, double x, double expected, double actual) {
+        String message = source + " at x = " + x;
+        if (!Double.isFinite(expected)) {
+            assertEquals(expected, actual, message); // Same infinity, or both NaN
+            return;
+        }
+        if (!Double.isFinite(actual)) {
+            fail(message + ": expected " + expected + " but was " + actual);
+        }
+        assertEquals(expected, actual, 1e-12 * Math.max(1.0, Math.abs(expected)), message);
+    }
+}
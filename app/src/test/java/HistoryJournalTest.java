@@ -0,0 +1,154 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The write-behind journal behind {@link DataBase#CreateData}, against an in-memory H2 database:
+ * batched writes, spilling when a batch can't be written, and replay once it can.
+ */
+class HistoryJournalTest {
+
+    private final String url = "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    @TempDir
+    Path dir;
+
+    private DataBase database;
+
+    @AfterEach
+    void close() {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    private void createTable() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE HISTORY (id INT AUTO_INCREMENT PRIMARY KEY,"
+                    + " FilePath VARCHAR(255) NOT NULL, Question TEXT NOT NULL, Created TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        }
+    }
+
+    /** The rows in insertion order, read straight from the table. */
+    private List<HistoryRecord> rows() throws SQLException {
+        List<HistoryRecord> rows = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT id, FilePath, Question, Created FROM HISTORY ORDER BY id")) {
+            while (resultSet.next()) {
+                rows.add(new HistoryRecord(resultSet.getLong(1), resultSet.getString(2), resultSet.getString(3), resultSet.getTimestamp(4)));
+            }
+        }
+        return rows;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(50);
+        }
+    }
+
+    private static int lines(Path file) {
+        try {
+            return Files.exists(file) ? Files.readAllLines(file).size() : 0;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private int count() {
+        try {
+            return rows().size();
+        } catch (SQLException e) {
+            return -1;
+        }
+    }
+
+    @Test
+    void writesQueuedRecordsInOneBatchWithTheirIds() throws Exception {
+        createTable();
+        database = new DataBase(url, "sa", "", dir.resolve("spill.log"));
+        List<HistoryRecord> flushed = new CopyOnWriteArrayList<>();
+        database.setHistoryListener(flushed::addAll);
+
+        database.CreateData("/a.png", "x^2");
+        database.CreateData("/b.png", "sin(x)");
+        await(() -> flushed.size() == 2);
+
+        assertEquals(List.of(1L, 2L), flushed.stream().map(HistoryRecord::getId).toList());
+        assertEquals(List.of("x^2", "sin(x)"), rows().stream().map(HistoryRecord::getQuestion).toList());
+        assertFalse(Files.exists(dir.resolve("spill.log")));
+    }
+
+    @Test
+    void spillsWhatCannotBeWrittenAndReplaysItLater() throws Exception {
+        Path spill = dir.resolve("spill.log");
+        database = new DataBase(url, "sa", "", spill); // No table yet, so every batch fails
+
+        database.CreateData("/a.png", "x^2");
+        database.CreateData("/b.png", "line one\nline\ttwo \\ three");
+        await(() -> lines(spill) == 2); // One line per record, newlines escaped
+
+        createTable();
+        await(() -> count() == 2);
+
+        assertEquals(List.of("x^2", "line one\nline\ttwo \\ three"), rows().stream().map(HistoryRecord::getQuestion).toList());
+        await(() -> !Files.exists(spill));
+    }
+
+    @Test
+    void replaysASpillFileLeftByAnEarlierRun() throws Exception {
+        Path spill = dir.resolve("spill.log");
+        long created = System.currentTimeMillis() - 60_000;
+        Files.write(spill, List.of(
+                created + "\t/a.png\tx^2",
+                (created + 1) + "\t/b.png\tcos(x)",
+                "17000")); // Torn last line, skipped
+        createTable();
+        database = new DataBase(url, "sa", "", spill);
+
+        await(() -> count() == 2);
+
+        List<HistoryRecord> rows = rows();
+        assertEquals("/a.png", rows.get(0).getFilePath());
+        assertEquals(created, rows.get(0).getCreated().getTime());
+        assertEquals("cos(x)", rows.get(1).getQuestion());
+        await(() -> !Files.exists(spill));
+    }
+
+    @Test
+    void closeWritesWhatIsStillQueued() throws Exception {
+        createTable();
+        database = new DataBase(url, "sa", "", dir.resolve("spill.log"));
+        for (int i = 0; i < 250; i++) {
+            database.CreateData("/img" + i + ".png", "x + " + i);
+        }
+        database.close();
+
+        database = null;
+
+        assertEquals(250, rows().size());
+        assertFalse(Files.exists(dir.resolve("spill.log")));
+    }
+}
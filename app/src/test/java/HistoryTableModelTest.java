@@ -0,0 +1,173 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.swing.SwingUtilities;
+
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Paging the history table through a local store, and rows written while a page is loading.
+ * The model is EDT-confined, so every call goes through {@link #onEdt}.
+ */
+class HistoryTableModelTest {
+
+    @TempDir
+    Path dir;
+
+    /** A local store whose page queries can be held until the test lets them finish. */
+    private static class GatedStore extends LocalHistoryStore {
+        volatile CountDownLatch gate = new CountDownLatch(0);
+        volatile boolean readBeforeGate; // true: the page is read, then held; false: held, then read
+
+        GatedStore(Path directory) {
+            super(directory);
+        }
+
+        @Override
+        public List<HistoryRecord> fetchHistoryPage(Timestamp afterCreated, long afterId, int limit) {
+            List<HistoryRecord> page = readBeforeGate ? super.fetchHistoryPage(afterCreated, afterId, limit) : null;
+            try {
+                gate.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return page != null ? page : super.fetchHistoryPage(afterCreated, afterId, limit);
+        }
+    }
+
+    private static <T> T onEdt(Callable<T> call) throws Exception {
+        AtomicReference<T> result = new AtomicReference<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                result.set(call.call());
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return result.get();
+    }
+
+    private static void awaitRows(HistoryTableModel model, int rows) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (onEdt(model::getRowCount) != rows) {
+            assertTrue(System.currentTimeMillis() < deadline, "rows: " + onEdt(model::getRowCount) + ", expected " + rows);
+            Thread.sleep(10);
+        }
+    }
+
+    /** Writes rows through the store and returns them as its listener announced them. */
+    private static List<HistoryRecord> write(LocalHistoryStore store, int count, String prefix) throws InterruptedException {
+        List<HistoryRecord> announced = new ArrayList<>();
+        CountDownLatch written = new CountDownLatch(count);
+        store.setHistoryListener(records -> {
+            synchronized (announced) {
+                announced.addAll(records);
+            }
+            records.forEach(record -> written.countDown());
+        });
+        for (int i = 0; i < count; i++) {
+            store.CreateData("/" + prefix + i + ".png", prefix + " " + i);
+        }
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+        store.setHistoryListener(null);
+        return announced;
+    }
+
+    private static Set<Long> ids(HistoryTableModel model) throws Exception {
+        return onEdt(() -> {
+            Set<Long> ids = new HashSet<>();
+            for (int i = 0; i < model.getRowCount(); i++) {
+                assertTrue(ids.add(model.getRecord(i).getId()), "row " + i + " shown twice");
+            }
+            return ids;
+        });
+    }
+
+    @Test
+    void pagesInAsTheTableScrolls() throws Exception {
+        LocalHistoryStore store = new LocalHistoryStore(dir);
+        write(store, 450, "row");
+        HistoryTableModel model = onEdt(() -> new HistoryTableModel(store));
+        awaitRows(model, 200);
+        assertFalse(onEdt(model::isFullyLoaded));
+
+        onEdt(() -> model.getValueAt(100, 0)); // Far from the end: no query
+        Thread.sleep(100);
+        assertEquals(200, onEdt(model::getRowCount));
+
+        onEdt(() -> model.getValueAt(160, 0)); // Within the prefetch distance
+        awaitRows(model, 400);
+        onEdt(() -> model.getValueAt(399, 0));
+        awaitRows(model, 450);
+        assertTrue(onEdt(model::isFullyLoaded));
+        for (int i = 0; i < 450; i++) {
+            int row = i;
+            assertEquals("/row" + i + ".png", onEdt(() -> model.getValueAt(row, 0)));
+        }
+        store.close();
+    }
+
+    @Test
+    void rowsWrittenWhileThePageIsReadAreMergedOnce() throws Exception {
+        for (boolean readBeforeGate : new boolean[] { true, false }) {
+            GatedStore store = new GatedStore(dir.resolve(String.valueOf(readBeforeGate)));
+            write(store, 10, "old");
+            store.readBeforeGate = readBeforeGate;
+            store.gate = new CountDownLatch(1);
+            HistoryTableModel model = onEdt(() -> new HistoryTableModel(store)); // First page held in flight
+
+            List<HistoryRecord> fresh = write(store, 3, "new");
+            onEdt(() -> {
+                model.appendRecords(fresh);
+                return null;
+            });
+            assertEquals(0, onEdt(model::getRowCount));
+
+            store.gate.countDown();
+            // Whether or not the page already contained them, each new row is shown exactly once
+            awaitRows(model, 13);
+            assertEquals(13, ids(model).size());
+            assertEquals("/new2.png", onEdt(() -> model.getValueAt(12, 0)));
+            store.close();
+        }
+    }
+
+    @Test
+    void rowsWrittenAfterTheLastPageAreAppendedWithTheirIds() throws Exception {
+        LocalHistoryStore store = new LocalHistoryStore(dir);
+        write(store, 5, "old");
+        HistoryTableModel model = onEdt(() -> new HistoryTableModel(store));
+        awaitRows(model, 5);
+
+        List<HistoryRecord> fresh = write(store, 2, "new");
+        onEdt(() -> {
+            model.appendRecords(fresh);
+            model.appendRecords(fresh); // Announced twice, shown once
+            return null;
+        });
+        assertEquals(7, onEdt(model::getRowCount));
+        assertEquals(Set.of(1L, 2L, 3L, 4L, 5L, 6L, 7L), ids(model));
+        for (HistoryRecord record : fresh) {
+            assertNotEquals(0, record.getId());
+        }
+        store.close();
+    }
+}
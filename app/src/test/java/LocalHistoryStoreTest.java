@@ -0,0 +1,170 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The embedded store against its own log: replay on open, keyset paging, the inverted index behind
+ * search, and chunked deletes with the compaction they trigger.
+ */
+class LocalHistoryStoreTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @TempDir
+    Path dir;
+
+    /** Writes rows with ids 1..n straight into the log, one day apart and oldest first. */
+    private void seed(String... questions) throws IOException {
+        long first = System.currentTimeMillis() - questions.length * DAY;
+        try (BufferedWriter log = Files.newBufferedWriter(dir.resolve("history.log"))) {
+            for (int i = 0; i < questions.length; i++) {
+                log.write("A\t" + (i + 1) + "\t" + (first + i * DAY) + "\t/img" + (i + 1) + ".png\t" + questions[i]);
+                log.newLine();
+            }
+        }
+    }
+
+    private static List<Long> ids(List<HistoryRecord> records) {
+        List<Long> ids = new ArrayList<>();
+        for (HistoryRecord record : records) {
+            ids.add(record.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    void writesAreQueuedAndReplayedOnOpen() {
+        LocalHistoryStore store = new LocalHistoryStore(dir);
+        List<HistoryRecord> seen = new ArrayList<>();
+        store.setHistoryListener(records -> {
+            synchronized (seen) {
+                seen.addAll(records);
+            }
+        });
+        for (int i = 0; i < 500; i++) {
+            store.CreateData("/img" + i + ".png", "question\t" + i + "\nline two");
+        }
+        store.close(); // Writes everything still queued
+        assertEquals(500, seen.size());
+
+        LocalHistoryStore reopened = new LocalHistoryStore(dir);
+        List<HistoryRecord> rows = reopened.fetchHistoryPage(null, 0, 1000);
+        assertEquals(500, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(i + 1, rows.get(i).getId());
+            assertEquals("/img" + i + ".png", rows.get(i).getFilePath());
+            assertEquals("question\t" + i + "\nline two", rows.get(i).getQuestion());
+        }
+        reopened.close();
+    }
+
+    @Test
+    void pagesFollowTheKeyset() throws IOException {
+        seed("a", "b", "c", "d", "e");
+        LocalHistoryStore store = new LocalHistoryStore(dir);
+        List<HistoryRecord> first = store.fetchHistoryPage(null, 0, 2);
+        assertEquals(List.of(1L, 2L), ids(first));
+        HistoryRecord last = first.get(1);
+        assertEquals(List.of(3L, 4L), ids(store.fetchHistoryPage(last.getCreated(), last.getId(), 2)));
+        HistoryRecord fifth = store.fetchHistoryPage(null, 0, 5).get(4);
+        assertTrue(store.fetchHistoryPage(fifth.getCreated(), fifth.getId(), 2).isEmpty());
+        store.close();
+    }
+
+    @Test
+    void tokenSearchRanksByMatchingWordsThenNewest() throws IOException {
+        seed("derivative of sin x", "integral of sin x", "Derivative, of COS x", "plot tan", "sin sin sin");
+        LocalHistoryStore store = new LocalHistoryStore(dir);
+        assertEquals(List.of(1L, 5L, 3L, 2L), ids(store.searchHistory("derivative sin", HistoryStore.SearchMode.TOKEN, 0, 10)));
+        assertEquals(List.of(5L, 3L), ids(store.searchHistory("derivative sin", HistoryStore.SearchMode.TOKEN, 1, 2)));
+        assertEquals(List.of(3L, 1L), ids(store.searchHistory("DERIVATIVE", HistoryStore.SearchMode.TOKEN, 0, 10)));
+        assertTrue(store.searchHistory("deriv", HistoryStore.SearchMode.TOKEN, 0, 10).isEmpty()); // Whole words only
+        store.close();
+    }
+
+    @Test
+    void prefixSearchNeedsEveryWord() throws IOException {
+        seed("derivative of sin x", "integral of sin x", "derive cos", "plot tan");
+        LocalHistoryStore store = new LocalHistoryStore(dir);
+        assertEquals(List.of(3L, 1L), ids(store.searchHistory("deriv", HistoryStore.SearchMode.PREFIX, 0, 10)));
+        assertEquals(List.of(1L), ids(store.searchHistory("der si", HistoryStore.SearchMode.PREFIX, 0, 10)));
+        assertTrue(store.searchHistory("der tan", HistoryStore.SearchMode.PREFIX, 0, 10).isEmpty());
+        store.close();
+    }
+
+    @Test
+    void substringSearchScansNewestFirst() throws IOException {
+        seed("x^2 + 1", "sin(x^2)", "cos x");
+        LocalHistoryStore store = new LocalHistoryStore(dir);
+        assertEquals(List.of(2L, 1L), ids(store.searchHistory("X^2", HistoryStore.SearchMode.SUBSTRING, 0, 10)));
+        // Nothing to index in "^", so every mode falls back to a substring scan
+        assertEquals(List.of(2L, 1L), ids(store.searchHistory("^", HistoryStore.SearchMode.TOKEN, 0, 10)));
+        store.close();
+    }
+
+    @Test
+    void chunkedDeleteCompactsTheLogAndKeepsSearchInSync() throws IOException, SQLException {
+        int rows = 1500;
+        String[] questions = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            questions[i] = (i < 1000 ? "old" : "recent") + " row " + i;
+        }
+        seed(questions);
+        LocalHistoryStore store = new LocalHistoryStore(dir);
+        HistoryRecord firstRecent = store.fetchHistoryPage(null, 0, rows).get(1000);
+        Timestamp limit = new Timestamp(firstRecent.getCreated().getTime() - 1);
+
+        Path log = dir.resolve("history.log");
+        assertEquals(400, store.deleteHistoryChunk(limit, 400));
+        assertEquals(1900, Files.readAllLines(log).size()); // One delete line per row
+        // 1600 dead lines now outnumber the 700 live rows: the log is rewritten with live rows only
+        assertEquals(400, store.deleteHistoryChunk(limit, 400));
+        assertEquals(700, Files.readAllLines(log).size());
+        assertEquals(200, store.deleteHistoryChunk(limit, 400));
+        assertEquals(0, store.deleteHistoryChunk(limit, 400));
+        assertEquals(900, Files.readAllLines(log).size()); // 200 more delete lines, too few to compact again
+
+        assertTrue(store.searchHistory("old", HistoryStore.SearchMode.TOKEN, 0, 10).isEmpty());
+        assertTrue(store.searchHistory("ol", HistoryStore.SearchMode.PREFIX, 0, 10).isEmpty());
+        assertEquals(500, store.searchHistory("recent", HistoryStore.SearchMode.TOKEN, 0, 1000).size());
+        assertEquals(1500L, store.searchHistory("recent", HistoryStore.SearchMode.TOKEN, 0, 1).get(0).getId());
+        store.close();
+
+        LocalHistoryStore reopened = new LocalHistoryStore(dir);
+        assertEquals(500, reopened.fetchHistoryPage(null, 0, rows).size());
+        assertEquals(1001L, reopened.fetchHistoryPage(null, 0, 1).get(0).getId());
+        reopened.CreateData("/new.png", "newest old");
+        reopened.close(); // New ids continue after the highest one in the log
+
+        LocalHistoryStore again = new LocalHistoryStore(dir);
+        List<HistoryRecord> hit = again.searchHistory("old", HistoryStore.SearchMode.TOKEN, 0, 10);
+        assertEquals(1, hit.size());
+        assertEquals(1501L, hit.get(0).getId());
+        again.close();
+    }
+
+    @Test
+    void tornLastLineIsDropped() throws IOException {
+        seed("first", "second");
+        Files.write(dir.resolve("history.log"), "A\t3\t12".getBytes(), StandardOpenOption.APPEND);
+        LocalHistoryStore store = new LocalHistoryStore(dir);
+        store.CreateData("/img.png", "third");
+        store.close();
+
+        LocalHistoryStore reopened = new LocalHistoryStore(dir);
+        assertEquals(List.of(1L, 2L, 3L), ids(reopened.fetchHistoryPage(null, 0, 10)));
+        reopened.close();
+    }
+}
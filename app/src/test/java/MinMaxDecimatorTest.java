@@ -0,0 +1,142 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The reduced dataset must draw the same picture as the full one: per pixel column the first,
+ * lowest, highest and last point, the points either side of the view, and every break.
+ */
+class MinMaxDecimatorTest {
+
+    private static ArrayXYDataset dataset(double[] xs, double[] ys) {
+        return new ArrayXYDataset.Builder().addSeries("y", xs, ys).build();
+    }
+
+    private static double[] grid(int n, double from, double to) {
+        double[] xs = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = from + (to - from) * i / (n - 1);
+        }
+        return xs;
+    }
+
+    @Test
+    void smallSeriesArePassedThrough() {
+        double[] xs = grid(100, 0, 1);
+        ArrayXYDataset source = dataset(xs, xs.clone());
+        assertSame(source, MinMaxDecimator.decimate(source, 0, 1, 800));
+    }
+
+    @Test
+    void keepsFirstMinMaxAndLastOfEachColumn() {
+        int n = 100_000;
+        int columns = 100;
+        double[] xs = grid(n, 0, 10);
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            ys[i] = Math.sin(xs[i] * 7);
+        }
+        ys[n / 3] = 50; // One-sample spike
+        ys[2 * n / 3] = -50;
+
+        ArrayXYDataset reduced = MinMaxDecimator.decimate(dataset(xs, ys), 0, 10, columns);
+        double[] rx = reduced.getXs(0);
+        double[] ry = reduced.getYs(0);
+        assertTrue(rx.length <= 4 * (columns + 2), "kept " + rx.length);
+        assertEquals(xs[0], rx[0]);
+        assertEquals(xs[n - 1], rx[rx.length - 1]);
+        assertTrue(contains(rx, ry, xs[n / 3], 50), "spike lost");
+        assertTrue(contains(rx, ry, xs[2 * n / 3], -50), "dip lost");
+        assertIncreasing(rx);
+
+        // Every column still spans its full height.
+        double width = 10.0 / columns;
+        for (int c = 0; c < columns; c++) {
+            double from = c * width;
+            double to = c == columns - 1 ? 10.0001 : (c + 1) * width;
+            assertEquals(columnMin(xs, ys, from, to), columnMin(rx, ry, from, to), "min of column " + c);
+            assertEquals(columnMax(xs, ys, from, to), columnMax(rx, ry, from, to), "max of column " + c);
+        }
+    }
+
+    @Test
+    void pointsOutsideTheViewCollapseToOneColumnEachSide() {
+        int n = 10_000;
+        double[] xs = grid(n, -10, 10);
+        double[] ys = xs.clone();
+        ArrayXYDataset reduced = MinMaxDecimator.decimate(dataset(xs, ys), -1, 1, 50);
+        double[] rx = reduced.getXs(0);
+        int left = 0;
+        int right = 0;
+        for (double x : rx) {
+            left += x < -1 ? 1 : 0;
+            right += x >= 1 ? 1 : 0;
+        }
+        assertTrue(left >= 1 && left <= 4, left + " points left of the view");
+        assertTrue(right >= 1 && right <= 4, right + " points right of the view");
+        assertEquals(-10, rx[0]);
+        assertEquals(10, rx[rx.length - 1]);
+    }
+
+    @Test
+    void breaksAreKeptAndNotRepeated() {
+        int n = 50_000;
+        double[] xs = grid(n, 0, 1);
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            ys[i] = i >= 20_000 && i < 20_010 ? Double.NaN : xs[i]; // A run of undefined samples
+        }
+        ys[40_000] = Double.NaN; // A single one
+        ArrayXYDataset reduced = MinMaxDecimator.decimate(dataset(xs, ys), 0, 1, 100);
+        double[] rx = reduced.getXs(0);
+        double[] ry = reduced.getYs(0);
+        int breaks = 0;
+        for (int i = 0; i < ry.length; i++) {
+            if (Double.isNaN(ry[i])) {
+                breaks++;
+                assertTrue(i > 0 && !Double.isNaN(ry[i - 1]), "repeated break at " + i);
+            }
+        }
+        assertEquals(2, breaks);
+        assertTrue(contains(rx, ry, xs[19_999], xs[19_999]), "point before the break lost");
+        assertTrue(contains(rx, ry, xs[20_010], xs[20_010]), "point after the break lost");
+        assertIncreasing(rx);
+    }
+
+    private static boolean contains(double[] xs, double[] ys, double x, double y) {
+        for (int i = 0; i < xs.length; i++) {
+            if (xs[i] == x && ys[i] == y) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void assertIncreasing(double[] xs) {
+        for (int i = 1; i < xs.length; i++) {
+            assertTrue(xs[i] > xs[i - 1], "x not increasing at " + i);
+        }
+    }
+
+    private static double columnMin(double[] xs, double[] ys, double from, double to) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < xs.length; i++) {
+            if (xs[i] >= from && xs[i] < to) {
+                min = Math.min(min, ys[i]);
+            }
+        }
+        return min;
+    }
+
+    private static double columnMax(double[] xs, double[] ys, double from, double to) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < xs.length; i++) {
+            if (xs[i] >= from && xs[i] < to) {
+                max = Math.max(max, ys[i]);
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,133 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Both tiers of the OCR cache, eviction of the disk tier and invalidation, by hand or because the
+ * traineddata changed. The traineddata lives under {@code mathematica.tessdata}, which the build
+ * points at target/test-tessdata.
+ */
+class OcrCacheTest {
+
+    private static final Path TESSDATA = Paths.get(TesseractPool.DATAPATH);
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void trainedData() throws IOException {
+        Files.createDirectories(TESSDATA);
+        for (String language : TesseractPool.LANGUAGE.split("\\+")) {
+            Files.write(TESSDATA.resolve(language + ".traineddata"), new byte[]{ 1, 2, 3 });
+        }
+    }
+
+    private File image(String name, String content) throws IOException {
+        return Files.writeString(dir.resolve(name), content).toFile();
+    }
+
+    private static long entries(Path cacheDir) throws IOException {
+        try (var files = Files.list(cacheDir)) {
+            return files.filter(f -> f.toString().endsWith(".txt")).count();
+        }
+    }
+
+    @Test
+    void keysFollowTheImageContentAndVariant() throws IOException {
+        OcrCache cache = new OcrCache(dir.resolve("cache"), 4);
+        String key = cache.keyFor(image("a.png", "same"), "");
+
+        assertEquals(key, cache.keyFor(image("b.png", "same"), ""));
+        assertNotEquals(key, cache.keyFor(image("c.png", "other"), ""));
+        assertNotEquals(key, cache.keyFor(image("a.png", "same"), "binarised"));
+        assertNull(cache.keyFor(dir.resolve("missing.png").toFile(), ""));
+    }
+
+    @Test
+    void memoryTierFallsBackToDiskAndSurvivesReopening() throws IOException {
+        Path cacheDir = dir.resolve("cache");
+        OcrCache cache = new OcrCache(cacheDir, 2);
+        cache.put("k1", "x^2");
+        cache.put("k2", "sin(x)");
+        cache.put("k3", "cos(x)"); // Pushes k1 out of memory
+
+        assertEquals("cos(x)", cache.get("k3"));
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals("x^2", cache.get("k1"));
+        assertEquals(1, cache.getDiskHits());
+        assertNull(cache.get("k4"));
+        assertEquals(1, cache.getMisses());
+
+        OcrCache reopened = new OcrCache(cacheDir, 2);
+        assertEquals("sin(x)", reopened.get("k2"));
+        assertEquals(1, reopened.getDiskHits());
+        assertEquals(3 + 6 + 6, reopened.getDiskBytes()); // "x^2", "sin(x)", "cos(x)" in UTF-8
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedDownToNinetyPercent() throws IOException {
+        Path cacheDir = dir.resolve("cache");
+        OcrCache cache = new OcrCache(cacheDir, 1, 1000);
+        long start = System.currentTimeMillis() - 100_000;
+        for (int i = 0; i < 10; i++) {
+            cache.put("k" + i, "x".repeat(100));
+            Files.setLastModifiedTime(cacheDir.resolve("k" + i + ".txt"), FileTime.fromMillis(start + i * 1000L));
+        }
+        assertEquals(1000, cache.getDiskBytes());
+        assertEquals("x".repeat(100), new OcrCache(cacheDir, 1, 1000).get("k0")); // Touches k0
+
+        cache.put("k10", "x".repeat(100)); // 1100 bytes, over the limit
+
+        assertEquals(900, cache.getDiskBytes());
+        assertEquals(9, entries(cacheDir));
+        assertTrue(Files.exists(cacheDir.resolve("k0.txt")), "recently read, so kept");
+        assertFalse(Files.exists(cacheDir.resolve("k1.txt")));
+        assertFalse(Files.exists(cacheDir.resolve("k2.txt")));
+        assertTrue(Files.exists(cacheDir.resolve("k10.txt")));
+    }
+
+    @Test
+    void invalidateAllDropsBothTiers() throws IOException {
+        Path cacheDir = dir.resolve("cache");
+        OcrCache cache = new OcrCache(cacheDir, 4);
+        cache.put("k1", "x^2");
+
+        cache.invalidateAll();
+
+        assertNull(cache.get("k1"));
+        assertEquals(0, entries(cacheDir));
+        assertEquals(0, cache.getDiskBytes());
+    }
+
+    @Test
+    void replacedTrainedDataInvalidatesOnTheNextKey() throws IOException {
+        Path cacheDir = dir.resolve("cache");
+        OcrCache cache = new OcrCache(cacheDir, 4);
+        File image = image("a.png", "equation");
+        String key = cache.keyFor(image, "");
+        cache.put(key, "x^2");
+        assertEquals("x^2", cache.get(cache.keyFor(image, "")));
+
+        String language = TesseractPool.LANGUAGE.split("\\+")[0];
+        Files.write(TESSDATA.resolve(language + ".traineddata"), new byte[]{ 1, 2, 3, 4 });
+
+        String newKey = cache.keyFor(image, "");
+        assertNotEquals(key, newKey);
+        assertNull(cache.get(newKey));
+        assertNull(cache.get(key), "old entries are dropped, not just unreachable");
+        assertEquals(0, entries(cacheDir));
+    }
+}
@@ -0,0 +1,101 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stitching independently sampled chunks back into one curve, and sampling whole curves in parallel.
+ */
+class ParallelSamplerTest {
+
+    private static AdaptiveSampler.Samples samples(double[] xs, double[] ys, int evaluations, double low, double high) {
+        return new AdaptiveSampler.Samples(xs, ys, evaluations, low, high);
+    }
+
+    @Test
+    void sharedBoundaryPointIsKeptOnce() {
+        AdaptiveSampler.Samples stitched = ParallelSampler.stitch(Arrays.asList(
+                samples(new double[] { 0, 1, 2 }, new double[] { 0, 1, 4 }, 3, 0, 4),
+                samples(new double[] { 2, 3, 4 }, new double[] { 4, 9, 16 }, 3, 4, 16)));
+        assertArrayEquals(new double[] { 0, 1, 2, 3, 4 }, stitched.getXs());
+        assertArrayEquals(new double[] { 0, 1, 4, 9, 16 }, stitched.getYs());
+        assertEquals(6, stitched.getEvaluations());
+        assertEquals(0, stitched.getYLow());
+        assertEquals(16, stitched.getYHigh());
+    }
+
+    @Test
+    void gapAcrossTheBoundaryIsKeptOnce() {
+        AdaptiveSampler.Samples stitched = ParallelSampler.stitch(Arrays.asList(
+                samples(new double[] { 0, 1, 1.5 }, new double[] { 1, 2, Double.NaN }, 3, 1, 2),
+                samples(new double[] { 2, 3 }, new double[] { Double.NaN, 5 }, 2, 5, 5)));
+        assertArrayEquals(new double[] { 0, 1, 1.5, 3 }, stitched.getXs());
+        assertArrayEquals(new double[] { 1, 2, Double.NaN, 5 }, stitched.getYs());
+    }
+
+    @Test
+    void gapInsideAChunkIsKept() {
+        AdaptiveSampler.Samples stitched = ParallelSampler.stitch(Arrays.asList(
+                samples(new double[] { 0, 1 }, new double[] { 1, 2 }, 2, 1, 2),
+                samples(new double[] { 1, 1.5, 2 }, new double[] { 2, Double.NaN, 3 }, 3, 2, 3)));
+        assertArrayEquals(new double[] { 0, 1, 1.5, 2 }, stitched.getXs());
+        assertArrayEquals(new double[] { 1, 2, Double.NaN, 3 }, stitched.getYs());
+    }
+
+    @Test
+    void rangeIgnoresChunksWithoutValues() {
+        AdaptiveSampler.Samples undefined = samples(new double[] { 1 }, new double[] { Double.NaN }, 1, Double.NaN, Double.NaN);
+        AdaptiveSampler.Samples defined = samples(new double[] { 2, 3 }, new double[] { -1, 7 }, 2, -1, 7);
+
+        AdaptiveSampler.Samples first = ParallelSampler.stitch(Arrays.asList(undefined, defined));
+        assertEquals(-1, first.getYLow());
+        assertEquals(7, first.getYHigh());
+
+        AdaptiveSampler.Samples last = ParallelSampler.stitch(Arrays.asList(defined, undefined));
+        assertEquals(-1, last.getYLow());
+        assertEquals(7, last.getYHigh());
+    }
+
+    @Test
+    void singleChunkIsUnchanged() {
+        AdaptiveSampler.Samples part = samples(new double[] { 0, 1 }, new double[] { 3, Double.NaN }, 2, 3, 3);
+        AdaptiveSampler.Samples stitched = ParallelSampler.stitch(Collections.singletonList(part));
+        assertArrayEquals(part.getXs(), stitched.getXs());
+        assertArrayEquals(part.getYs(), stitched.getYs());
+    }
+
+    @Test
+    void sampleAllKeepsRequestOrderAndEndpoints() {
+        CompiledExpression tan = CompiledExpression.compile("tan(x)");
+        CompiledExpression square = CompiledExpression.compile("x^2");
+        List<AdaptiveSampler.Samples> results = ParallelSampler.sampleAll(Arrays.asList(
+                new ParallelSampler.Request(tan, -4, 4, 20000),
+                new ParallelSampler.Request(square, 0, 3, 2000)));
+        assertEquals(2, results.size());
+
+        AdaptiveSampler.Samples first = results.get(0);
+        double[] xs = first.getXs();
+        double[] ys = first.getYs();
+        assertEquals(-4, xs[0]);
+        assertEquals(4, xs[xs.length - 1]);
+        int gaps = 0;
+        for (int i = 0; i < xs.length; i++) {
+            if (i > 0) {
+                assertTrue(xs[i] > xs[i - 1], "x not increasing at " + i);
+                assertTrue(!(Double.isNaN(ys[i]) && Double.isNaN(ys[i - 1])), "two gaps in a row at " + i);
+            }
+            gaps += Double.isNaN(ys[i]) ? 1 : 0;
+        }
+        assertEquals(2, gaps); // The poles at +-pi/2
+        assertTrue(first.getEvaluations() <= 20000);
+
+        AdaptiveSampler.Samples second = results.get(1);
+        assertEquals(0, second.getXs()[0]);
+        assertEquals(9, second.getYs()[second.size() - 1], 1e-12);
+    }
+}
@@ -0,0 +1,79 @@
+package mathematica.bench;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Access to the application classes from the benchmarks.
+ * <p>
+ * The application lives in the default package, which named packages (and JMH requires one) can't
+ * import, so its classes are looked up by name and their members called through method handles.
+ * The handles are resolved once; calling one costs a few nanoseconds, far below anything measured
+ * here.
+ * <p>
+ * Loading this class also points {@code user.home} at a fresh temporary directory, so the OCR cache,
+ * history journal and local history store used by a benchmark run never touch the real ones.
+ */
+final class App {
+
+    static final Path HOME;
+
+    static {
+        try {
+            HOME = Files.createTempDirectory("mathematica-bench");
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        System.setProperty("user.home", HOME.toString());
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    private App() {
+    }
+
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Application class missing from the classpath: " + name, e);
+        }
+    }
+
+    /** A handle on a method of any visibility; static methods take no receiver. */
+    static MethodHandle method(String className, String name, Class<?>... parameterTypes) {
+        try {
+            Method method = type(className).getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(className + "." + name, e);
+        }
+    }
+
+    /** A handle on a constructor of any visibility. */
+    static MethodHandle constructor(String className, Class<?>... parameterTypes) {
+        try {
+            Constructor<?> constructor = type(className).getDeclaredConstructor(parameterTypes);
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(className + ".<init>", e);
+        }
+    }
+
+    /** Rethrows whatever a handle threw, unchecked, so benchmark methods stay free of throws clauses. */
+    static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
@@ -0,0 +1,113 @@
+package mathematica.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH runs saved with {@code -rf csv} and flags regressions.
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar mathematica.bench.Compare baseline.csv candidate.csv [threshold%]}.
+ * Rows are matched by benchmark name and parameters. A benchmark counts as regressed when the
+ * candidate is slower by more than the threshold (default 10%) and the two scores' 99.9% error
+ * intervals don't overlap, so noise within JMH's own error bars is never reported. All suites
+ * here measure average time, where a higher score is worse. Exits with status 1 if anything
+ * regressed, for use in scripts.
+ */
+public final class Compare {
+
+    private Compare() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: Compare <baseline.csv> <candidate.csv> [threshold%]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) / 100 : 0.10;
+        Map<String, double[]> baseline = read(Path.of(args[0]));
+        Map<String, double[]> candidate = read(Path.of(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, double[]> entry : candidate.entrySet()) {
+            double[] before = baseline.get(entry.getKey());
+            double[] after = entry.getValue();
+            if (before == null) {
+                System.out.printf("%-80s %12s -> %12.3f  new%n", entry.getKey(), "", after[0]);
+                continue;
+            }
+            double change = (after[0] - before[0]) / before[0];
+            boolean significant = after[0] - after[1] > before[0] + before[1]
+                    || after[0] + after[1] < before[0] - before[1];
+            String verdict = "";
+            if (significant && change > threshold) {
+                verdict = "REGRESSION";
+                regressions++;
+            } else if (significant && change < -threshold) {
+                verdict = "improved";
+            }
+            System.out.printf("%-80s %12.3f -> %12.3f %+7.1f%%  %s%n", entry.getKey(), before[0], after[0], change * 100, verdict);
+        }
+        System.out.println(regressions == 0 ? "No regressions." : regressions + " regression(s).");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    /** Benchmark name with its parameters to {score, error}. */
+    static Map<String, double[]> read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        List<String> header = split(lines.get(0));
+        int score = header.indexOf("Score");
+        int error = header.indexOf("Score Error (99.9%)");
+        int unit = header.indexOf("Unit");
+        Map<String, double[]> rows = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> cells = split(line);
+            StringBuilder key = new StringBuilder(cells.get(0));
+            for (int i = unit + 1; i < cells.size(); i++) {
+                if (!cells.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).replace("Param: ", "")).append('=').append(cells.get(i));
+                }
+            }
+            key.append(" (").append(cells.get(unit)).append(')');
+            rows.put(key.toString(), new double[] { parse(cells.get(score)), parse(cells.get(error)) });
+        }
+        return rows;
+    }
+
+    private static double parse(String cell) {
+        return cell.isEmpty() || cell.equals("NaN") ? 0 : Double.parseDouble(cell);
+    }
+
+    /** Splits one CSV line as JMH writes it: comma-separated, optionally double-quoted cells. */
+    private static List<String> split(String line) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cell.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+}
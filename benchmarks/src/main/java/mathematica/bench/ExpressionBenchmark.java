@@ -0,0 +1,89 @@
+package mathematica.bench;
+
+import net.objecthunter.exp4j.Expression;
+import net.objecthunter.exp4j.ExpressionBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and evaluating plotted expressions: {@code CompiledExpression} (bytecode where
+ * supported, otherwise the opcode interpreter) against plain exp4j as the baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ExpressionBenchmark {
+
+    private static final MethodHandle COMPILE = App.method("CompiledExpression", "compile", String.class);
+    private static final MethodHandle PARSE = App.method("CompiledExpression", "parse", String.class); // Bypasses the cache
+    private static final MethodHandle EVALUATE = App.method("CompiledExpression", "evaluate", double[].class, double[].class, int.class);
+
+    static final int POINTS = 10_000;
+
+    @Param({ Expressions.POLYNOMIAL, Expressions.PRODUCT, Expressions.TAN, Expressions.RECIPROCAL,
+            Expressions.SEMICIRCLE, Expressions.OSCILLATING, Expressions.DAMPED })
+    public String expression;
+
+    private Object compiled;
+    private Expression exp4j;
+    private final double[] xs = new double[POINTS];
+    private final double[] ys = new double[POINTS];
+
+    @Setup
+    public void setUp() throws Throwable {
+        compiled = COMPILE.invoke(expression);
+        exp4j = new ExpressionBuilder(expression).variable("x").build();
+        for (int i = 0; i < POINTS; i++) {
+            xs[i] = -10 + 20.0 * i / (POINTS - 1);
+        }
+    }
+
+    /** Parse, lower and JIT one expression, as on the first plot of new text. */
+    @Benchmark
+    public Object parse() {
+        try {
+            return PARSE.invoke(expression);
+        } catch (Throwable t) {
+            throw App.rethrow(t);
+        }
+    }
+
+    /** {@value #POINTS} points through {@code CompiledExpression.evaluate}. */
+    @Benchmark
+    public double[] evaluateCompiled() {
+        try {
+            EVALUATE.invoke(compiled, xs, ys, POINTS);
+        } catch (Throwable t) {
+            throw App.rethrow(t);
+        }
+        return ys;
+    }
+
+    /** The same points through exp4j, as the grapher did before expressions were compiled. */
+    @Benchmark
+    public double[] evaluateExp4j() {
+        for (int i = 0; i < POINTS; i++) {
+            try {
+                ys[i] = exp4j.setVariable("x", xs[i]).evaluate();
+            } catch (ArithmeticException e) {
+                ys[i] = Double.NaN; // Division by zero
+            }
+        }
+        return ys;
+    }
+}
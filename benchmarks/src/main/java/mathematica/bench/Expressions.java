@@ -0,0 +1,19 @@
+package mathematica.bench;
+
+/**
+ * Representative plotted expressions, shared by the expression and plotting benchmarks so their
+ * results line up: smooth, steep, singular, domain-limited and fast-oscillating curves.
+ */
+final class Expressions {
+
+    static final String POLYNOMIAL = "x^3 - 2*x^2 + x - 1";
+    static final String PRODUCT = "sin(x) * x^2";
+    static final String TAN = "tan(x)";
+    static final String RECIPROCAL = "1/x";
+    static final String SEMICIRCLE = "sqrt(9 - x^2)";
+    static final String OSCILLATING = "sin(1/x)";
+    static final String DAMPED = "exp(-x^2/10) * cos(10*x)";
+
+    private Expressions() {
+    }
+}
@@ -0,0 +1,181 @@
+package mathematica.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * History persistence through {@code HistoryStore}: writing rows and the reads behind the history
+ * table and its search box, on a store pre-filled with {@value #ROWS} rows.
+ * <p>
+ * Backends: {@code local} is the embedded file-backed store; {@code h2} is {@code DataBase}, the
+ * MySQL store, running against an in-memory H2 database in MySQL mode so no server is needed.
+ * H2 has no MySQL FULLTEXT, so search is measured in SUBSTRING mode on both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HistoryStoreBenchmark {
+
+    private static final MethodHandle OPEN = App.method("HistoryStore", "open");
+    private static final MethodHandle IS_CONNECTED = App.method("HistoryStore", "isConnected");
+    private static final MethodHandle CREATE_DATA = App.method("HistoryStore", "CreateData", String.class, String.class);
+    private static final MethodHandle FETCH_PAGE = App.method("HistoryStore", "fetchHistoryPage", Timestamp.class, long.class, int.class);
+    private static final MethodHandle SEARCH = App.method("HistoryStore", "searchHistory", String.class, App.type("HistoryStore$SearchMode"), int.class, int.class);
+    private static final MethodHandle CLOSE = App.method("HistoryStore", "close");
+    private static final MethodHandle NOW = App.method("HistoryRecord", "now", String.class, String.class);
+    private static final MethodHandle GET_ID = App.method("HistoryRecord", "getId");
+    private static final MethodHandle GET_CREATED = App.method("HistoryRecord", "getCreated");
+    private static final MethodHandle INSERT_BATCH = App.method("DataBase", "insertBatch", List.class);
+
+    static final int ROWS = 10_000;
+    static final int PAGE = 50;
+    static final int BATCH = 100;
+
+    private static final String H2_URL = "jdbc:h2:mem:history;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    private static final String[] TOPICS = { "linear equation", "quadratic formula", "derivative of", "integral over",
+            "system of equations", "trigonometric identity", "logarithm base", "matrix determinant" };
+
+    @Param({ "local", "h2" })
+    public String backend;
+
+    private Object store;
+    private Object substring;
+    private Timestamp deepCreated;
+    private long deepId;
+    private int sequence;
+
+    @Setup
+    public void setUp() throws Throwable {
+        if (backend.equals("local")) {
+            System.setProperty("mathematica.store", "local");
+            System.setProperty("mathematica.store.dir", App.HOME.resolve("history").toString());
+        } else {
+            try (Connection connection = DriverManager.getConnection(H2_URL, "sa", "");
+                 Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE HISTORY (id INT AUTO_INCREMENT PRIMARY KEY,"
+                        + " FilePath VARCHAR(255) NOT NULL, Question TEXT NOT NULL, Created TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            }
+            System.setProperty("mathematica.store", "mysql");
+            System.setProperty("mathematica.db.url", H2_URL);
+            System.setProperty("mathematica.db.user", "sa");
+            System.setProperty("mathematica.db.password", "");
+        }
+        store = OPEN.invoke();
+        if (!(boolean) IS_CONNECTED.invoke(store)) {
+            throw new IllegalStateException("History store did not open: " + backend);
+        }
+        substring = App.type("HistoryStore$SearchMode").getField("SUBSTRING").get(null);
+
+        for (int written = 0; written < ROWS; written += BATCH) {
+            writeBatch();
+        }
+        // The keyset of the row 90% of the way down, for a deep page.
+        Timestamp after = null;
+        long afterId = 0;
+        for (int skipped = 0; skipped < ROWS * 9 / 10; skipped += PAGE) {
+            List<?> page = (List<?>) FETCH_PAGE.invoke(store, after, afterId, PAGE);
+            Object last = page.get(page.size() - 1);
+            after = (Timestamp) GET_CREATED.invoke(last);
+            afterId = (long) GET_ID.invoke(last);
+        }
+        deepCreated = after;
+        deepId = afterId;
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        CLOSE.invoke(store);
+    }
+
+    private String nextQuestion() {
+        int n = sequence++;
+        return TOPICS[n % TOPICS.length] + " " + (n * 7919 % 1000) + "x + " + (n % 97) + " = 0";
+    }
+
+    /** Commits {@value #BATCH} rows: one JDBC batch for DataBase, one append each for the local store. */
+    private void writeBatch() throws Throwable {
+        if (backend.equals("local")) {
+            for (int i = 0; i < BATCH; i++) {
+                CREATE_DATA.invoke(store, "bench/page-" + sequence + ".png", nextQuestion());
+            }
+        } else {
+            List<Object> records = new ArrayList<>(BATCH);
+            for (int i = 0; i < BATCH; i++) {
+                records.add(NOW.invoke("bench/page-" + sequence + ".png", nextQuestion()));
+            }
+            INSERT_BATCH.invoke(store, records);
+        }
+    }
+
+    /** One CreateData call as the UI makes it (queued and written behind by both stores). */
+    @Benchmark
+    public void createData() {
+        try {
+            CREATE_DATA.invoke(store, "bench/query.png", nextQuestion());
+        } catch (Throwable t) {
+            throw App.rethrow(t);
+        }
+    }
+
+    /** {@value #BATCH} rows written and committed. */
+    @Benchmark
+    public void writeBatchOfRows() {
+        try {
+            writeBatch();
+        } catch (Throwable t) {
+            throw App.rethrow(t);
+        }
+    }
+
+    /** The first page of the history table. */
+    @Benchmark
+    public Object fetchFirstPage() {
+        try {
+            return FETCH_PAGE.invoke(store, (Timestamp) null, 0L, PAGE);
+        } catch (Throwable t) {
+            throw App.rethrow(t);
+        }
+    }
+
+    /** A page 90% of the way down; keyset paging should cost the same as the first. */
+    @Benchmark
+    public Object fetchDeepPage() {
+        try {
+            return FETCH_PAGE.invoke(store, deepCreated, deepId, PAGE);
+        } catch (Throwable t) {
+            throw App.rethrow(t);
+        }
+    }
+
+    /** A search-box query, first page of results. */
+    @Benchmark
+    public Object searchSubstring() {
+        try {
+            return SEARCH.invoke(store, "quadratic", substring, 0, PAGE);
+        } catch (Throwable t) {
+            throw App.rethrow(t);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package mathematica.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OCR of equation images: {@code TextExtract.perform} with the result cache cleared before every
+ * call (preprocessing and recognition), with a warm cache, and the preprocessing stage alone.
+ * <p>
+ * The fixture corpus is rendered at setup, identically on every run: each equation is drawn as
+ * black text on white at scanner-like resolution, slightly rotated and with light noise, so
+ * binarisation and deskewing have real work to do. Recognition needs the Tesseract native library
+ * and traineddata ({@code -Dmathematica.tessdata=<dir>}, passed through with {@code -jvmArgsAppend});
+ * without them the {@code perform*} benchmarks fail and {@link #preprocess()} still runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class OcrBenchmark {
+
+    private static final MethodHandle NEW_EXTRACT = App.constructor("TextExtract");
+    private static final MethodHandle PERFORM = App.method("TextExtract", "perform", String.class);
+    private static final MethodHandle SHARED_CACHE = App.method("OcrCache", "shared");
+    private static final MethodHandle INVALIDATE = App.method("OcrCache", "invalidateAll");
+    private static final MethodHandle NEW_PREPROCESSOR = App.constructor("ImagePreprocessor");
+    private static final MethodHandle PROCESS = App.method("ImagePreprocessor", "process", BufferedImage.class);
+
+    /** Fixture name to the equation drawn in it. */
+    private static final String[][] CORPUS = {
+            { "linear", "y = 3x + 7" },
+            { "quadratic", "x^2 - 5x + 6 = 0" },
+            { "trig", "y = sin(x) + cos(2x)" },
+            { "rational", "y = (x + 1) / (x - 2)" },
+    };
+
+    @Param({ "linear", "quadratic", "trig", "rational" })
+    public String fixture;
+
+    private String path;
+    private BufferedImage image;
+    private Object extract;
+    private Object cache;
+    private Object preprocessor;
+
+    @Setup
+    public void setUp() throws Throwable {
+        String equation = null;
+        for (String[] entry : CORPUS) {
+            if (entry[0].equals(fixture)) {
+                equation = entry[1];
+            }
+        }
+        File file = App.HOME.resolve("fixtures").resolve(fixture + ".png").toFile();
+        Files.createDirectories(file.toPath().getParent());
+        image = render(equation, fixture.hashCode());
+        ImageIO.write(image, "png", file);
+        path = file.getPath();
+        extract = NEW_EXTRACT.invoke();
+        cache = SHARED_CACHE.invoke();
+        preprocessor = NEW_PREPROCESSOR.invoke();
+    }
+
+    /** Draws one fixture: the equation, slightly rotated, with seeded speckle noise. */
+    static BufferedImage render(String equation, long seed) {
+        BufferedImage page = new BufferedImage(1200, 300, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = page.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, page.getWidth(), page.getHeight());
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setColor(new Color(20, 20, 20));
+            g.setFont(new Font(Font.SERIF, Font.PLAIN, 64));
+            g.transform(AffineTransform.getRotateInstance(Math.toRadians(1.5), 600, 150));
+            g.drawString(equation, 80, 175);
+        } finally {
+            g.dispose();
+        }
+        Random random = new Random(seed);
+        for (int i = 0; i < 4000; i++) {
+            int gray = 150 + random.nextInt(100);
+            page.setRGB(random.nextInt(page.getWidth()), random.nextInt(page.getHeight()), new Color(gray, gray, gray).getRGB());
+        }
+        return page;
+    }
+
+    /**
+     * Per-invocation state that empties the OCR cache (kept in the benchmark's private home
+     * directory) before each call, so every {@link #perform(Cold)} preprocesses and recognises.
+     */
+    @State(Scope.Thread)
+    public static class Cold {
+        @Setup(Level.Invocation)
+        public void clearCache(OcrBenchmark corpus) throws Throwable {
+            INVALIDATE.invoke(corpus.cache);
+        }
+    }
+
+    /** Preprocessing, recognition and storing the result, for an image not seen before. */
+    @Benchmark
+    public Object perform(Cold cold) {
+        try {
+            return PERFORM.invoke(extract, path);
+        } catch (Throwable t) {
+            throw App.rethrow(t);
+        }
+    }
+
+    /** An image recognised before: hashing the file and reading the cached text. */
+    @Benchmark
+    public Object performCached() {
+        try {
+            return PERFORM.invoke(extract, path);
+        } catch (Throwable t) {
+            throw App.rethrow(t);
+        }
+    }
+
+    /** The ImagePreprocessor stages alone (no native code). */
+    @Benchmark
+    public Object preprocess() {
+        try {
+            return PROCESS.invoke(preprocessor, image);
+        } catch (Throwable t) {
+            throw App.rethrow(t);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package mathematica.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The grapher's work for one curve: adaptive sampling over the default range, and building the
+ * whole chart panel (compile from cache, parallel sampling, dataset, chart, decimation). Runs
+ * headless.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PlotBenchmark {
+
+    private static final MethodHandle COMPILE = App.method("CompiledExpression", "compile", String.class);
+    private static final MethodHandle NEW_EVALUATOR = App.method("CompiledExpression", "newEvaluator");
+    private static final MethodHandle NEW_SAMPLER = App.constructor("AdaptiveSampler");
+    private static final MethodHandle SAMPLE = App.method("AdaptiveSampler", "sample", DoubleUnaryOperator.class, double.class, double.class);
+    private static final MethodHandle NEW_GRAPHER = App.constructor("Window$JFreeChartGrapher");
+    private static final MethodHandle CHART = App.method("Window$JFreeChartGrapher", "createChartPanelForEquation", String.class, String.class);
+
+    @Param({ Expressions.POLYNOMIAL, Expressions.PRODUCT, Expressions.TAN, Expressions.RECIPROCAL,
+            Expressions.SEMICIRCLE, Expressions.OSCILLATING, Expressions.DAMPED })
+    public String expression;
+
+    private Object sampler;
+    private DoubleUnaryOperator evaluator;
+    private Object grapher;
+
+    @Setup
+    public void setUp() throws Throwable {
+        sampler = NEW_SAMPLER.invoke();
+        evaluator = (DoubleUnaryOperator) NEW_EVALUATOR.invoke(COMPILE.invoke(expression));
+        grapher = NEW_GRAPHER.invoke();
+    }
+
+    /** AdaptiveSampler with the default point budget over [-10, 10], on this thread. */
+    @Benchmark
+    public Object sample() {
+        try {
+            return SAMPLE.invoke(sampler, evaluator, -10.0, 10.0);
+        } catch (Throwable t) {
+            throw App.rethrow(t);
+        }
+    }
+
+    /** JFreeChartGrapher.createChartPanelForEquation, as on every plot. */
+    @Benchmark
+    public Object chartPanel() {
+        try {
+            return CHART.invoke(grapher, expression, "benchmark");
+        } catch (Throwable t) {
+            throw App.rethrow(t);
+        }
+    }
+}